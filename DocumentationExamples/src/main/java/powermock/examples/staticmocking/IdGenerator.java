@@ -15,15 +15,125 @@
  */
 package powermock.examples.staticmocking;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * The purpose of the IdGenerator is to generate ID's based on the system time.
+ * <p>
+ * An ID is composed of a millisecond timestamp (41 bits), a node id (10 bits,
+ * taken from the <code>idgenerator.node</code> system property) and a
+ * sequence number (12 bits). The timestamp and sequence are kept together in
+ * one <code>long</code> that is updated with compare-and-set, so ID's are
+ * unique and increasing even when many threads ask for one in the same
+ * millisecond. If the sequence runs out, the generator borrows from the next
+ * millisecond instead of waiting for the clock.
+ * <p>
+ * When the block size (the <code>idgenerator.blockSize</code> system property
+ * or {@link #setBlockSize(int)}) is larger than one, each thread reserves that
+ * many consecutive ID's at a time and hands them out without touching the
+ * shared state. ID's stay unique but are only ordered within a thread, and
+ * the unused part of a block is lost when a thread ends or the block size
+ * changes, so the block size is also the largest gap between ID's.
  */
 public class IdGenerator {
 
+	/**
+	 * 2008-01-01T00:00:00Z, keeps the timestamp within 41 bits until 2077.
+	 */
+	private static final long EPOCH = 1199145600000L;
+
+	private static final int NODE_BITS = 10;
+
+	private static final int SEQUENCE_BITS = 12;
+
+	private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+	private static final long NODE_ID = nodeId();
+
+	/**
+	 * The last handed out timestamp and sequence, packed as
+	 * <code>timestamp &lt;&lt; SEQUENCE_BITS | sequence</code>.
+	 */
+	private static final AtomicLong STATE = new AtomicLong();
+
+	private static final ThreadLocal<Block> BLOCK = new ThreadLocal<Block>() {
+		@Override
+		protected Block initialValue() {
+			return new Block();
+		}
+	};
+
+	private static volatile int blockSize = checkBlockSize(Integer.getInteger("idgenerator.blockSize", 1));
+
 	/**
 	 * @return A new ID based on the current time.
 	 */
 	public static long generateNewId() {
-		return System.currentTimeMillis();
+		final int size = blockSize;
+		if (size == 1) {
+			return compose(reserve(1));
+		}
+		final Block block = BLOCK.get();
+		if (block.next == block.limit || block.size != size) {
+			block.next = reserve(size);
+			block.limit = block.next + size;
+			block.size = size;
+		}
+		return compose(block.next++);
+	}
+
+	/**
+	 * Sets the number of ID's each thread reserves at a time. A block size of
+	 * one (the default) takes every ID straight from the shared state.
+	 * 
+	 * @param size
+	 *            The number of ID's to reserve per thread.
+	 */
+	public static void setBlockSize(int size) {
+		blockSize = checkBlockSize(size);
+	}
+
+	/**
+	 * Reserves <code>count</code> consecutive states.
+	 * 
+	 * @return The first reserved state.
+	 */
+	private static long reserve(int count) {
+		final long now = (System.currentTimeMillis() - EPOCH) << SEQUENCE_BITS;
+		for (;;) {
+			final long current = STATE.get();
+			final long first = now > current ? now : current + 1;
+			if (STATE.compareAndSet(current, first + count - 1)) {
+				return first;
+			}
+		}
+	}
+
+	private static long compose(long state) {
+		return ((state >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS)) | (NODE_ID << SEQUENCE_BITS) | (state & SEQUENCE_MASK);
+	}
+
+	private static int checkBlockSize(int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("Block size must be at least 1 but was " + size);
+		}
+		return size;
+	}
+
+	private static long nodeId() {
+		final long node = Long.getLong("idgenerator.node", 0L);
+		if (node < 0 || node >= (1L << NODE_BITS)) {
+			throw new IllegalArgumentException("idgenerator.node must be between 0 and " + ((1L << NODE_BITS) - 1) + " but was " + node);
+		}
+		return node;
+	}
+
+	/**
+	 * The range of states a thread has reserved but not yet handed out.
+	 */
+	private static final class Block {
+		long next;
+		long limit;
+		int size;
 	}
 }
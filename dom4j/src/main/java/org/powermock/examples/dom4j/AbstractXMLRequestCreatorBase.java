@@ -15,13 +15,30 @@
  */
 package org.powermock.examples.dom4j;
 
+import org.dom4j.Attribute;
+import org.dom4j.CDATA;
+import org.dom4j.Comment;
 import org.dom4j.Document;
 import org.dom4j.DocumentHelper;
 import org.dom4j.Element;
+import org.dom4j.Entity;
+import org.dom4j.Namespace;
+import org.dom4j.Node;
+import org.dom4j.ProcessingInstruction;
+import org.dom4j.Text;
 import org.dom4j.io.XMLWriter;
 
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 
 /**
@@ -31,6 +48,47 @@ import java.util.Random;
  */
 public abstract class AbstractXMLRequestCreatorBase {
 
+	private static final String ENCODING = "UTF-8";
+
+	/**
+	 * Holds the factory, so that it is only looked up when a request is
+	 * streamed for the first time. The factory is only used to create
+	 * writers, which is safe to do concurrently.
+	 */
+	private static final class OutputFactoryHolder {
+		static final XMLOutputFactory INSTANCE = XMLOutputFactory.newInstance();
+	}
+
+	/**
+	 * May be <code>null</code>, {@link #generateRandomId()} creates the ids
+	 * then.
+	 */
+	private final MessageIdStrategy messageIdStrategy;
+
+	/**
+	 * Creates a request creator whose message ids are created by
+	 * {@link #generateRandomId()}.
+	 */
+	protected AbstractXMLRequestCreatorBase() {
+		messageIdStrategy = null;
+	}
+
+	/**
+	 * Creates a request creator whose message ids are provided by
+	 * <code>messageIdStrategy</code>.
+	 * 
+	 * @param messageIdStrategy
+	 *            The strategy that provides the message ids.
+	 * @throws IllegalArgumentException
+	 *             If <code>messageIdStrategy</code> is <code>null</code>.
+	 */
+	protected AbstractXMLRequestCreatorBase(MessageIdStrategy messageIdStrategy) {
+		if (messageIdStrategy == null) {
+			throw new IllegalArgumentException("messageIdStrategy cannot be null");
+		}
+		this.messageIdStrategy = messageIdStrategy;
+	}
+
 	/**
 	 * Convert a dom4j xml document to a byte[].
 	 * 
@@ -56,17 +114,68 @@ public abstract class AbstractXMLRequestCreatorBase {
 		return documentAsByteArray;
 	}
 
+	/**
+	 * Convert a dom4j xml document to a read-only {@link ByteBuffer} without
+	 * copying the serialized bytes. The buffer is reused by the calling
+	 * thread, so the returned content is only valid until the thread converts
+	 * or creates another document or request.
+	 * 
+	 * @param document
+	 *            The document to convert.
+	 * @return A read-only view of the serialized document.
+	 * @throws IOException
+	 *             If an exception occurs when converting the document.
+	 */
+	public ByteBuffer convertDocumentToByteBuffer(Document document)
+			throws IOException {
+		RequestBuffer buffer = RequestBuffer.forCurrentThread();
+		writeDocument(document, buffer);
+		return buffer.toReadOnlyByteBuffer();
+	}
+
+	/**
+	 * Write a dom4j xml document to <code>out</code>. The stream is flushed
+	 * but not closed.
+	 * 
+	 * @param document
+	 *            The document to write.
+	 * @param out
+	 *            The stream to write the document to.
+	 * @throws IOException
+	 *             If an exception occurs when writing the document.
+	 */
+	public void writeDocument(Document document, OutputStream out)
+			throws IOException {
+		XMLWriter writer = new XMLWriter(out);
+		writer.write(document);
+		// Closing the writer would close the stream as well
+		writer.flush();
+	}
+
+	/**
+	 * Write a dom4j xml document to <code>channel</code>, which must be in
+	 * blocking mode. The document is serialized into a buffer that is reused
+	 * by the calling thread and written to the channel in one go.
+	 * 
+	 * @param document
+	 *            The document to write.
+	 * @param channel
+	 *            The channel to write the document to.
+	 * @throws IOException
+	 *             If an exception occurs when writing the document.
+	 */
+	public void writeDocument(Document document, WritableByteChannel channel)
+			throws IOException {
+		RequestBuffer buffer = RequestBuffer.forCurrentThread();
+		writeDocument(document, buffer);
+		buffer.writeTo(channel);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
 	public final byte[] createRequest(String... params) {
-		Document document = DocumentHelper.createDocument();
-		Element root = document.addElement(XMLProtocol.ENCODE_ELEMENT);
-		Element header = root.addElement(XMLProtocol.HEADER_ELEMENT);
-		header.addAttribute(XMLProtocol.HEADER_MSG_ID_ATTRIBUTE,
-				generateRandomId());
-		Element body = root.addElement(XMLProtocol.BODY_ELEMENT);
-		createBody(body, params);
+		Document document = createDocument(generateRandomId(), params);
 		byte[] array = null;
 		try {
 			array = convertDocumentToByteArray(document);
@@ -76,6 +185,311 @@ public abstract class AbstractXMLRequestCreatorBase {
 		return array;
 	}
 
+	/**
+	 * Create a request like {@link #createRequest(String...)} does, but
+	 * return it as a read-only view of a buffer that is reused by the calling
+	 * thread. The content is only valid until the thread converts or creates
+	 * another document or request.
+	 * 
+	 * @param params
+	 *            Parameters that may be used when creating the request.
+	 * @return A read-only view of the request.
+	 */
+	public final ByteBuffer createRequestBuffer(String... params) {
+		return createDomRequestBuffer(generateRandomId(), params);
+	}
+
+	/**
+	 * Create a request from a pre-serialized envelope. Only the message id
+	 * and the body content are serialized per request, the bytes are the
+	 * same as the ones created by {@link #createRequest(String...)}. Bodies
+	 * with attributes or namespace declarations of their own don't fit the
+	 * template, such requests are serialized as a whole. Like
+	 * {@link #createRequestBuffer(String...)} the request is returned as a
+	 * read-only view of a buffer that is reused by the calling thread.
+	 * 
+	 * @param params
+	 *            Parameters that may be used when creating the request.
+	 * @return A read-only view of the request.
+	 */
+	public final ByteBuffer createTemplatedRequest(String... params) {
+		String id = null;
+		if (messageIdStrategy == null) {
+			id = generateRandomId();
+			if (!RequestTemplate.isVerbatim(id)) {
+				// Let the DOM path take care of escaping
+				return createDomRequestBuffer(id, params);
+			}
+		}
+		Element body = DocumentHelper.createElement(XMLProtocol.BODY_ELEMENT);
+		createBody(body, params);
+		if (body.attributeCount() > 0 || !body.declaredNamespaces().isEmpty()) {
+			// The template only has a plain body start tag
+			return createDomRequestBuffer(id != null ? id : Long.toString(messageIdStrategy.nextId()), body);
+		}
+		RequestBuffer buffer = RequestBuffer.forCurrentThread();
+		try {
+			buffer.write(RequestTemplate.PREFIX);
+			if (id == null) {
+				buffer.writeDecimal(messageIdStrategy.nextId());
+			} else {
+				buffer.writeAscii(id);
+			}
+			if (body.nodeCount() == 0) {
+				buffer.write(RequestTemplate.EMPTY_BODY_SUFFIX);
+			} else {
+				buffer.write(RequestTemplate.HEADER_SUFFIX);
+				XMLWriter writer = new XMLWriter(buffer);
+				for (int i = 0, size = body.nodeCount(); i < size; i++) {
+					writer.write(body.node(i));
+				}
+				writer.flush();
+				buffer.write(RequestTemplate.SUFFIX);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to create request", e);
+		}
+		return buffer.toReadOnlyByteBuffer();
+	}
+
+	private ByteBuffer createDomRequestBuffer(String id, String... params) {
+		try {
+			return convertDocumentToByteBuffer(createDocument(id, params));
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to create request", e);
+		}
+	}
+
+	/**
+	 * Serializes a request around a body that has been created already.
+	 */
+	private ByteBuffer createDomRequestBuffer(String id, Element body) {
+		Document document = DocumentHelper.createDocument();
+		Element root = document.addElement(XMLProtocol.ENCODE_ELEMENT);
+		Element header = root.addElement(XMLProtocol.HEADER_ELEMENT);
+		header.addAttribute(XMLProtocol.HEADER_MSG_ID_ATTRIBUTE, id);
+		root.add(body);
+		try {
+			return convertDocumentToByteBuffer(document);
+		} catch (IOException e) {
+			throw new RuntimeException("Failed to create request", e);
+		}
+	}
+
+	private Document createDocument(String id, String... params) {
+		Document document = DocumentHelper.createDocument();
+		Element root = document.addElement(XMLProtocol.ENCODE_ELEMENT);
+		Element header = root.addElement(XMLProtocol.HEADER_ELEMENT);
+		header.addAttribute(XMLProtocol.HEADER_MSG_ID_ATTRIBUTE, id);
+		Element body = root.addElement(XMLProtocol.BODY_ELEMENT);
+		createBody(body, params);
+		return document;
+	}
+
+	/**
+	 * Write a request straight to <code>out</code> without building a dom4j
+	 * document first. The request has the same structure as the one created
+	 * by {@link #createRequest(String...)}, the body is written by
+	 * {@link #writeBody(XMLStreamWriter, String...)}. The stream is flushed
+	 * but not closed.
+	 * 
+	 * @param out
+	 *            The stream to write the request to.
+	 * @param params
+	 *            Parameters that may be used when creating the request.
+	 * @throws IOException
+	 *             If an exception occurs when writing the request.
+	 */
+	public final void writeRequest(OutputStream out, String... params)
+			throws IOException {
+		try {
+			XMLStreamWriter writer = OutputFactoryHolder.INSTANCE.createXMLStreamWriter(out, ENCODING);
+			try {
+				writer.writeStartDocument(ENCODING, "1.0");
+				writer.writeStartElement(XMLProtocol.ENCODE_ELEMENT);
+				writer.writeEmptyElement(XMLProtocol.HEADER_ELEMENT);
+				writer.writeAttribute(XMLProtocol.HEADER_MSG_ID_ATTRIBUTE, generateRandomId());
+				writer.writeStartElement(XMLProtocol.BODY_ELEMENT);
+				writeBody(writer, params);
+				// Closes the body and root elements
+				writer.writeEndDocument();
+				writer.flush();
+			} finally {
+				writer.close();
+			}
+		} catch (XMLStreamException e) {
+			if (e.getNestedException() instanceof IOException) {
+				throw (IOException) e.getNestedException();
+			}
+			throw new IOException("Failed to write request", e);
+		}
+	}
+
+	/**
+	 * Writes the body content of a request created by
+	 * {@link #writeRequest(OutputStream, String...)}. The body element has
+	 * already been started when this method is called, so implementations
+	 * may write its attributes and namespace declarations first. The body is
+	 * ended afterwards, implementations must leave every element they start
+	 * closed.
+	 * <p>
+	 * The default implementation lets {@link #createBody(Element, String...)}
+	 * fill a detached body element and writes its attributes, namespace
+	 * declarations and content, subclasses that create requests at high rates
+	 * should override it to write the events directly.
+	 * 
+	 * @param writer
+	 *            The writer to write the body content to.
+	 * @param parameters
+	 *            Parameters that may be used when creating the request.
+	 * @throws XMLStreamException
+	 *             If an exception occurs when writing the body.
+	 */
+	protected void writeBody(XMLStreamWriter writer, String... parameters)
+			throws XMLStreamException {
+		Element body = DocumentHelper.createElement(XMLProtocol.BODY_ELEMENT);
+		createBody(body, parameters);
+		NamespaceScope scope = new NamespaceScope();
+		scope.enter();
+		writeNamespacesAndAttributes(writer, body, scope);
+		writeContent(writer, body, scope);
+		scope.exit();
+	}
+
+	private static void writeContent(XMLStreamWriter writer, Element element, NamespaceScope scope)
+			throws XMLStreamException {
+		for (int i = 0, size = element.nodeCount(); i < size; i++) {
+			writeNode(writer, element.node(i), scope);
+		}
+	}
+
+	private static void writeNode(XMLStreamWriter writer, Node node, NamespaceScope scope)
+			throws XMLStreamException {
+		if (node instanceof Element) {
+			writeElement(writer, (Element) node, scope);
+		} else if (node instanceof CDATA) {
+			writer.writeCData(node.getText());
+		} else if (node instanceof Text) {
+			writer.writeCharacters(node.getText());
+		} else if (node instanceof Comment) {
+			writer.writeComment(node.getText());
+		} else if (node instanceof ProcessingInstruction) {
+			ProcessingInstruction instruction = (ProcessingInstruction) node;
+			writer.writeProcessingInstruction(instruction.getTarget(), instruction.getText());
+		} else if (node instanceof Entity) {
+			writer.writeEntityRef(node.getName());
+		}
+	}
+
+	private static void writeElement(XMLStreamWriter writer, Element element, NamespaceScope scope)
+			throws XMLStreamException {
+		if (element.nodeCount() == 0) {
+			writer.writeEmptyElement(element.getNamespacePrefix(), element.getName(), element.getNamespaceURI());
+		} else {
+			writer.writeStartElement(element.getNamespacePrefix(), element.getName(), element.getNamespaceURI());
+		}
+		scope.enter();
+		writeNamespacesAndAttributes(writer, element, scope);
+		if (element.nodeCount() > 0) {
+			writeContent(writer, element, scope);
+			writer.writeEndElement();
+		}
+		scope.exit();
+	}
+
+	/**
+	 * Writes the namespace declarations and attributes of the element that
+	 * has just been started.
+	 */
+	private static void writeNamespacesAndAttributes(XMLStreamWriter writer, Element element, NamespaceScope scope)
+			throws XMLStreamException {
+		scope.declare(writer, element.getNamespace());
+		for (Object namespace : element.declaredNamespaces()) {
+			scope.declare(writer, (Namespace) namespace);
+		}
+		for (int i = 0, size = element.attributeCount(); i < size; i++) {
+			Attribute attribute = element.attribute(i);
+			if (attribute.getNamespaceURI().length() == 0) {
+				writer.writeAttribute(attribute.getName(), attribute.getValue());
+			} else {
+				scope.declare(writer, attribute.getNamespace());
+				writer.writeAttribute(attribute.getNamespacePrefix(), attribute.getNamespaceURI(), attribute.getName(),
+						attribute.getValue());
+			}
+		}
+	}
+
+	/**
+	 * The namespace bindings that have been written for the open elements.
+	 * The namespace context of a non-repairing writer doesn't follow the
+	 * declarations that are written, so they are tracked here.
+	 */
+	private static final class NamespaceScope {
+		private final List<String> prefixes = new ArrayList<String>();
+
+		private final List<String> uris = new ArrayList<String>();
+
+		/**
+		 * The number of bindings when each open element was started.
+		 */
+		private int[] marks = new int[8];
+
+		private int depth;
+
+		NamespaceScope() {
+			// Bound by definition, must not be declared
+			prefixes.add(Namespace.XML_NAMESPACE.getPrefix());
+			uris.add(Namespace.XML_NAMESPACE.getURI());
+		}
+
+		void enter() {
+			if (depth == marks.length) {
+				marks = Arrays.copyOf(marks, depth * 2);
+			}
+			marks[depth++] = prefixes.size();
+		}
+
+		void exit() {
+			int mark = marks[--depth];
+			for (int i = prefixes.size() - 1; i >= mark; i--) {
+				prefixes.remove(i);
+				uris.remove(i);
+			}
+		}
+
+		/**
+		 * Declares <code>namespace</code> on the current element unless it is
+		 * in scope already.
+		 */
+		void declare(XMLStreamWriter writer, Namespace namespace) throws XMLStreamException {
+			String prefix = namespace.getPrefix();
+			String uri = namespace.getURI();
+			if (uri.equals(uriFor(prefix))) {
+				return;
+			}
+			prefixes.add(prefix);
+			uris.add(uri);
+			if (prefix.length() == 0) {
+				writer.writeDefaultNamespace(uri);
+			} else {
+				writer.writeNamespace(prefix, uri);
+			}
+		}
+
+		/**
+		 * @return The URI bound to <code>prefix</code>, an empty string if it
+		 *         isn't bound.
+		 */
+		private String uriFor(String prefix) {
+			for (int i = prefixes.size() - 1; i >= 0; i--) {
+				if (prefixes.get(i).equals(prefix)) {
+					return uris.get(i);
+				}
+			}
+			return "";
+		}
+	}
+
 	/**
 	 * Subclasses should implement this method to add the body content of the
 	 * request.
@@ -93,11 +507,16 @@ public abstract class AbstractXMLRequestCreatorBase {
 
 	/**
 	 * Generates a random <code>int</code> between 0 and 999. This
-	 * <code>int</code> is then converted to a String which is returned.
+	 * <code>int</code> is then converted to a String which is returned. If
+	 * the request creator has a {@link MessageIdStrategy} the next id of the
+	 * strategy is returned instead.
 	 * 
 	 * @return A new String of the generated <code>int</code>.
 	 */
 	String generateRandomId() {
+		if (messageIdStrategy != null) {
+			return Long.toString(messageIdStrategy.nextId());
+		}
 		return Integer.toString(new Random(System.nanoTime()).nextInt(1000));
 	}
 }
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powermock.examples.dom4j;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link MessageIdStrategy} that hands out random ids from the whole
+ * non-negative <code>long</code> range, which makes collisions between
+ * independent senders unlikely. Each thread has its own xorshift generator,
+ * so creating an id neither locks nor allocates.
+ * <p>
+ * The ids are not suitable for security purposes.
+ */
+public class RandomMessageIdStrategy implements MessageIdStrategy {
+
+	private static final AtomicLong SEEDS = new AtomicLong(System.nanoTime());
+
+	private final ThreadLocal<long[]> states = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[] { mix(SEEDS.addAndGet(0x9E3779B97F4A7C15L) ^ Thread.currentThread().getId()) };
+		}
+	};
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long nextId() {
+		long[] state = states.get();
+		long x = state[0];
+		x ^= x >>> 12;
+		x ^= x << 25;
+		x ^= x >>> 27;
+		state[0] = x;
+		return (x * 0x2545F4914F6CDD1DL) >>> 1;
+	}
+
+	/**
+	 * Spreads the bits of a seed, the result is never 0 which would be a
+	 * fixed point of the generator.
+	 */
+	private static long mix(long seed) {
+		long z = seed;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		z ^= z >>> 31;
+		return z == 0 ? 0x9E3779B97F4A7C15L : z;
+	}
+}
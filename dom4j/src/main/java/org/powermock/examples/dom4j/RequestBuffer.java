@@ -0,0 +1,126 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powermock.examples.dom4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * A growable byte buffer whose content can be handed out without copying it.
+ * Each thread reuses its own buffer, see {@link #forCurrentThread()}, so the
+ * content is only valid until the buffer is requested again on the same
+ * thread.
+ */
+class RequestBuffer extends ByteArrayOutputStream {
+
+	private static final int INITIAL_SIZE = 1024;
+
+	/**
+	 * Buffers that have grown beyond this size are dropped instead of being
+	 * reused, so that a single large request doesn't pin its memory for the
+	 * lifetime of the thread.
+	 */
+	static final int MAX_RETAINED_SIZE = 1024 * 1024;
+
+	private static final ThreadLocal<RequestBuffer> BUFFERS = new ThreadLocal<RequestBuffer>();
+
+	RequestBuffer() {
+		super(INITIAL_SIZE);
+	}
+
+	/**
+	 * @return The empty buffer of the current thread.
+	 */
+	static RequestBuffer forCurrentThread() {
+		RequestBuffer buffer = BUFFERS.get();
+		if (buffer == null || buffer.buf.length > MAX_RETAINED_SIZE) {
+			buffer = new RequestBuffer();
+			BUFFERS.set(buffer);
+		} else {
+			buffer.reset();
+		}
+		return buffer;
+	}
+
+	/**
+	 * Writes <code>value</code> as ASCII decimal digits.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             If <code>value</code> is negative.
+	 */
+	void writeDecimal(long value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Value cannot be negative but was " + value);
+		}
+		int digits = 1;
+		for (long remaining = value / 10; remaining != 0; remaining /= 10) {
+			digits++;
+		}
+		ensureCapacity(count + digits);
+		long remaining = value;
+		for (int i = count + digits - 1; i >= count; i--) {
+			buf[i] = (byte) ('0' + remaining % 10);
+			remaining /= 10;
+		}
+		count += digits;
+	}
+
+	/**
+	 * Writes the characters of <code>value</code>, which must all be ASCII.
+	 */
+	void writeAscii(String value) {
+		int length = value.length();
+		ensureCapacity(count + length);
+		for (int i = 0; i < length; i++) {
+			buf[count + i] = (byte) value.charAt(i);
+		}
+		count += length;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > buf.length) {
+			buf = Arrays.copyOf(buf, Math.max(buf.length << 1, capacity));
+		}
+	}
+
+	/**
+	 * @return A read-only view of the content that shares the backing array.
+	 */
+	ByteBuffer toReadOnlyByteBuffer() {
+		return ByteBuffer.wrap(buf, 0, count).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Writes the whole content to <code>channel</code>, which must be in
+	 * blocking mode.
+	 */
+	void writeTo(WritableByteChannel channel) throws IOException {
+		ByteBuffer content = ByteBuffer.wrap(buf, 0, count);
+		while (content.hasRemaining()) {
+			channel.write(content);
+		}
+	}
+
+	/**
+	 * Closing has no effect, the buffer stays usable.
+	 */
+	@Override
+	public void close() {
+	}
+}
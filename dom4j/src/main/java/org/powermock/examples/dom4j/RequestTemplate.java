@@ -0,0 +1,62 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powermock.examples.dom4j;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * The constant parts of a serialized request, as written by
+ * {@link org.dom4j.io.XMLWriter} with its default format. A request is
+ * {@link #PREFIX}, the message id and either {@link #EMPTY_BODY_SUFFIX} or
+ * {@link #HEADER_SUFFIX}, the body content and {@link #SUFFIX}.
+ */
+final class RequestTemplate {
+
+	static final byte[] PREFIX = bytes("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<" + XMLProtocol.ENCODE_ELEMENT + "><"
+			+ XMLProtocol.HEADER_ELEMENT + " " + XMLProtocol.HEADER_MSG_ID_ATTRIBUTE + "=\"");
+
+	static final byte[] HEADER_SUFFIX = bytes("\"/><" + XMLProtocol.BODY_ELEMENT + ">");
+
+	static final byte[] SUFFIX = bytes("</" + XMLProtocol.BODY_ELEMENT + "></" + XMLProtocol.ENCODE_ELEMENT + ">");
+
+	static final byte[] EMPTY_BODY_SUFFIX = bytes("\"/><" + XMLProtocol.BODY_ELEMENT + "/></" + XMLProtocol.ENCODE_ELEMENT
+			+ ">");
+
+	private RequestTemplate() {
+	}
+
+	/**
+	 * @return <code>true</code> if <code>value</code> is written to an
+	 *         attribute as is, one byte per character.
+	 */
+	static boolean isVerbatim(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c < 0x20 || c >= 0x7f || c == '<' || c == '>' || c == '&' || c == '"') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static byte[] bytes(String value) {
+		try {
+			return value.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powermock.examples.dom4j;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link MessageIdStrategy} that hands out unique, increasing ids. Each
+ * thread reserves a block of ids at a time and counts through it without
+ * synchronization, so ids are increasing per thread but threads interleave
+ * by block.
+ */
+public class SequentialMessageIdStrategy implements MessageIdStrategy {
+
+	static final int BLOCK_SIZE = 1024;
+
+	private final AtomicLong nextBlock;
+
+	private final ThreadLocal<long[]> blocks = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			// The next id and the end of the block, the block starts exhausted
+			return new long[2];
+		}
+	};
+
+	/**
+	 * Creates a strategy whose first id is 0.
+	 */
+	public SequentialMessageIdStrategy() {
+		this(0);
+	}
+
+	/**
+	 * Creates a strategy whose first id is <code>firstId</code>.
+	 * 
+	 * @param firstId
+	 *            The first id to hand out.
+	 * @throws IllegalArgumentException
+	 *             If <code>firstId</code> is negative.
+	 */
+	public SequentialMessageIdStrategy(long firstId) {
+		if (firstId < 0) {
+			throw new IllegalArgumentException("The first id cannot be negative but was " + firstId);
+		}
+		nextBlock = new AtomicLong(firstId);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long nextId() {
+		long[] block = blocks.get();
+		if (block[0] == block[1]) {
+			block[0] = nextBlock.getAndAdd(BLOCK_SIZE);
+			if (block[0] < 0 || block[0] > Long.MAX_VALUE - BLOCK_SIZE) {
+				throw new IllegalStateException("Message ids are exhausted");
+			}
+			block[1] = block[0] + BLOCK_SIZE;
+		}
+		return block[0]++;
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powermock.examples.dom4j;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Decodes requests created by {@link AbstractXMLRequestCreatorBase} with a
+ * pull parser. The message id and the body content are reported to a
+ * {@link RequestHandler} while the request is read, so the request is never
+ * held in memory as a whole.
+ */
+public class XMLRequestDecoder {
+
+	/**
+	 * Holds the factory, so that it is only looked up when a request is
+	 * decoded for the first time. The factory is only used to create readers,
+	 * which is safe to do concurrently.
+	 */
+	private static final class InputFactoryHolder {
+		static final XMLInputFactory INSTANCE = createInputFactory();
+
+		private static XMLInputFactory createInputFactory() {
+			XMLInputFactory factory = XMLInputFactory.newInstance();
+			// Requests never have a DTD and large text must not be merged
+			// into a single event
+			factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+			factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+			factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+			return factory;
+		}
+	}
+
+	/**
+	 * Receives the parts of a decoded request. The reader that is passed to
+	 * the body callbacks is positioned at the reported event and must not be
+	 * advanced, reading attributes or text from it doesn't create copies.
+	 */
+	public interface RequestHandler {
+		/**
+		 * Called once with the message id from the request header, before
+		 * the body is reported.
+		 */
+		void messageId(String messageId);
+
+		/**
+		 * Called for each element that starts in the body.
+		 */
+		void startElement(XMLStreamReader reader) throws XMLStreamException;
+
+		/**
+		 * Called for text in the body, text may be reported in several
+		 * chunks.
+		 */
+		void characters(XMLStreamReader reader) throws XMLStreamException;
+
+		/**
+		 * Called for each element that ends in the body.
+		 */
+		void endElement(XMLStreamReader reader) throws XMLStreamException;
+	}
+
+	/**
+	 * Decode the request that is read from <code>channel</code>. The channel
+	 * is read up to the end of the request, but may be read further, and is
+	 * not closed.
+	 * 
+	 * @param channel
+	 *            The channel to read the request from.
+	 * @param handler
+	 *            The handler that receives the message id and body.
+	 * @throws IOException
+	 *             If the request can't be read or isn't a well-formed
+	 *             request.
+	 */
+	public void decode(ReadableByteChannel channel, RequestHandler handler)
+			throws IOException {
+		try {
+			XMLStreamReader reader = InputFactoryHolder.INSTANCE.createXMLStreamReader(Channels.newInputStream(channel));
+			try {
+				requireStart(reader, XMLProtocol.ENCODE_ELEMENT);
+				requireStart(reader, XMLProtocol.HEADER_ELEMENT);
+				String messageId = reader.getAttributeValue(null, XMLProtocol.HEADER_MSG_ID_ATTRIBUTE);
+				if (messageId == null) {
+					throw new IOException("Request header has no " + XMLProtocol.HEADER_MSG_ID_ATTRIBUTE + " attribute");
+				}
+				handler.messageId(messageId);
+				reader.nextTag();
+				requireStart(reader, XMLProtocol.BODY_ELEMENT);
+				decodeBody(reader, handler);
+				if (reader.nextTag() != XMLStreamConstants.END_ELEMENT) {
+					throw new IOException("Expected </" + XMLProtocol.ENCODE_ELEMENT + "> but got " + describe(reader));
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException e) {
+			if (e.getNestedException() instanceof IOException) {
+				throw (IOException) e.getNestedException();
+			}
+			throw new IOException("Failed to decode request", e);
+		}
+	}
+
+	private static void decodeBody(XMLStreamReader reader, RequestHandler handler)
+			throws XMLStreamException {
+		int depth = 0;
+		for (;;) {
+			switch (reader.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				depth++;
+				handler.startElement(reader);
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				if (depth == 0) {
+					return;
+				}
+				depth--;
+				handler.endElement(reader);
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				handler.characters(reader);
+				break;
+			default:
+				// Comments and processing instructions aren't part of the
+				// content
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Moves to the next tag and checks that it starts <code>name</code>.
+	 */
+	private static void requireStart(XMLStreamReader reader, String name)
+			throws XMLStreamException, IOException {
+		if (reader.nextTag() != XMLStreamConstants.START_ELEMENT || !name.equals(reader.getLocalName())) {
+			throw new IOException("Expected <" + name + "> but got " + describe(reader));
+		}
+	}
+
+	private static String describe(XMLStreamReader reader) {
+		return reader.isEndElement() ? "</" + reader.getLocalName() + ">" : "<" + reader.getLocalName() + ">";
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powermock.examples.dom4j;
+
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for the buffer and stream based output methods of the
+ * {@link AbstractXMLRequestCreatorBase} class.
+ */
+public class DocumentOutputTest {
+
+	private AbstractXMLRequestCreatorBase tested;
+
+	private Document document;
+
+	@Before
+	public void setUp() throws Exception {
+		tested = new AbstractXMLRequestCreatorBase() {
+			@Override
+			protected void createBody(Element body, String... parameters) {
+				body.addElement("ListExecutionContexts").addAttribute("id", parameters[0]);
+			}
+
+			@Override
+			String generateRandomId() {
+				return "42";
+			}
+		};
+		document = DocumentHelper.createDocument();
+		document.addElement("ListExecutionContexts").addAttribute("id", "2");
+	}
+
+	@Test
+	public void testConvertDocumentToByteBuffer() throws Exception {
+		ByteBuffer buffer = tested.convertDocumentToByteBuffer(document);
+
+		assertTrue(buffer.isReadOnly());
+		assertArrayEquals(tested.convertDocumentToByteArray(document), toArray(buffer));
+	}
+
+	@Test
+	public void testCreateRequestBuffer() throws Exception {
+		assertArrayEquals(tested.createRequest("7"), toArray(tested.createRequestBuffer("7")));
+	}
+
+	@Test
+	public void testWriteDocumentToStreamDoesNotCloseIt() throws Exception {
+		final boolean[] closed = new boolean[1];
+		ByteArrayOutputStream out = new ByteArrayOutputStream() {
+			@Override
+			public void close() throws IOException {
+				closed[0] = true;
+			}
+		};
+
+		tested.writeDocument(document, out);
+
+		assertFalse(closed[0]);
+		assertArrayEquals(tested.convertDocumentToByteArray(document), out.toByteArray());
+	}
+
+	@Test
+	public void testWriteDocumentToChannelWritesEverything() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final WritableByteChannel target = Channels.newChannel(out);
+		// Only accepts a few bytes per write
+		WritableByteChannel channel = new WritableByteChannel() {
+			@Override
+			public int write(ByteBuffer source) throws IOException {
+				ByteBuffer chunk = source.slice();
+				chunk.limit(Math.min(chunk.remaining(), 7));
+				int written = target.write(chunk);
+				source.position(source.position() + written);
+				return written;
+			}
+
+			@Override
+			public boolean isOpen() {
+				return true;
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+
+		tested.writeDocument(document, channel);
+
+		assertArrayEquals(tested.convertDocumentToByteArray(document), out.toByteArray());
+	}
+
+	@Test
+	public void testLargeBuffersAreNotRetained() throws Exception {
+		RequestBuffer buffer = RequestBuffer.forCurrentThread();
+		assertSame(buffer, RequestBuffer.forCurrentThread());
+
+		buffer.write(new byte[RequestBuffer.MAX_RETAINED_SIZE + 1]);
+
+		RequestBuffer next = RequestBuffer.forCurrentThread();
+		assertNotSame(buffer, next);
+		assertEquals(0, next.size());
+	}
+
+	private static byte[] toArray(ByteBuffer buffer) {
+		byte[] array = new byte[buffer.remaining()];
+		buffer.get(array);
+		return array;
+	}
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powermock.examples.dom4j;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for the {@link RandomMessageIdStrategy} class.
+ */
+public class RandomMessageIdStrategyTest {
+
+	@Test
+	public void testIdsAreNonNegativeAndSpread() throws Exception {
+		RandomMessageIdStrategy tested = new RandomMessageIdStrategy();
+		Set<Long> ids = new HashSet<Long>();
+		boolean large = false;
+		for (int i = 0; i < 10000; i++) {
+			long id = tested.nextId();
+			assertTrue(id >= 0);
+			assertTrue(ids.add(id));
+			large |= id > Integer.MAX_VALUE;
+		}
+		assertTrue(large);
+	}
+
+	@Test
+	public void testThreadsHaveDifferentSequences() throws Exception {
+		final RandomMessageIdStrategy tested = new RandomMessageIdStrategy();
+		final long[] other = new long[1];
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				other[0] = tested.nextId();
+			}
+		};
+		thread.start();
+		thread.join();
+
+		assertTrue(other[0] != tested.nextId());
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powermock.examples.dom4j;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for the {@link RequestBuffer} class.
+ */
+public class RequestBufferTest {
+
+	private RequestBuffer tested;
+
+	@Before
+	public void setUp() throws Exception {
+		tested = new RequestBuffer();
+	}
+
+	@Test
+	public void testWriteDecimal() throws Exception {
+		long[] values = { 0, 7, 10, 999, 1000, 1234567890123L, Long.MAX_VALUE };
+		for (long value : values) {
+			tested.reset();
+			tested.writeDecimal(value);
+			assertEquals(Long.toString(value), tested.toString("US-ASCII"));
+		}
+	}
+
+	@Test
+	public void testWritesGrowBuffer() throws Exception {
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 500; i++) {
+			tested.writeDecimal(Long.MAX_VALUE);
+			tested.writeAscii("-id-");
+			expected.append(Long.MAX_VALUE).append("-id-");
+		}
+
+		ByteBuffer content = tested.toReadOnlyByteBuffer();
+		byte[] bytes = new byte[content.remaining()];
+		content.get(bytes);
+		assertEquals(expected.toString(), new String(bytes, "US-ASCII"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWriteDecimalRejectsNegativeValues() throws Exception {
+		tested.writeDecimal(-1);
+	}
+}
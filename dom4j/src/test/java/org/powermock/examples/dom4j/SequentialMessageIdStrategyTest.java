@@ -0,0 +1,88 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powermock.examples.dom4j;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for the {@link SequentialMessageIdStrategy} class.
+ */
+public class SequentialMessageIdStrategyTest {
+
+	@Test
+	public void testIdsIncreaseFromFirstId() throws Exception {
+		SequentialMessageIdStrategy tested = new SequentialMessageIdStrategy(5);
+
+		for (long expected = 5; expected < 5 + 3 * SequentialMessageIdStrategy.BLOCK_SIZE; expected++) {
+			assertEquals(expected, tested.nextId());
+		}
+	}
+
+	@Test
+	public void testIdsAreUniqueAcrossThreads() throws Exception {
+		final SequentialMessageIdStrategy tested = new SequentialMessageIdStrategy();
+		final int idsPerThread = 5000;
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<long[]>> results = new ArrayList<Future<long[]>>();
+			for (int i = 0; i < 4; i++) {
+				results.add(executor.submit(new Callable<long[]>() {
+					@Override
+					public long[] call() throws Exception {
+						long[] ids = new long[idsPerThread];
+						for (int j = 0; j < ids.length; j++) {
+							ids[j] = tested.nextId();
+						}
+						return ids;
+					}
+				}));
+			}
+			Set<Long> all = new HashSet<Long>();
+			for (Future<long[]> result : results) {
+				long[] ids = result.get();
+				for (int j = 0; j < ids.length; j++) {
+					assertTrue(all.add(ids[j]));
+					if (j > 0) {
+						assertTrue(ids[j] > ids[j - 1]);
+					}
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testFailsWhenIdsAreExhausted() throws Exception {
+		new SequentialMessageIdStrategy(Long.MAX_VALUE - 10).nextId();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsNegativeFirstId() throws Exception {
+		new SequentialMessageIdStrategy(-1);
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powermock.examples.dom4j;
+
+import org.dom4j.Document;
+import org.dom4j.Element;
+import org.dom4j.Namespace;
+import org.dom4j.QName;
+import org.dom4j.io.SAXReader;
+import org.junit.Test;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for the
+ * {@link AbstractXMLRequestCreatorBase#writeRequest(OutputStream, String...)}
+ * method.
+ */
+public class StreamingRequestTest {
+
+	/**
+	 * Creates a body with nested elements, attributes, text that must be
+	 * escaped, CDATA, comments and namespaces.
+	 */
+	private static class DomRequestCreator extends AbstractXMLRequestCreatorBase {
+		@Override
+		protected void createBody(Element body, String... parameters) {
+			Element contexts = body.addElement("ListExecutionContexts");
+			contexts.addAttribute("id", parameters[0]);
+			contexts.addElement("Filter").addText("a < b && \"c\" > 'd'");
+			contexts.addElement("Empty");
+			body.addCDATA("raw <data>");
+			body.addComment("comment");
+			Namespace namespace = Namespace.get("ns", "urn:example");
+			Element qualified = body.addElement(QName.get("Qualified", namespace));
+			qualified.addAttribute(QName.get("type", namespace), "x");
+			qualified.addElement(QName.get("Child", namespace)).addText(parameters[1]);
+		}
+
+		@Override
+		String generateRandomId() {
+			return "42";
+		}
+	}
+
+	@Test
+	public void testWriteRequestMatchesCreateRequest() throws Exception {
+		assertSameAsCreateRequest(new DomRequestCreator());
+	}
+
+	@Test
+	public void testWriteRequestKeepsBodyAttributes() throws Exception {
+		AbstractXMLRequestCreatorBase tested = new DomRequestCreator() {
+			@Override
+			protected void createBody(Element body, String... parameters) {
+				body.addAttribute("version", "2");
+				body.addElement("X");
+			}
+		};
+
+		assertSameAsCreateRequest(tested);
+		assertEquals("2", parse(writeRequest(tested)).getRootElement().element(XMLProtocol.BODY_ELEMENT).attributeValue("version"));
+	}
+
+	@Test
+	public void testWriteRequestDeclaresBodyNamespaces() throws Exception {
+		AbstractXMLRequestCreatorBase tested = new DomRequestCreator() {
+			@Override
+			protected void createBody(Element body, String... parameters) {
+				body.addNamespace("p", "urn:p");
+				body.addElement("p:X").addElement("p:Y");
+				body.addElement(QName.get("Z", Namespace.get("urn:default")));
+				body.addElement("Plain").addAttribute(QName.get("lang", Namespace.XML_NAMESPACE), "en");
+			}
+		};
+
+		assertSameAsCreateRequest(tested);
+		Element body = parse(writeRequest(tested)).getRootElement().element(XMLProtocol.BODY_ELEMENT);
+		assertEquals("urn:p", body.element(QName.get("X", Namespace.get("urn:p"))).getNamespaceURI());
+	}
+
+	@Test
+	public void testWriteRequestUsesOverriddenWriteBody() throws Exception {
+		AbstractXMLRequestCreatorBase tested = new DomRequestCreator() {
+			@Override
+			protected void createBody(Element body, String... parameters) {
+				fail("The DOM body shouldn't be created");
+			}
+
+			@Override
+			protected void writeBody(XMLStreamWriter writer, String... parameters) throws XMLStreamException {
+				writer.writeStartElement("ListExecutionContexts");
+				writer.writeAttribute("id", parameters[0]);
+				writer.writeEndElement();
+			}
+		};
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		tested.writeRequest(out, "2");
+
+		Element root = parse(out.toByteArray()).getRootElement();
+		assertEquals(XMLProtocol.ENCODE_ELEMENT, root.getName());
+		assertEquals("42", root.element(XMLProtocol.HEADER_ELEMENT).attributeValue(XMLProtocol.HEADER_MSG_ID_ATTRIBUTE));
+		Element body = root.element(XMLProtocol.BODY_ELEMENT);
+		assertEquals(1, body.nodeCount());
+		assertEquals("2", body.element("ListExecutionContexts").attributeValue("id"));
+	}
+
+	@Test
+	public void testWriteRequestDoesNotCloseStream() throws Exception {
+		final boolean[] closed = new boolean[1];
+		ByteArrayOutputStream out = new ByteArrayOutputStream() {
+			@Override
+			public void close() throws IOException {
+				closed[0] = true;
+			}
+		};
+
+		new DomRequestCreator().writeRequest(out, "1", "2");
+
+		assertFalse(closed[0]);
+		assertTrue(out.size() > 0);
+	}
+
+	private static byte[] writeRequest(AbstractXMLRequestCreatorBase tested) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		tested.writeRequest(out, "7", "text");
+		return out.toByteArray();
+	}
+
+	private static void assertSameAsCreateRequest(AbstractXMLRequestCreatorBase tested) throws Exception {
+		assertEquals(parse(tested.createRequest("7", "text")).asXML(), parse(writeRequest(tested)).asXML());
+	}
+
+	private static Document parse(byte[] request) throws Exception {
+		return new SAXReader().read(new ByteArrayInputStream(request));
+	}
+}
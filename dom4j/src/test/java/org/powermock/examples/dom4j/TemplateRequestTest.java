@@ -0,0 +1,154 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powermock.examples.dom4j;
+
+import org.dom4j.Element;
+import org.dom4j.Namespace;
+import org.dom4j.QName;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Differential test that checks that
+ * {@link AbstractXMLRequestCreatorBase#createTemplatedRequest(String...)}
+ * creates the same bytes as
+ * {@link AbstractXMLRequestCreatorBase#createRequest(String...)}.
+ */
+public class TemplateRequestTest {
+
+	private static final String[] IDS = { "0", "213", "999", "9223372036854775807", "a-b_c.d", "1&2", "\"quoted\"",
+			"<id>", "tab\tid", "\u00e9t\u00e9" };
+
+	/**
+	 * Uses the id set by the test, so that both paths see the same id.
+	 */
+	private abstract static class FixedIdRequestCreator extends AbstractXMLRequestCreatorBase {
+		String id;
+
+		@Override
+		String generateRandomId() {
+			return id;
+		}
+	}
+
+	@Test
+	public void testEmptyBody() throws Exception {
+		assertSameRequests(new FixedIdRequestCreator() {
+			@Override
+			protected void createBody(Element body, String... parameters) {
+			}
+		});
+	}
+
+	@Test
+	public void testAttributeBody() throws Exception {
+		assertSameRequests(new FixedIdRequestCreator() {
+			@Override
+			protected void createBody(Element body, String... parameters) {
+				body.addElement("ListExecutionContexts").addAttribute("id", parameters[0]);
+			}
+		}, "2");
+	}
+
+	@Test
+	public void testMixedBody() throws Exception {
+		assertSameRequests(new FixedIdRequestCreator() {
+			@Override
+			protected void createBody(Element body, String... parameters) {
+				body.addText(" leading ");
+				Element contexts = body.addElement("ListExecutionContexts");
+				contexts.addAttribute("id", parameters[0]);
+				contexts.addAttribute("filter", "a < b && \"c\" > 'd'");
+				contexts.addElement("Filter").addText(parameters[1]);
+				contexts.addElement("Empty");
+				body.addCDATA("raw <data>");
+				body.addComment("comment");
+				body.addProcessingInstruction("target", "data");
+				Namespace namespace = Namespace.get("ns", "urn:example");
+				Element qualified = body.addElement(QName.get("Qualified", namespace));
+				qualified.addAttribute(QName.get("type", namespace), "x");
+				qualified.addElement(QName.get("Child", namespace)).addText("\u00e5\u00e4\u00f6 \u4e2d\u6587");
+				body.addElement("Default", "urn:default").addElement("Inherited", "urn:default");
+			}
+		}, "7", "x <&> y");
+	}
+
+	@Test
+	public void testBodyAttributes() throws Exception {
+		assertSameRequests(new FixedIdRequestCreator() {
+			@Override
+			protected void createBody(Element body, String... parameters) {
+				body.addAttribute("version", "2");
+				body.addElement("X");
+			}
+		});
+	}
+
+	@Test
+	public void testBodyNamespaces() throws Exception {
+		assertSameRequests(new FixedIdRequestCreator() {
+			@Override
+			protected void createBody(Element body, String... parameters) {
+				body.addNamespace("p", "urn:p");
+				body.addElement("p:X");
+			}
+		});
+	}
+
+	@Test
+	public void testMessageIdStrategy() throws Exception {
+		final long[] ids = { 0, 42, Long.MAX_VALUE };
+		AbstractXMLRequestCreatorBase tested = new AbstractXMLRequestCreatorBase(new MessageIdStrategy() {
+			private int next;
+
+			@Override
+			public long nextId() {
+				// Both paths get the same id
+				return ids[next++ / 2];
+			}
+		}) {
+			@Override
+			protected void createBody(Element body, String... parameters) {
+				body.addElement("ListExecutionContexts").addAttribute("id", parameters[0]);
+			}
+		};
+		for (int i = 0; i < ids.length; i++) {
+			byte[] expected = tested.createRequest("2");
+
+			ByteBuffer actual = tested.createTemplatedRequest("2");
+
+			byte[] array = new byte[actual.remaining()];
+			actual.get(array);
+			assertArrayEquals(expected, array);
+		}
+	}
+
+	private static void assertSameRequests(FixedIdRequestCreator tested, String... params) {
+		for (String id : IDS) {
+			tested.id = id;
+			byte[] expected = tested.createRequest(params);
+
+			ByteBuffer actual = tested.createTemplatedRequest(params);
+
+			byte[] array = new byte[actual.remaining()];
+			actual.get(array);
+			assertArrayEquals("id " + id, expected, array);
+		}
+	}
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powermock.examples.dom4j;
+
+import org.dom4j.Element;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for the {@link XMLRequestDecoder} class.
+ */
+public class XMLRequestDecoderTest {
+
+	private XMLRequestDecoder tested;
+
+	private RecordingHandler handler;
+
+	private AbstractXMLRequestCreatorBase creator;
+
+	/**
+	 * Records the reported parts, adjacent text chunks are merged.
+	 */
+	private static class RecordingHandler implements XMLRequestDecoder.RequestHandler {
+		final List<String> events = new ArrayList<String>();
+
+		String messageId;
+
+		StringBuilder text;
+
+		@Override
+		public void messageId(String messageId) {
+			this.messageId = messageId;
+		}
+
+		@Override
+		public void startElement(XMLStreamReader reader) throws XMLStreamException {
+			endText();
+			StringBuilder event = new StringBuilder("start ").append(reader.getLocalName());
+			for (int i = 0; i < reader.getAttributeCount(); i++) {
+				event.append(' ').append(reader.getAttributeLocalName(i)).append('=').append(reader.getAttributeValue(i));
+			}
+			events.add(event.toString());
+		}
+
+		@Override
+		public void characters(XMLStreamReader reader) throws XMLStreamException {
+			if (text == null) {
+				text = new StringBuilder();
+			}
+			text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+		}
+
+		@Override
+		public void endElement(XMLStreamReader reader) throws XMLStreamException {
+			endText();
+			events.add("end " + reader.getLocalName());
+		}
+
+		private void endText() {
+			if (text != null) {
+				events.add("text " + text);
+				text = null;
+			}
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		tested = new XMLRequestDecoder();
+		handler = new RecordingHandler();
+		creator = new AbstractXMLRequestCreatorBase() {
+			@Override
+			protected void createBody(Element body, String... parameters) {
+				Element contexts = body.addElement("ListExecutionContexts");
+				contexts.addAttribute("id", parameters[0]);
+				contexts.addElement("Filter").addText("a < b && c");
+				contexts.addElement("Empty");
+				body.addComment("ignored");
+				body.addCDATA("raw <data>");
+			}
+
+			@Override
+			String generateRandomId() {
+				return "42";
+			}
+		};
+	}
+
+	@Test
+	public void testDecodesCreatedRequest() throws Exception {
+		tested.decode(channel(creator.createRequest("7")), handler);
+
+		assertEquals("42", handler.messageId);
+		assertEquals(Arrays.asList("start ListExecutionContexts id=7", "start Filter", "text a < b && c", "end Filter",
+				"start Empty", "end Empty", "end ListExecutionContexts"), handler.events);
+		assertEquals("raw <data>", handler.text.toString());
+	}
+
+	@Test
+	public void testDecodesStreamedAndTemplatedRequests() throws Exception {
+		tested.decode(channel(creator.createRequest("7")), handler);
+		List<String> expected = new ArrayList<String>(handler.events);
+
+		ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+		creator.writeRequest(streamed, "7");
+		RecordingHandler streamedHandler = new RecordingHandler();
+		tested.decode(channel(streamed.toByteArray()), streamedHandler);
+		ByteBuffer templated = creator.createTemplatedRequest("7");
+		byte[] templatedBytes = new byte[templated.remaining()];
+		templated.get(templatedBytes);
+		RecordingHandler templatedHandler = new RecordingHandler();
+		tested.decode(channel(templatedBytes), templatedHandler);
+
+		assertEquals(expected, streamedHandler.events);
+		assertEquals("42", streamedHandler.messageId);
+		assertEquals(expected, templatedHandler.events);
+		assertEquals("42", templatedHandler.messageId);
+	}
+
+	@Test
+	public void testDecodesLargeBodyIncrementally() throws Exception {
+		final int elements = 100000;
+		AbstractXMLRequestCreatorBase large = new AbstractXMLRequestCreatorBase() {
+			@Override
+			protected void createBody(Element body, String... parameters) {
+				for (int i = 0; i < elements; i++) {
+					body.addElement("Entry").addAttribute("index", Integer.toString(i)).addText("value " + i);
+				}
+			}
+		};
+		byte[] request = large.createRequest();
+		final ReadableByteChannel channel = channel(request);
+		final int[] bytesReadAtFirstEntry = new int[1];
+		final int[] entries = new int[1];
+
+		tested.decode(channel, new RecordingHandler() {
+			@Override
+			public void startElement(XMLStreamReader reader) throws XMLStreamException {
+				if (entries[0]++ == 0) {
+					bytesReadAtFirstEntry[0] = ((CountingChannel) channel).bytesRead;
+				}
+			}
+
+			@Override
+			public void endElement(XMLStreamReader reader) {
+			}
+		});
+
+		assertEquals(elements, entries[0]);
+		assertTrue("The body should be reported before the whole request has been read",
+				bytesReadAtFirstEntry[0] < request.length / 10);
+	}
+
+	@Test(expected = IOException.class)
+	public void testRejectsUnknownRoot() throws Exception {
+		tested.decode(channel("<?xml version=\"1.0\"?><Other/>"), handler);
+	}
+
+	@Test(expected = IOException.class)
+	public void testRejectsMissingMessageId() throws Exception {
+		tested.decode(channel("<EncodeElement><MyHeader/><BodyElement/></EncodeElement>"), handler);
+	}
+
+	@Test(expected = IOException.class)
+	public void testRejectsTruncatedRequest() throws Exception {
+		tested.decode(channel("<EncodeElement><MyHeader MyMsgIdAttribute=\"1\"/><BodyElement><a>"), handler);
+	}
+
+	private static ReadableByteChannel channel(String request) throws Exception {
+		return channel(request.getBytes("UTF-8"));
+	}
+
+	private static ReadableByteChannel channel(byte[] request) {
+		return new CountingChannel(Channels.newChannel(new ByteArrayInputStream(request)));
+	}
+
+	/**
+	 * Counts the bytes that have been read.
+	 */
+	private static class CountingChannel implements ReadableByteChannel {
+		private final ReadableByteChannel delegate;
+
+		int bytesRead;
+
+		CountingChannel(ReadableByteChannel delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public int read(ByteBuffer destination) throws IOException {
+			int read = delegate.read(destination);
+			if (read > 0) {
+				bytesRead += read;
+			}
+			return read;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return delegate.isOpen();
+		}
+
+		@Override
+		public void close() throws IOException {
+			delegate.close();
+		}
+	}
+}
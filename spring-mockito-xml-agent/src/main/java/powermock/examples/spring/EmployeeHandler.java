@@ -0,0 +1,31 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package powermock.examples.spring;
+
+/**
+ * Receives the employees read by the {@link CompanyRepository}, one at a time
+ * and in document order.
+ */
+public interface EmployeeHandler {
+
+    /**
+     * Called for each employee.
+     *
+     * @param firstName The first name of the employee.
+     * @param lastName  The last name of the employee.
+     */
+    void employee(String firstName, String lastName);
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package powermock.examples.spring;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+
+/**
+ * Reads <code>employee</code> elements with a pull parser in a single pass,
+ * only the names of the current employee are kept in memory.
+ */
+final class EmployeeReader {
+
+    static final String EMPLOYEE = "employee";
+
+    static final String FIRST_NAME = "firstname";
+
+    static final String LAST_NAME = "lastname";
+
+    /**
+     * Holds the factory, so that it is only looked up when employees are read
+     * for the first time. The factory is only used to create readers, which
+     * is safe to do concurrently.
+     */
+    private static final class InputFactoryHolder {
+        static final XMLInputFactory INSTANCE = createInputFactory();
+
+        private static XMLInputFactory createInputFactory() {
+            final XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+            return factory;
+        }
+    }
+
+    private EmployeeReader() {
+    }
+
+    /**
+     * Reports every employee in <code>in</code> to <code>handler</code>. The
+     * stream is not closed.
+     *
+     * @throws XMLStreamException If the document is malformed or an employee
+     *                            lacks a first or last name.
+     */
+    static void read(InputStream in, EmployeeHandler handler) throws XMLStreamException {
+        final XMLStreamReader reader = InputFactoryHolder.INSTANCE.createXMLStreamReader(in);
+        try {
+            read(reader, handler);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reports the employees from the current position of <code>reader</code>
+     * up to the end of the document.
+     */
+    static void read(XMLStreamReader reader, EmployeeHandler handler) throws XMLStreamException {
+        while (reader.hasNext()) {
+            if (reader.next() == XMLStreamConstants.START_ELEMENT && EMPLOYEE.equals(reader.getLocalName())) {
+                readEmployee(reader, handler);
+            }
+        }
+    }
+
+    /**
+     * Reads the employee the reader is positioned at, up to its end tag.
+     */
+    private static void readEmployee(XMLStreamReader reader, EmployeeHandler handler) throws XMLStreamException {
+        String firstName = null;
+        String lastName = null;
+        int depth = 1;
+        while (depth > 0) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                final String name = reader.getLocalName();
+                if (firstName == null && FIRST_NAME.equals(name)) {
+                    // Reads up to the end tag, so the depth is unchanged
+                    firstName = reader.getElementText();
+                } else if (lastName == null && LAST_NAME.equals(name)) {
+                    lastName = reader.getElementText();
+                } else {
+                    depth++;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+        if (firstName == null || lastName == null) {
+            throw new XMLStreamException("Employee without " + (firstName == null ? FIRST_NAME : LAST_NAME), reader.getLocation());
+        }
+        handler.employee(firstName, lastName);
+    }
+}
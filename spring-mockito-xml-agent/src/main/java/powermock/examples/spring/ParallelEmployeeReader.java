@@ -0,0 +1,388 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package powermock.examples.spring;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Reads the employees of a large employee file in parallel. The file is
+ * memory-mapped and split into chunks of about the same size, each chunk is
+ * parsed on a fork-join pool. An employee belongs to the chunk its start tag
+ * begins in, and the employees of all chunks are merged in document order.
+ * <p>
+ * Chunks are found by searching for <code>&lt;employee</code> start tags in
+ * the raw bytes, so the file must be encoded in UTF-8 (or ASCII), the
+ * <code>employee</code> elements must not be nested or use a namespace
+ * prefix, and the tags must not appear in comments or CDATA sections. Files
+ * that declare another encoding are read sequentially.
+ */
+public class ParallelEmployeeReader {
+
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    private static final byte[] START_TAG = ascii("<" + EmployeeReader.EMPLOYEE);
+
+    private static final byte[] END_TAG = ascii("</" + EmployeeReader.EMPLOYEE + ">");
+
+    private static final byte[] CHUNK_START = ascii("<chunk>");
+
+    private static final byte[] CHUNK_END = ascii("</chunk>");
+
+    /**
+     * How far past its end a chunk is mapped at first, to find the end of its
+     * last employee. Doubled until the next employee or the end of the file
+     * is found.
+     */
+    private static final int INITIAL_OVERLAP = 64 * 1024;
+
+    private final ForkJoinPool pool;
+
+    private final int chunkSize;
+
+    /**
+     * @param pool      The pool that parses the chunks.
+     * @param chunkSize The number of bytes per chunk.
+     */
+    public ParallelEmployeeReader(ForkJoinPool pool, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive but was " + chunkSize);
+        }
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Reads all employees of <code>file</code>.
+     *
+     * @return The employees in document order.
+     * @throws IOException If the file can't be read or is malformed.
+     */
+    public List<Employee> read(File file) throws IOException {
+        if (!isUtf8(file)) {
+            return readSequentially(file);
+        }
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = randomAccessFile.getChannel();
+            final long size = channel.size();
+            final List<ChunkTask> tasks = new ArrayList<ChunkTask>();
+            for (long start = 0; start < size; start += chunkSize) {
+                tasks.add(new ChunkTask(channel, size, start, Math.min(size, start + chunkSize)));
+            }
+            for (ChunkTask task : tasks) {
+                pool.execute(task);
+            }
+            final List<List<Employee>> chunks = new ArrayList<List<Employee>>(tasks.size());
+            int count = 0;
+            for (ChunkTask task : tasks) {
+                final List<Employee> chunk = join(task);
+                chunks.add(chunk);
+                count += chunk.size();
+            }
+            final List<Employee> employees = new ArrayList<Employee>(count);
+            for (List<Employee> chunk : chunks) {
+                employees.addAll(chunk);
+            }
+            return employees;
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private static List<Employee> join(ChunkTask task) throws IOException {
+        try {
+            return task.join();
+        } catch (ChunkException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static List<Employee> readSequentially(File file) throws IOException {
+        final List<Employee> employees = new ArrayList<Employee>();
+        final InputStream in = new FileInputStream(file);
+        try {
+            EmployeeReader.read(in, new Collector(employees));
+        } catch (XMLStreamException e) {
+            throw new IOException("Malformed employee file " + file, e);
+        } finally {
+            in.close();
+        }
+        return employees;
+    }
+
+    /**
+     * @return <code>false</code> if the XML declaration names an encoding
+     *         that isn't compatible with UTF-8.
+     */
+    private static boolean isUtf8(File file) throws IOException {
+        final byte[] prolog = new byte[128];
+        int length = 0;
+        final InputStream in = new FileInputStream(file);
+        try {
+            int read;
+            while (length < prolog.length && (read = in.read(prolog, length, prolog.length - length)) > 0) {
+                length += read;
+            }
+        } finally {
+            in.close();
+        }
+        if (length >= 2 && ((prolog[0] == (byte) 0xFE && prolog[1] == (byte) 0xFF) || (prolog[0] == (byte) 0xFF && prolog[1] == (byte) 0xFE))) {
+            // UTF-16 byte order mark
+            return false;
+        }
+        final String start = new String(prolog, 0, length, "ISO-8859-1");
+        if (!start.startsWith("<?xml") && !start.startsWith("\u00EF\u00BB\u00BF<?xml")) {
+            return true;
+        }
+        final int declarationEnd = start.indexOf("?>");
+        final String declaration = declarationEnd < 0 ? start : start.substring(0, declarationEnd);
+        final int encoding = declaration.indexOf("encoding");
+        if (encoding < 0) {
+            return true;
+        }
+        final String value = declaration.substring(encoding).toUpperCase(Locale.ROOT);
+        return value.matches("ENCODING\\s*=\\s*['\"](UTF-8|US-ASCII|ASCII)['\"].*");
+    }
+
+    /**
+     * Parses the employees that start in one chunk.
+     */
+    private static final class ChunkTask extends RecursiveTask<List<Employee>> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+
+        private final long size;
+
+        private final long start;
+
+        private final long end;
+
+        ChunkTask(FileChannel channel, long size, long start, long end) {
+            this.channel = channel;
+            this.size = size;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected List<Employee> compute() {
+            try {
+                return parse();
+            } catch (IOException e) {
+                throw new ChunkException(e);
+            } catch (XMLStreamException e) {
+                throw new ChunkException(new IOException("Malformed employee chunk at byte " + start, e));
+            }
+        }
+
+        private List<Employee> parse() throws IOException, XMLStreamException {
+            final int chunkEnd = (int) (end - start);
+            long overlap = INITIAL_OVERLAP;
+            MappedByteBuffer region = map(overlap);
+            final int first = findStartTag(region, 0, chunkEnd);
+            if (first < 0) {
+                return Collections.emptyList();
+            }
+            // The employees of the chunk end before the start of the next one
+            int next = findStartTag(region, chunkEnd, region.limit());
+            while (next < 0 && !reachesEnd(region)) {
+                // The last employee of the chunk ends after the mapped region
+                overlap *= 2;
+                region = map(overlap);
+                next = findStartTag(region, chunkEnd, region.limit());
+            }
+            if (next < 0) {
+                next = region.limit();
+            }
+            final int last = lastIndexOf(region, END_TAG, first, next);
+            if (last < 0) {
+                throw new XMLStreamException("Unterminated employee at byte " + (start + first));
+            }
+            final ByteBuffer records = region.duplicate();
+            records.position(first);
+            records.limit(last + END_TAG.length);
+            final List<Employee> employees = new ArrayList<Employee>();
+            // The records are siblings, a synthetic root makes them a document
+            final InputStream in = new SequenceInputStream(Collections.enumeration(Arrays.<InputStream> asList(
+                    new ByteBufferInputStream(ByteBuffer.wrap(CHUNK_START)), new ByteBufferInputStream(records),
+                    new ByteBufferInputStream(ByteBuffer.wrap(CHUNK_END)))));
+            EmployeeReader.read(in, new Collector(employees));
+            return employees;
+        }
+
+        /**
+         * Maps the chunk and <code>overlap</code> bytes after it.
+         */
+        private MappedByteBuffer map(long overlap) throws IOException {
+            final long length = Math.min(Math.min(size, end + overlap) - start, Integer.MAX_VALUE);
+            return channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        }
+
+        private boolean reachesEnd(MappedByteBuffer region) {
+            return start + region.limit() == size || region.limit() == Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * @return The position of the first <code>employee</code> start tag in
+     *         <code>[from, to)</code>, or <code>-1</code>.
+     */
+    static int findStartTag(ByteBuffer buffer, int from, int to) {
+        int position = from;
+        while (position < to) {
+            final int found = indexOf(buffer, START_TAG, position, to);
+            if (found < 0) {
+                return -1;
+            }
+            // Skips longer names such as <employees or <employeeId
+            final int after = found + START_TAG.length;
+            if (after < buffer.limit()) {
+                final byte next = buffer.get(after);
+                if (next == '>' || next == '/' || next == ' ' || next == '\t' || next == '\n' || next == '\r') {
+                    return found;
+                }
+            }
+            position = found + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * @return The first position in <code>[from, to)</code> where
+     *         <code>pattern</code> starts, or <code>-1</code>.
+     */
+    static int indexOf(ByteBuffer buffer, byte[] pattern, int from, int to) {
+        final int limit = Math.min(to, buffer.limit() - pattern.length + 1);
+        final byte first = pattern[0];
+        for (int i = from; i < limit; i++) {
+            if (buffer.get(i) == first && matches(buffer, pattern, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The last position in <code>[from, to)</code> where a complete
+     *         <code>pattern</code> ends before <code>to</code>, or
+     *         <code>-1</code>.
+     */
+    static int lastIndexOf(ByteBuffer buffer, byte[] pattern, int from, int to) {
+        for (int i = to - pattern.length; i >= from; i--) {
+            if (matches(buffer, pattern, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matches(ByteBuffer buffer, byte[] pattern, int position) {
+        for (int j = 0; j < pattern.length; j++) {
+            if (buffer.get(position + j) != pattern[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] ascii(String value) {
+        final byte[] bytes = new byte[value.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) value.charAt(i);
+        }
+        return bytes;
+    }
+
+    /**
+     * Carries the failure of a chunk out of the pool.
+     */
+    private static final class ChunkException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ChunkException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+
+    private static final class Collector implements EmployeeHandler {
+        private final List<Employee> employees;
+
+        Collector(List<Employee> employees) {
+            this.employees = employees;
+        }
+
+        @Override
+        public void employee(String firstName, String lastName) {
+            employees.add(new Employee(firstName, lastName));
+        }
+    }
+
+    /**
+     * Reads the remaining bytes of a buffer.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            final int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
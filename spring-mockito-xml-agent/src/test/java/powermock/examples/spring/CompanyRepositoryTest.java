@@ -0,0 +1,66 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package powermock.examples.spring;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class CompanyRepositoryTest {
+
+    private final CompanyRepository tested = new CompanyRepository();
+
+    @After
+    public void tearDown() {
+        tested.destroy();
+    }
+
+    @Test
+    public void returnsSameEmployeesAsDomReader() throws Exception {
+        // Given
+        final List<String> expected = EmployeeReaderTest.readWithDom(EmployeeReaderTest.readResource("/employees.xml"));
+
+        // When
+        final String[] employees = tested.getAllEmployees();
+
+        // Then
+        assertEquals(expected, Arrays.asList(employees));
+        assertEquals(Arrays.asList("John Doe", "Paul Anderson", "Jane Doe"), expected);
+    }
+
+    @Test
+    public void reportsEachEmployeeToHandler() throws Exception {
+        // Given
+        final List<String> employees = new ArrayList<String>();
+
+        // When
+        tested.forEachEmployee(new EmployeeHandler() {
+            @Override
+            public void employee(String firstName, String lastName) {
+                employees.add(firstName + " " + lastName);
+            }
+        });
+
+        // Then
+        assertEquals(Arrays.asList(tested.getAllEmployees()), employees);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package powermock.examples.spring;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EmployeeIndexTest {
+
+    private final Employee johnDoe = new Employee("John", "Doe");
+
+    private final Employee paulAnderson = new Employee("Paul", "Anderson");
+
+    private final Employee janeDoe = new Employee("Jane", "Doe");
+
+    private final Employee johnDoherty = new Employee("john", "Doherty");
+
+    private final Employee annaDe = new Employee("Anna", "de Vries");
+
+    private final EmployeeIndex tested = new EmployeeIndex(Arrays.asList(johnDoe, paulAnderson, janeDoe, johnDoherty, annaDe));
+
+    @Test
+    public void ordersEmployeesByLastNameAndFirstName() throws Exception {
+        assertEquals(Arrays.asList(paulAnderson, annaDe, janeDoe, johnDoe, johnDoherty), tested.findAll());
+        assertEquals(5, tested.size());
+    }
+
+    @Test
+    public void emptyPrefixMatchesAllEmployees() throws Exception {
+        assertEquals(tested.findAll(), tested.findByLastNamePrefix(""));
+    }
+
+    @Test
+    public void matchesNamesIgnoringCase() throws Exception {
+        assertEquals(Arrays.asList(janeDoe, johnDoe, johnDoherty), tested.findByLastNamePrefix("DO"));
+        assertEquals(Arrays.asList(annaDe, janeDoe, johnDoe, johnDoherty), tested.findByLastNamePrefix("d"));
+        assertEquals(Arrays.asList(annaDe), tested.findByLastNamePrefix("De V"));
+        assertEquals(Arrays.asList(johnDoe, johnDoherty), tested.findByFirstName("JOHN"));
+        assertEquals(Collections.<Employee>emptyList(), tested.findByLastNamePrefix("Smith"));
+        assertEquals(Collections.<Employee>emptyList(), tested.findByFirstName("Jo"));
+    }
+
+    @Test
+    public void returnsPagesOfResults() throws Exception {
+        // Given
+        final List<Employee> all = tested.findByLastNamePrefix("");
+
+        // Then
+        assertEquals(all.subList(0, 2), tested.findByLastNamePrefix("", 0, 2));
+        assertEquals(all.subList(2, 4), tested.findByLastNamePrefix("", 2, 2));
+        assertEquals(all.subList(4, 5), tested.findByLastNamePrefix("", 4, 2));
+        assertEquals(Arrays.asList(johnDoe, johnDoherty), tested.findByLastNamePrefix("do", 1, 5));
+        assertEquals(Arrays.asList(johnDoherty), tested.findByFirstName("john", 1, 1));
+        assertEquals(all, tested.findByLastNamePrefix("", 0, Integer.MAX_VALUE));
+        assertTrue(tested.findByLastNamePrefix("", 0, 0).isEmpty());
+    }
+
+    @Test
+    public void returnsEmptyPageForOffsetPastEnd() throws Exception {
+        assertTrue(tested.findByLastNamePrefix("", 5, 10).isEmpty());
+        assertTrue(tested.findByLastNamePrefix("do", Integer.MAX_VALUE, Integer.MAX_VALUE).isEmpty());
+        assertTrue(tested.findByFirstName("john", 3, 1).isEmpty());
+        assertTrue(tested.findByFirstName("nobody", 1, 1).isEmpty());
+    }
+
+    @Test
+    public void keepsDocumentOrderForEqualNames() throws Exception {
+        // Given
+        final Employee first = new Employee("Jane", "Doe");
+        final Employee second = new Employee("JANE", "DOE");
+
+        // When
+        final EmployeeIndex index = new EmployeeIndex(Arrays.asList(first, second));
+
+        // Then
+        assertEquals(Arrays.asList(first, second), index.findByLastNamePrefix("doe"));
+        assertEquals(Arrays.asList(first, second), index.findByFirstName("jane"));
+    }
+
+    @Test
+    public void rejectsNegativeOffset() throws Exception {
+        try {
+            tested.findByFirstName("john", -1, 1);
+            fail("Should throw IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Offset and limit cannot be negative but were -1 and 1", e.getMessage());
+        }
+    }
+}
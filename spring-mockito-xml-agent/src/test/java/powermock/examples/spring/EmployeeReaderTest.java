@@ -0,0 +1,155 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package powermock.examples.spring;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EmployeeReaderTest {
+
+    private static final String EMPLOYEES = "<?xml version=\"1.0\"?>\n"
+            + "<company>\n"
+            + "\t<employee>\n"
+            + "\t\t<firstname>John</firstname>\n"
+            + "\t\t<lastname>Doe</lastname>\n"
+            + "\t</employee>\n"
+            + "\t<department name=\"sales\">\n"
+            + "\t\t<employee id=\"2\">\n"
+            + "\t\t\t<lastname>Anderson</lastname>\n"
+            + "\t\t\t<address><street>Main Street</street></address>\n"
+            + "\t\t\t<firstname>Paul</firstname>\n"
+            + "\t\t</employee>\n"
+            + "\t</department>\n"
+            + "\t<!-- a comment -->\n"
+            + "\t<employee><firstname>Jane</firstname><lastname>Doe-Smith</lastname></employee>\n"
+            + "</company>";
+
+    @Test
+    public void readsAllEmployeesInDocumentOrder() throws Exception {
+        // When
+        final List<String> employees = read(EMPLOYEES);
+
+        // Then
+        assertEquals(Arrays.asList("John Doe", "Paul Anderson", "Jane Doe-Smith"), employees);
+    }
+
+    @Test
+    public void readsSameEmployeesAsDomReader() throws Exception {
+        // Given
+        final String bundled = readResource("/employees.xml");
+
+        // Then
+        assertEquals(readWithDom(EMPLOYEES), read(EMPLOYEES));
+        assertEquals(readWithDom(bundled), read(bundled));
+    }
+
+    @Test
+    public void readsNoEmployeesFromEmptyDocument() throws Exception {
+        // Given
+        final String empty = "<?xml version=\"1.0\"?>\n<company/>";
+
+        // Then
+        assertEquals(Collections.<String>emptyList(), read(empty));
+        assertEquals(readWithDom(empty), read(empty));
+    }
+
+    @Test
+    public void rejectsMalformedDocument() throws Exception {
+        // Given
+        final String malformed = "<company><employee><firstname>John</firstname><lastname>Doe</employee></company>";
+
+        // Then
+        try {
+            read(malformed);
+            fail("Should throw XMLStreamException");
+        } catch (XMLStreamException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void rejectsEmployeeWithoutLastName() throws Exception {
+        try {
+            read("<company><employee><firstname>John</firstname></employee></company>");
+            fail("Should throw XMLStreamException");
+        } catch (XMLStreamException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Employee without lastname"));
+        }
+    }
+
+    private static List<String> read(String document) throws Exception {
+        final List<String> employees = new ArrayList<String>();
+        EmployeeReader.read(new ByteArrayInputStream(document.getBytes("UTF-8")), new EmployeeHandler() {
+            @Override
+            public void employee(String firstName, String lastName) {
+                employees.add(firstName + " " + lastName);
+            }
+        });
+        return employees;
+    }
+
+    /**
+     * Reads the employees the way {@link CompanyRepository} did before it
+     * used {@link EmployeeReader}.
+     */
+    static List<String> readWithDom(String document) throws Exception {
+        final Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(document.getBytes("UTF-8")));
+        doc.getDocumentElement().normalize();
+        final List<String> employees = new ArrayList<String>();
+        final NodeList nodes = doc.getElementsByTagName("employee");
+        for (int i = 0; i < nodes.getLength(); i++) {
+            final Node node = nodes.item(i);
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                final Element employee = (Element) node;
+                final String firstName = employee.getElementsByTagName("firstname").item(0).getChildNodes().item(0).getNodeValue();
+                final String lastName = employee.getElementsByTagName("lastname").item(0).getChildNodes().item(0).getNodeValue();
+                employees.add(String.format("%s %s", firstName, lastName));
+            }
+        }
+        return employees;
+    }
+
+    static String readResource(String name) throws Exception {
+        final InputStream in = EmployeeReaderTest.class.getResourceAsStream(name);
+        try {
+            final StringBuilder content = new StringBuilder();
+            final byte[] buffer = new byte[4096];
+            for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                content.append(new String(buffer, 0, read, "UTF-8"));
+            }
+            return content.toString();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package powermock.examples.spring;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class ParallelEmployeeReaderTest {
+
+    private ForkJoinPool pool;
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = new ForkJoinPool(4);
+        file = File.createTempFile("employees", ".xml");
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+        file.delete();
+    }
+
+    @Test
+    public void readsFileSmallerThanOneChunk() throws Exception {
+        // Given
+        write("<?xml version=\"1.0\"?>\n<company>\n\t<employee>\n\t\t<firstname>John</firstname>\n\t\t<lastname>Doe</lastname>\n\t</employee>\n"
+                + "\t<employee><firstname>Jane</firstname><lastname>Doe</lastname></employee>\n</company>");
+
+        // When
+        final List<Employee> employees = new ParallelEmployeeReader(pool, ParallelEmployeeReader.DEFAULT_CHUNK_SIZE).read(file);
+
+        // Then
+        assertEquals(Arrays.asList(new Employee("John", "Doe"), new Employee("Jane", "Doe")), employees);
+    }
+
+    @Test
+    public void readsRecordsStraddlingChunkBoundaries() throws Exception {
+        // Given
+        final StringBuilder document = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<company>\n");
+        final List<Employee> expected = new ArrayList<Employee>();
+        for (int i = 0; i < 200; i++) {
+            final Employee employee = new Employee("First" + i, "Last\u00E9" + i);
+            expected.add(employee);
+            document.append("\t<employee id=\"").append(i).append("\">\n\t\t<firstname>").append(employee.getFirstName())
+                    .append("</firstname>\n\t\t<lastname>").append(employee.getLastName()).append("</lastname>\n\t</employee>\n");
+        }
+        write(document.append("</company>\n").toString());
+
+        // Then
+        for (int chunkSize = 1; chunkSize < 300; chunkSize += 7) {
+            assertEquals("Chunk size " + chunkSize, expected, new ParallelEmployeeReader(pool, chunkSize).read(file));
+        }
+    }
+
+    @Test
+    public void readsRecordLargerThanOverlap() throws Exception {
+        // Given
+        final char[] padding = new char[300 * 1024];
+        Arrays.fill(padding, ' ');
+        write("<company><employee><firstname>John</firstname><lastname>Doe</lastname></employee>"
+                + "<employee><firstname>Jane</firstname>" + new String(padding) + "<lastname>Doe</lastname></employee>"
+                + "<employee><firstname>Paul</firstname><lastname>Anderson</lastname></employee></company>");
+
+        // When
+        final List<Employee> employees = new ParallelEmployeeReader(pool, 100).read(file);
+
+        // Then
+        assertEquals(Arrays.asList(new Employee("John", "Doe"), new Employee("Jane", "Doe"), new Employee("Paul", "Anderson")), employees);
+    }
+
+    @Test
+    public void readsNoEmployeesFromEmptyCompany() throws Exception {
+        // Given
+        write("<?xml version=\"1.0\"?>\n<company/>\n");
+
+        // Then
+        assertEquals(Collections.<Employee>emptyList(), new ParallelEmployeeReader(pool, 4).read(file));
+    }
+
+    @Test
+    public void readsOtherEncodingsSequentially() throws Exception {
+        // Given
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n<company><employee><firstname>Ren\u00E9</firstname>"
+                    + "<lastname>Doe</lastname></employee></company>").getBytes("ISO-8859-1"));
+        } finally {
+            out.close();
+        }
+
+        // Then
+        assertEquals(Arrays.asList(new Employee("Ren\u00E9", "Doe")), new ParallelEmployeeReader(pool, 8).read(file));
+    }
+
+    private void write(String content) throws Exception {
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -1,45 +1,80 @@
 package powermock.examples.spring;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.stereotype.Repository;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import java.util.LinkedList;
-import java.util.List;
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
 
 @Repository
-public class CompanyRepository {
+public class CompanyRepository implements DisposableBean {
+
+    private static final String EMPLOYEES_RESOURCE = "/employees.xml";
+
+    /**
+     * Created when the employees are requested for the first time.
+     */
+    private volatile EmployeeDirectory directory;
 
     public String[] getAllEmployees() {
-        try {
-            final List<String> employees = new LinkedList<String>();
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            DocumentBuilder db = dbf.newDocumentBuilder();
-            Document doc = db.parse(getClass().getResourceAsStream("/employees.xml"));
-            doc.getDocumentElement().normalize();
-            NodeList nodeLst = doc.getElementsByTagName("employee");
-            for (int s = 0; s < nodeLst.getLength(); s++) {
-                Node fstNode = nodeLst.item(s);
-                if (fstNode.getNodeType() == Node.ELEMENT_NODE) {
-                    Element fstElmnt = (Element) fstNode;
-                    NodeList fstNmElmntLst = fstElmnt.getElementsByTagName("firstname");
-                    Element fstNmElmnt = (Element) fstNmElmntLst.item(0);
-                    NodeList fstNm = fstNmElmnt.getChildNodes();
-                    final String firstName = fstNm.item(0).getNodeValue();
-                    NodeList lstNmElmntLst = fstElmnt.getElementsByTagName("lastname");
-                    Element lstNmElmnt = (Element) lstNmElmntLst.item(0);
-                    NodeList lstNm = lstNmElmnt.getChildNodes();
-                    final String lastName = lstNm.item(0).getNodeValue();
-                    employees.add(String.format("%s %s", firstName, lastName));
+        return getEmployeeDirectory().toArray();
+    }
+
+    /**
+     * @return The cached employees, which are reloaded in the background when
+     *         the employee file changes on the file system.
+     */
+    public EmployeeDirectory getEmployeeDirectory() {
+        EmployeeDirectory current = directory;
+        if (current == null) {
+            synchronized (this) {
+                current = directory;
+                if (current == null) {
+                    current = new EmployeeDirectory(employeesResource(), EmployeeDirectory.DEFAULT_CHECK_INTERVAL_MILLIS);
+                    directory = current;
                 }
             }
-            return employees.toArray(new String[employees.size()]);
-        }catch (Exception e) {
+        }
+        return current;
+    }
+
+    /**
+     * Reports all employees to <code>handler</code> while they are read, so
+     * that large employee files can be processed without holding all
+     * employees in memory.
+     *
+     * @param handler Receives the employees in document order.
+     */
+    public void forEachEmployee(EmployeeHandler handler) {
+        try {
+            final InputStream in = employeesResource().openStream();
+            try {
+                EmployeeReader.read(in, handler);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } catch (XMLStreamException e) {
             throw new RuntimeException(e);
         }
     }
+
+    @Override
+    public void destroy() {
+        final EmployeeDirectory current = directory;
+        if (current != null) {
+            current.destroy();
+        }
+    }
+
+    private URL employeesResource() {
+        final URL resource = getClass().getResource(EMPLOYEES_RESOURCE);
+        if (resource == null) {
+            throw new IllegalStateException("Couldn't find " + EMPLOYEES_RESOURCE);
+        }
+        return resource;
+    }
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package powermock.examples.spring;
+
+/**
+ * An employee as read from the employee file.
+ */
+public final class Employee {
+    private final String firstName;
+
+    private final String lastName;
+
+    public Employee(String firstName, String lastName) {
+        if (firstName == null || lastName == null) {
+            throw new IllegalArgumentException("Names cannot be null");
+        }
+        this.firstName = firstName;
+        this.lastName = lastName;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Employee)) {
+            return false;
+        }
+        final Employee other = (Employee) obj;
+        return firstName.equals(other.firstName) && lastName.equals(other.lastName);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * firstName.hashCode() + lastName.hashCode();
+    }
+
+    /**
+     * @return The name as <code>firstname lastname</code>.
+     */
+    @Override
+    public String toString() {
+        return firstName + " " + lastName;
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package powermock.examples.spring;
+
+import org.springframework.beans.factory.DisposableBean;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Holds the employees of an employee file, which is parsed once. Readers get
+ * an immutable snapshot of the names and their {@link EmployeeIndex} through
+ * a volatile read and never wait for a reload.
+ * <p>
+ * If the file is on the file system its modification time is checked at most
+ * once per check interval. The check is triggered by a read but runs on a
+ * shared background thread, which parses the changed file and then replaces
+ * the snapshot. A file that can't be parsed, for example because it is being
+ * written, leaves the current snapshot in place until the next check.
+ */
+public class EmployeeDirectory implements DisposableBean {
+
+    public static final long DEFAULT_CHECK_INTERVAL_MILLIS = 1000;
+
+    /**
+     * Holds the reload thread, which is only started when a file is checked
+     * for the first time and is shared by all directories.
+     */
+    private static final class ReloadExecutorHolder {
+        static final ExecutorService INSTANCE = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "employee-directory-reload");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private final URL source;
+
+    /**
+     * The file behind {@link #source}, <code>null</code> if it isn't on the
+     * file system and thus never reloaded.
+     */
+    private final File file;
+
+    private final long checkIntervalMillis;
+
+    private final AtomicBoolean checking = new AtomicBoolean();
+
+    private volatile Snapshot snapshot;
+
+    private volatile long lastModified;
+
+    private volatile long nextCheckMillis;
+
+    private volatile boolean destroyed;
+
+    /**
+     * Creates a directory and reads the employees from <code>source</code>.
+     *
+     * @param source              The employee file.
+     * @param checkIntervalMillis The minimum time between two checks for
+     *                            changes of the file.
+     * @throws RuntimeException If the employees can't be read.
+     */
+    public EmployeeDirectory(URL source, long checkIntervalMillis) {
+        if (source == null) {
+            throw new IllegalArgumentException("source cannot be null");
+        }
+        this.source = source;
+        this.file = toFile(source);
+        this.checkIntervalMillis = checkIntervalMillis;
+        if (file != null) {
+            lastModified = file.lastModified();
+        }
+        snapshot = load();
+        nextCheckMillis = System.currentTimeMillis() + checkIntervalMillis;
+    }
+
+    /**
+     * @return The names of all employees, as <code>firstname lastname</code>,
+     *         in document order. The list is a read-only view of the current
+     *         snapshot and doesn't change on reloads.
+     */
+    public List<String> getEmployees() {
+        checkForChanges();
+        return Collections.unmodifiableList(Arrays.asList(snapshot.names));
+    }
+
+    /**
+     * @return A copy of the names of all employees.
+     */
+    public String[] toArray() {
+        checkForChanges();
+        return snapshot.names.clone();
+    }
+
+    /**
+     * @return An index of the current snapshot for lookups by name.
+     */
+    public EmployeeIndex getIndex() {
+        checkForChanges();
+        return snapshot.index;
+    }
+
+    /**
+     * Stops checking the file for changes, the current snapshot is still
+     * served.
+     */
+    @Override
+    public void destroy() {
+        destroyed = true;
+    }
+
+    /**
+     * Schedules a check of the file unless it was checked recently or a check
+     * is running already.
+     */
+    private void checkForChanges() {
+        if (file == null || destroyed || System.currentTimeMillis() < nextCheckMillis || !checking.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            ReloadExecutorHolder.INSTANCE.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        reloadIfModified();
+                    } finally {
+                        nextCheckMillis = System.currentTimeMillis() + checkIntervalMillis;
+                        checking.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            checking.set(false);
+        }
+    }
+
+    /**
+     * Reloads the employees if the file has been modified since it was read.
+     *
+     * @return <code>true</code> if a new snapshot has been published.
+     */
+    boolean reloadIfModified() {
+        // Read before parsing, a change during parsing is picked up next time
+        final long modified = file.lastModified();
+        if (modified == lastModified) {
+            return false;
+        }
+        final Snapshot reloaded;
+        try {
+            reloaded = load();
+        } catch (RuntimeException e) {
+            return false;
+        }
+        snapshot = reloaded;
+        lastModified = modified;
+        return true;
+    }
+
+    private Snapshot load() {
+        final List<Employee> employees = new ArrayList<Employee>();
+        try {
+            final InputStream in = source.openStream();
+            try {
+                EmployeeReader.read(in, new EmployeeHandler() {
+                    @Override
+                    public void employee(String firstName, String lastName) {
+                        employees.add(new Employee(firstName, lastName));
+                    }
+                });
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read employees from " + source, e);
+        } catch (XMLStreamException e) {
+            throw new RuntimeException("Failed to read employees from " + source, e);
+        }
+        return new Snapshot(employees);
+    }
+
+    /**
+     * The employees of one version of the file, published as a whole.
+     */
+    private static final class Snapshot {
+        final String[] names;
+
+        final EmployeeIndex index;
+
+        Snapshot(List<Employee> employees) {
+            names = new String[employees.size()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = employees.get(i).toString();
+            }
+            index = new EmployeeIndex(employees);
+        }
+    }
+
+    private static File toFile(URL url) {
+        if (!"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException e) {
+            return new File(url.getPath());
+        }
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package powermock.examples.spring;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * An immutable index of employees that answers lookups without scanning all
+ * employees. Names are compared case-insensitively.
+ * <p>
+ * The employees are kept in one array sorted by last name, so the employees
+ * whose last name starts with a prefix form a range of the array. A trie of
+ * the last names maps each prefix to its range in time proportional to the
+ * prefix length. First names are mapped to the positions of their employees
+ * in the array.
+ * <p>
+ * Query results are read-only views of the index and aren't copied.
+ */
+public final class EmployeeIndex {
+
+    private final Employee[] employees;
+
+    private final TrieNode lastNames;
+
+    private final Map<String, int[]> firstNames;
+
+    /**
+     * @param employees The employees to index, in document order. Employees
+     *                  with the same names keep this order in the results.
+     */
+    public EmployeeIndex(List<Employee> employees) {
+        final Keyed[] sorted = new Keyed[employees.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = new Keyed(employees.get(i));
+        }
+        // The sort is stable, so equal names keep their document order
+        Arrays.sort(sorted, BY_KEYS);
+        this.employees = new Employee[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            this.employees[i] = sorted[i].employee;
+        }
+        this.lastNames = buildTrie(sorted);
+        this.firstNames = indexFirstNames(sorted);
+    }
+
+    /**
+     * @return The number of indexed employees.
+     */
+    public int size() {
+        return employees.length;
+    }
+
+    /**
+     * @return All employees ordered by last name and first name.
+     */
+    public List<Employee> findAll() {
+        return new EmployeeList(employees, null, 0, employees.length);
+    }
+
+    /**
+     * @param prefix The start of the last name, an empty prefix matches all
+     *               employees.
+     * @return The employees whose last name starts with <code>prefix</code>,
+     *         ordered by last name and first name.
+     */
+    public List<Employee> findByLastNamePrefix(String prefix) {
+        final String key = key(prefix);
+        TrieNode node = lastNames;
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.child(key.charAt(i));
+        }
+        if (node == null) {
+            return Collections.emptyList();
+        }
+        return new EmployeeList(employees, null, node.from, node.to);
+    }
+
+    /**
+     * Returns one page of {@link #findByLastNamePrefix(String)}.
+     *
+     * @param offset The number of matching employees to skip.
+     * @param limit  The maximum number of employees to return.
+     */
+    public List<Employee> findByLastNamePrefix(String prefix, int offset, int limit) {
+        return page(findByLastNamePrefix(prefix), offset, limit);
+    }
+
+    /**
+     * @return The employees with the first name <code>firstName</code>,
+     *         ordered by last name.
+     */
+    public List<Employee> findByFirstName(String firstName) {
+        final int[] positions = firstNames.get(key(firstName));
+        if (positions == null) {
+            return Collections.emptyList();
+        }
+        return new EmployeeList(employees, positions, 0, positions.length);
+    }
+
+    /**
+     * Returns one page of {@link #findByFirstName(String)}.
+     *
+     * @param offset The number of matching employees to skip.
+     * @param limit  The maximum number of employees to return.
+     */
+    public List<Employee> findByFirstName(String firstName, int offset, int limit) {
+        return page(findByFirstName(firstName), offset, limit);
+    }
+
+    private static List<Employee> page(List<Employee> results, int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Offset and limit cannot be negative but were " + offset + " and " + limit);
+        }
+        final int from = Math.min(offset, results.size());
+        // Avoids overflow for large limits
+        final int to = from + Math.min(limit, results.size() - from);
+        return results.subList(from, to);
+    }
+
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Inserts the last names in sorted order, so the children of each node are
+     * appended in character order and the range of a node only grows at its
+     * end.
+     */
+    private static TrieNode buildTrie(Keyed[] sorted) {
+        final TrieNode root = new TrieNode(0);
+        root.to = sorted.length;
+        for (int i = 0; i < sorted.length; i++) {
+            final String key = sorted[i].lastName;
+            TrieNode node = root;
+            for (int j = 0; j < key.length(); j++) {
+                node = node.childForInsert(key.charAt(j), i);
+                node.to = i + 1;
+            }
+        }
+        return root;
+    }
+
+    private static Map<String, int[]> indexFirstNames(Keyed[] sorted) {
+        final Map<String, Positions> byFirstName = new HashMap<String, Positions>();
+        for (int i = 0; i < sorted.length; i++) {
+            final String key = sorted[i].firstName;
+            Positions positions = byFirstName.get(key);
+            if (positions == null) {
+                positions = new Positions();
+                byFirstName.put(key, positions);
+            }
+            positions.add(i);
+        }
+        final Map<String, int[]> index = new HashMap<String, int[]>(byFirstName.size() * 4 / 3 + 1);
+        for (Map.Entry<String, Positions> entry : byFirstName.entrySet()) {
+            index.put(entry.getKey(), entry.getValue().toArray());
+        }
+        return index;
+    }
+
+    private static final Comparator<Keyed> BY_KEYS = new Comparator<Keyed>() {
+        @Override
+        public int compare(Keyed first, Keyed second) {
+            final int byLastName = first.lastName.compareTo(second.lastName);
+            return byLastName != 0 ? byLastName : first.firstName.compareTo(second.firstName);
+        }
+    };
+
+    /**
+     * An employee with its lower-cased names, which are computed once while
+     * the index is built instead of on every comparison.
+     */
+    private static final class Keyed {
+        final Employee employee;
+
+        final String lastName;
+
+        final String firstName;
+
+        Keyed(Employee employee) {
+            this.employee = employee;
+            this.lastName = key(employee.getLastName());
+            this.firstName = key(employee.getFirstName());
+        }
+    }
+
+    /**
+     * Collects the positions of the employees with one first name.
+     */
+    private static final class Positions {
+        private int[] positions = new int[1];
+
+        private int count;
+
+        void add(int position) {
+            if (count == positions.length) {
+                positions = Arrays.copyOf(positions, count * 2);
+            }
+            positions[count++] = position;
+        }
+
+        int[] toArray() {
+            return count == positions.length ? positions : Arrays.copyOf(positions, count);
+        }
+    }
+
+    /**
+     * A node of the last name trie, covering the range of the sorted array
+     * whose last names start with the path to the node.
+     */
+    private static final class TrieNode {
+        private static final char[] NO_KEYS = new char[0];
+
+        private static final TrieNode[] NO_CHILDREN = new TrieNode[0];
+
+        private char[] keys = NO_KEYS;
+
+        private TrieNode[] children = NO_CHILDREN;
+
+        private int childCount;
+
+        final int from;
+
+        int to;
+
+        TrieNode(int from) {
+            this.from = from;
+        }
+
+        TrieNode child(char key) {
+            final int index = Arrays.binarySearch(keys, 0, childCount, key);
+            return index >= 0 ? children[index] : null;
+        }
+
+        /**
+         * @return The child for <code>key</code>, which is added if
+         *         <code>key</code> is greater than the keys of all children.
+         */
+        TrieNode childForInsert(char key, int position) {
+            if (childCount > 0 && keys[childCount - 1] == key) {
+                return children[childCount - 1];
+            }
+            if (childCount == keys.length) {
+                final int capacity = Math.max(2, childCount * 2);
+                keys = Arrays.copyOf(keys, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+            keys[childCount] = key;
+            children[childCount] = new TrieNode(position);
+            return children[childCount++];
+        }
+    }
+
+    /**
+     * A read-only view of a range of the sorted array, or of the employees at
+     * a range of positions.
+     */
+    private static final class EmployeeList extends AbstractList<Employee> implements RandomAccess {
+        private final Employee[] employees;
+
+        private final int[] positions;
+
+        private final int from;
+
+        private final int to;
+
+        EmployeeList(Employee[] employees, int[] positions, int from, int to) {
+            this.employees = employees;
+            this.positions = positions;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Employee get(int index) {
+            if (index < 0 || index >= to - from) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+            return employees[positions == null ? from + index : positions[from + index]];
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+
+        @Override
+        public List<Employee> subList(int fromIndex, int toIndex) {
+            if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex) {
+                throw new IndexOutOfBoundsException("From: " + fromIndex + ", To: " + toIndex + ", Size: " + size());
+            }
+            return new EmployeeList(employees, positions, from + fromIndex, from + toIndex);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2010 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package powermock.examples.spring;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EmployeeDirectoryTest {
+
+    private File file;
+
+    private EmployeeDirectory tested;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("employees", ".xml");
+        write("<company><employee><firstname>John</firstname><lastname>Doe</lastname></employee></company>");
+    }
+
+    @After
+    public void tearDown() {
+        if (tested != null) {
+            tested.destroy();
+        }
+        file.delete();
+    }
+
+    @Test
+    public void reloadPublishesChangedFile() throws Exception {
+        // Given
+        tested = new EmployeeDirectory(file.toURI().toURL(), 60000);
+        final List<String> before = tested.getEmployees();
+        write("<company><employee><firstname>Jane</firstname><lastname>Doe</lastname></employee>"
+                + "<employee><firstname>Paul</firstname><lastname>Anderson</lastname></employee></company>");
+
+        // When
+        final boolean reloaded = tested.reloadIfModified();
+
+        // Then
+        assertTrue(reloaded);
+        assertEquals(Arrays.asList("Jane Doe", "Paul Anderson"), tested.getEmployees());
+        assertEquals(Arrays.asList("Jane Doe", "Paul Anderson"), Arrays.asList(tested.toArray()));
+        assertEquals(Arrays.asList(new Employee("Paul", "Anderson")), tested.getIndex().findByFirstName("Paul"));
+        assertEquals(Arrays.asList("John Doe"), before);
+        assertFalse(tested.reloadIfModified());
+    }
+
+    @Test
+    public void readSeesChangedFileAfterBackgroundCheck() throws Exception {
+        // Given
+        tested = new EmployeeDirectory(file.toURI().toURL(), 0);
+        write("<company><employee><firstname>Jane</firstname><lastname>Doe</lastname></employee></company>");
+
+        // When
+        final long deadline = System.currentTimeMillis() + 5000;
+        List<String> employees = tested.getEmployees();
+        while (!employees.equals(Arrays.asList("Jane Doe")) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            employees = tested.getEmployees();
+        }
+
+        // Then
+        assertEquals(Arrays.asList("Jane Doe"), employees);
+    }
+
+    @Test
+    public void failedReloadKeepsPreviousSnapshot() throws Exception {
+        // Given
+        tested = new EmployeeDirectory(file.toURI().toURL(), 60000);
+        write("<company><employee><firstname>Jane</firstname>");
+
+        // When
+        final boolean reloaded = tested.reloadIfModified();
+
+        // Then
+        assertFalse(reloaded);
+        assertEquals(Arrays.asList("John Doe"), tested.getEmployees());
+        assertEquals(Arrays.asList(new Employee("John", "Doe")), tested.getIndex().findByFirstName("John"));
+
+        // And the next successful reload is picked up
+        write("<company><employee><firstname>Jane</firstname><lastname>Doe</lastname></employee></company>");
+        assertTrue(tested.reloadIfModified());
+        assertEquals(Arrays.asList("Jane Doe"), tested.getEmployees());
+    }
+
+    /**
+     * Replaces the content of the file and moves its modification time
+     * forward, file systems may only keep it to the second.
+     */
+    private void write(String content) throws Exception {
+        final long previous = file.lastModified();
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        file.setLastModified(Math.max(previous, System.currentTimeMillis()) + 2000);
+    }
+}
@@ -0,0 +1,421 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.common.collections;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A concurrent hash map with primitive <code>long</code> keys, so neither the
+ * key nor an entry object is allocated per mapping.
+ * <p>
+ * The map is split into segments that each hold an open addressing table.
+ * Writes lock one segment, reads never lock or retry except when they race
+ * with a resize of the table they are reading. Removed keys are kept in their
+ * slot with a <code>null</code> value until the next resize, so a key that
+ * is registered again reuses its old slot. <code>null</code> values are not
+ * allowed.
+ *
+ * @param <V>
+ *            The type of the mapped values.
+ */
+public class ConcurrentLongHashMap<V> {
+
+	private static final int SEGMENT_BITS = 4;
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * Keys are never zero in a table, a zero key marks a free slot. The
+	 * mapping for the zero key itself is stored in its segment.
+	 */
+	private static final long FREE = 0L;
+
+	private final Segment[] segments;
+
+	/**
+	 * Creates an empty map.
+	 */
+	public ConcurrentLongHashMap() {
+		segments = new Segment[1 << SEGMENT_BITS];
+		for (int i = 0; i < segments.length; i++) {
+			segments[i] = new Segment();
+		}
+	}
+
+	/**
+	 * @return The value mapped to <code>key</code> or <code>null</code> if
+	 *         there is none.
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		final long hash = hash(key);
+		return (V) segmentFor(hash).get(key, hash);
+	}
+
+	public boolean containsKey(long key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * Maps <code>key</code> to <code>value</code>.
+	 *
+	 * @return The previous value or <code>null</code> if there was none.
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		checkValue(value);
+		final long hash = hash(key);
+		return (V) segmentFor(hash).put(key, hash, value, false);
+	}
+
+	/**
+	 * Maps <code>key</code> to <code>value</code> unless it's already mapped.
+	 *
+	 * @return The current value or <code>null</code> if <code>value</code>
+	 *         was added.
+	 */
+	@SuppressWarnings("unchecked")
+	public V putIfAbsent(long key, V value) {
+		checkValue(value);
+		final long hash = hash(key);
+		return (V) segmentFor(hash).put(key, hash, value, true);
+	}
+
+	/**
+	 * Removes the mapping for <code>key</code>.
+	 *
+	 * @return The removed value or <code>null</code> if there was none.
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		final long hash = hash(key);
+		return (V) segmentFor(hash).remove(key, hash);
+	}
+
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			size += segment.size;
+		}
+		return size;
+	}
+
+	public boolean isEmpty() {
+		for (Segment segment : segments) {
+			if (segment.size != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public boolean containsValue(Object value) {
+		for (Object candidate : values()) {
+			if (candidate.equals(value)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public void clear() {
+		for (Segment segment : segments) {
+			segment.clear();
+		}
+	}
+
+	/**
+	 * @return A view of the values in this map. The iterator is weakly
+	 *         consistent, it never throws a
+	 *         {@link java.util.ConcurrentModificationException} and may or
+	 *         may not reflect changes made while iterating.
+	 */
+	public Collection<V> values() {
+		return new AbstractCollection<V>() {
+			@Override
+			public Iterator<V> iterator() {
+				return new ValueIterator();
+			}
+
+			@Override
+			public int size() {
+				return ConcurrentLongHashMap.this.size();
+			}
+		};
+	}
+
+	private Segment segmentFor(long hash) {
+		return segments[(int) (hash >>> (64 - SEGMENT_BITS))];
+	}
+
+	private static void checkValue(Object value) {
+		if (value == null) {
+			throw new NullPointerException("value cannot be null");
+		}
+	}
+
+	/**
+	 * The MurmurHash3 64-bit finalizer, so that sequential keys spread over
+	 * both segments and slots.
+	 */
+	private static long hash(long key) {
+		long h = key;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	private static final class Table {
+		final AtomicLongArray keys;
+
+		final AtomicReferenceArray<Object> values;
+
+		final int mask;
+
+		/**
+		 * Set when the table has been replaced by a resize. Readers that see
+		 * it retry on the new table.
+		 */
+		volatile boolean moved;
+
+		Table(int capacity) {
+			keys = new AtomicLongArray(capacity);
+			values = new AtomicReferenceArray<Object>(capacity);
+			mask = capacity - 1;
+		}
+	}
+
+	private static final class Segment {
+
+		volatile Table table = new Table(INITIAL_CAPACITY);
+
+		/**
+		 * The value of the zero key, which can't be stored in the table.
+		 */
+		volatile Object zeroValue;
+
+		/**
+		 * Number of mappings, only written while holding the segment lock.
+		 */
+		volatile int size;
+
+		/**
+		 * Number of slots with a key, including removed ones. Guarded by the
+		 * segment lock.
+		 */
+		int usedSlots;
+
+		Object get(long key, long hash) {
+			if (key == FREE) {
+				return zeroValue;
+			}
+			for (;;) {
+				final Table table = this.table;
+				final Object value = find(table, key, hash);
+				if (!table.moved) {
+					return value;
+				}
+			}
+		}
+
+		synchronized Object put(long key, long hash, Object value, boolean onlyIfAbsent) {
+			if (key == FREE) {
+				final Object previous = zeroValue;
+				if (previous == null) {
+					zeroValue = value;
+					size++;
+				} else if (!onlyIfAbsent) {
+					zeroValue = value;
+				}
+				return previous;
+			}
+			Table table = this.table;
+			int index = slot(table, key, hash);
+			if (table.keys.get(index) == key) {
+				final Object previous = table.values.get(index);
+				if (previous == null) {
+					table.values.set(index, value);
+					size++;
+				} else if (!onlyIfAbsent) {
+					table.values.set(index, value);
+				}
+				return previous;
+			}
+			if ((usedSlots + 1) * 2 > table.keys.length()) {
+				table = resize(table);
+				index = slot(table, key, hash);
+			}
+			// The value is written before the key, so a reader that finds the
+			// key also sees the value.
+			table.values.set(index, value);
+			table.keys.set(index, key);
+			usedSlots++;
+			size++;
+			return null;
+		}
+
+		synchronized Object remove(long key, long hash) {
+			if (key == FREE) {
+				final Object previous = zeroValue;
+				if (previous != null) {
+					zeroValue = null;
+					size--;
+				}
+				return previous;
+			}
+			final Table table = this.table;
+			final int index = slot(table, key, hash);
+			if (table.keys.get(index) != key) {
+				return null;
+			}
+			final Object previous = table.values.get(index);
+			if (previous != null) {
+				table.values.set(index, null);
+				size--;
+			}
+			return previous;
+		}
+
+		synchronized void clear() {
+			final Table old = table;
+			table = new Table(INITIAL_CAPACITY);
+			old.moved = true;
+			zeroValue = null;
+			usedSlots = 0;
+			size = 0;
+		}
+
+		/**
+		 * Copies the live mappings into a new table that is at most a quarter
+		 * full and publishes it. Removed keys are dropped.
+		 */
+		private Table resize(Table old) {
+			int capacity = INITIAL_CAPACITY;
+			while (capacity < (size + 1) * 4) {
+				capacity <<= 1;
+			}
+			final Table table = new Table(capacity);
+			int used = 0;
+			for (int i = 0; i < old.keys.length(); i++) {
+				final Object value = old.values.get(i);
+				if (value != null) {
+					final long key = old.keys.get(i);
+					final int index = slot(table, key, hash(key));
+					table.values.set(index, value);
+					table.keys.set(index, key);
+					used++;
+				}
+			}
+			this.table = table;
+			old.moved = true;
+			usedSlots = used;
+			return table;
+		}
+
+		void collectValues(List<Object> values) {
+			final Object zero = zeroValue;
+			if (zero != null) {
+				values.add(zero);
+			}
+			final Table table = this.table;
+			for (int i = 0; i < table.values.length(); i++) {
+				final Object value = table.values.get(i);
+				if (value != null) {
+					values.add(value);
+				}
+			}
+		}
+
+		private static Object find(Table table, long key, long hash) {
+			int index = (int) hash & table.mask;
+			for (;;) {
+				final long candidate = table.keys.get(index);
+				if (candidate == key) {
+					return table.values.get(index);
+				}
+				if (candidate == FREE) {
+					return null;
+				}
+				index = (index + 1) & table.mask;
+			}
+		}
+
+		/**
+		 * @return The slot that holds <code>key</code> or the free slot
+		 *         where it should be inserted.
+		 */
+		private static int slot(Table table, long key, long hash) {
+			int index = (int) hash & table.mask;
+			for (;;) {
+				final long candidate = table.keys.get(index);
+				if (candidate == key || candidate == FREE) {
+					return index;
+				}
+				index = (index + 1) & table.mask;
+			}
+		}
+	}
+
+	/**
+	 * Walks the segments one at a time, copying the values of a segment when
+	 * it's reached.
+	 */
+	private final class ValueIterator implements Iterator<V> {
+
+		private final List<Object> buffer = new ArrayList<Object>();
+
+		private int segment;
+
+		private int position;
+
+		@Override
+		public boolean hasNext() {
+			while (position == buffer.size()) {
+				if (segment == segments.length) {
+					return false;
+				}
+				buffer.clear();
+				position = 0;
+				segments[segment++].collectValues(buffer);
+			}
+			return true;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public V next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return (V) buffer.get(position++);
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
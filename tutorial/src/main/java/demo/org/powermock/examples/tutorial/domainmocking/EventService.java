@@ -18,6 +18,8 @@ package demo.org.powermock.examples.tutorial.domainmocking;
 import demo.org.powermock.examples.tutorial.domainmocking.domain.BusinessMessages;
 import demo.org.powermock.examples.tutorial.domainmocking.domain.Person;
 
+import java.util.List;
+
 /**
  * A simple interface that manages events.
  */
@@ -34,4 +36,15 @@ public interface EventService {
 	 */
 	void sendErrorEvent(Person person, BusinessMessages messages);
 
+	/**
+	 * Sends one error event for several persons.
+	 * 
+	 * @param persons
+	 *            The persons associated with this event.
+	 * @param messages
+	 *            The business messages object that contains the errors of
+	 *            all the persons.
+	 */
+	void sendErrorEvents(List<Person> persons, BusinessMessages messages);
+
 }
@@ -18,6 +18,9 @@ package demo.org.powermock.examples.tutorial.domainmocking;
 import demo.org.powermock.examples.tutorial.domainmocking.domain.BusinessMessages;
 import demo.org.powermock.examples.tutorial.domainmocking.domain.Person;
 
+import java.util.BitSet;
+import java.util.List;
+
 /**
  * A simple interface that manages persons.
  */
@@ -34,4 +37,17 @@ public interface PersonService {
 	 */
 	void create(Person person, BusinessMessages messages);
 
+	/**
+	 * Create several persons.
+	 * 
+	 * @param persons
+	 *            The persons to create.
+	 * @param messages
+	 *            The business messages object to be filled with the
+	 *            validation errors of all persons.
+	 * @return A bit set with the bit at the index of each person that
+	 *         couldn't be created set.
+	 */
+	BitSet createAll(List<Person> persons, BusinessMessages messages);
+
 }
@@ -15,6 +15,10 @@
  */
 package demo.org.powermock.examples.tutorial.domainmocking;
 
+import demo.org.powermock.examples.tutorial.domainmocking.domain.Person;
+
+import java.util.BitSet;
+
 /**
  * A simple service interface.
  */
@@ -34,4 +38,18 @@ public interface SampleService {
 	 */
 	boolean createPerson(String firstName, String lastName);
 
+	/**
+	 * Create several persons with one call to the underlying persistence
+	 * store. The errors of the whole batch are collected in one business
+	 * messages object and the persons that couldn't be created are notified
+	 * to the event service with one call.
+	 * 
+	 * @param persons
+	 *            The persons to create. <code>null</code> elements are
+	 *            invalid and are never created.
+	 * @return A bit set with the bit at the index of each person that was
+	 *         created successfully set.
+	 */
+	BitSet createPersons(Iterable<Person> persons);
+
 }
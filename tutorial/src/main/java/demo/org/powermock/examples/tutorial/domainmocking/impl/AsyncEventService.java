@@ -0,0 +1,268 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.domainmocking.impl;
+
+import demo.org.powermock.examples.tutorial.domainmocking.EventService;
+import demo.org.powermock.examples.tutorial.domainmocking.domain.BusinessMessages;
+import demo.org.powermock.examples.tutorial.domainmocking.domain.Person;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An {@link EventService} that queues events and returns immediately. A
+ * single consumer thread delivers the events to another event service in
+ * batches of at most <code>maxBatchSize</code> events, at most
+ * <code>maxDelayMillis</code> after the first event of a batch was queued.
+ * Consecutive events with the same {@link BusinessMessages} object are
+ * delivered with one {@link EventService#sendErrorEvents(List, BusinessMessages)}
+ * call.
+ * <p>
+ * The queue holds at most <code>capacity</code> events, the
+ * {@link OverflowPolicy} decides what happens to events that don't fit.
+ */
+public class AsyncEventService implements EventService {
+
+	/**
+	 * What to do with an event when the queue is full.
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * Discard the event and count it as dropped.
+		 */
+		DROP,
+
+		/**
+		 * Wait until there's room in the queue.
+		 */
+		BLOCK,
+
+		/**
+		 * Deliver the event on the calling thread, ahead of queued events.
+		 */
+		CALLER_RUNS
+	}
+
+	private static final long BLOCKED_PRODUCER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+	private final EventService delegate;
+
+	private final MpscRingBuffer<Event> queue;
+
+	private final int maxBatchSize;
+
+	private final long maxDelayNanos;
+
+	private final OverflowPolicy overflowPolicy;
+
+	private final Thread consumer;
+
+	private volatile boolean consumerParked;
+
+	private volatile boolean running = true;
+
+	private final AtomicLong droppedCount = new AtomicLong();
+
+	private final AtomicLong failedCount = new AtomicLong();
+
+	public AsyncEventService(EventService delegate, int capacity, int maxBatchSize, long maxDelayMillis, OverflowPolicy overflowPolicy) {
+		if (maxBatchSize < 1) {
+			throw new IllegalArgumentException("maxBatchSize must be at least 1 but was " + maxBatchSize);
+		}
+		this.delegate = delegate;
+		this.queue = new MpscRingBuffer<Event>(capacity);
+		this.maxBatchSize = maxBatchSize;
+		this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+		this.overflowPolicy = overflowPolicy;
+		consumer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				consume();
+			}
+		}, "async-event-service");
+		consumer.setDaemon(true);
+		consumer.start();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void sendErrorEvent(Person person, BusinessMessages messages) {
+		enqueue(new Event(Collections.singletonList(person), messages));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void sendErrorEvents(List<Person> persons, BusinessMessages messages) {
+		enqueue(new Event(persons, messages));
+	}
+
+	/**
+	 * @return The number of events that were discarded because the queue was
+	 *         full. Each call to {@link #sendErrorEvent(Person, BusinessMessages)}
+	 *         or {@link #sendErrorEvents(List, BusinessMessages)} is one event,
+	 *         however many persons it names.
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * @return The number of events the delegate failed to deliver, counted
+	 *         like {@link #getDroppedCount()}.
+	 */
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+
+	/**
+	 * Deliver the queued events and stop the consumer thread. Events sent
+	 * after closing are rejected; events sent while closing are either
+	 * rejected or delivered, by the sending thread if the consumer thread
+	 * has stopped already.
+	 */
+	public void close() throws InterruptedException {
+		running = false;
+		LockSupport.unpark(consumer);
+		consumer.join();
+	}
+
+	private void enqueue(Event event) {
+		if (!running) {
+			throw new IllegalStateException("The event service has been closed");
+		}
+		while (!queue.offer(event)) {
+			switch (overflowPolicy) {
+			case DROP:
+				droppedCount.incrementAndGet();
+				return;
+			case CALLER_RUNS:
+				deliver(Collections.singletonList(event));
+				return;
+			default:
+				if (!running) {
+					throw new IllegalStateException("The event service has been closed");
+				}
+				LockSupport.unpark(consumer);
+				LockSupport.parkNanos(this, BLOCKED_PRODUCER_PARK_NANOS);
+			}
+		}
+		if (!running) {
+			// Closed while offering, the consumer may have exited already
+			deliverAfterClose();
+		} else if (consumerParked) {
+			LockSupport.unpark(consumer);
+		}
+	}
+
+	/**
+	 * Delivers the events that were queued after the consumer thread saw
+	 * the service closed. Waits for the consumer to exit, the callers then
+	 * take turns draining the queue.
+	 */
+	private void deliverAfterClose() {
+		if (Thread.currentThread() == consumer) {
+			// The consumer drains the queue before it exits
+			return;
+		}
+		boolean interrupted = false;
+		while (consumer.isAlive()) {
+			try {
+				consumer.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		synchronized (queue) {
+			final List<Event> events = new ArrayList<Event>();
+			queue.drainTo(events, Integer.MAX_VALUE);
+			deliver(events);
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void consume() {
+		final List<Event> batch = new ArrayList<Event>(maxBatchSize);
+		// Waking up at least this often bounds the delay of a missed unpark
+		final long idleParkNanos = Math.max(maxDelayNanos, TimeUnit.MILLISECONDS.toNanos(1));
+		long batchStart = 0;
+		while (running || !queue.isEmpty() || !batch.isEmpty()) {
+			final boolean newBatch = batch.isEmpty();
+			if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0 && newBatch) {
+				batchStart = System.nanoTime();
+			}
+			final long waited = System.nanoTime() - batchStart;
+			if (batch.size() == maxBatchSize || !batch.isEmpty() && (waited >= maxDelayNanos || !running)) {
+				deliver(batch);
+				batch.clear();
+			} else if (queue.isEmpty() && running) {
+				consumerParked = true;
+				if (queue.isEmpty()) {
+					LockSupport.parkNanos(this, batch.isEmpty() ? idleParkNanos : maxDelayNanos - waited);
+				}
+				consumerParked = false;
+			}
+		}
+	}
+
+	private void deliver(List<Event> events) {
+		int index = 0;
+		while (index < events.size()) {
+			final BusinessMessages messages = events.get(index).messages;
+			int end = index + 1;
+			while (end < events.size() && events.get(end).messages == messages) {
+				end++;
+			}
+			List<Person> persons = events.get(index).persons;
+			if (end - index > 1) {
+				persons = new ArrayList<Person>();
+				for (int i = index; i < end; i++) {
+					persons.addAll(events.get(i).persons);
+				}
+			}
+			try {
+				if (persons.size() == 1) {
+					delegate.sendErrorEvent(persons.get(0), messages);
+				} else {
+					delegate.sendErrorEvents(persons, messages);
+				}
+			} catch (RuntimeException e) {
+				failedCount.addAndGet(end - index);
+			}
+			index = end;
+		}
+	}
+
+	private static final class Event {
+		final List<Person> persons;
+
+		final BusinessMessages messages;
+
+		Event(List<Person> persons, BusinessMessages messages) {
+			this.persons = persons;
+			this.messages = messages;
+		}
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.domainmocking.impl;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, lock-free queue for many producer threads and a single consumer
+ * thread, after Dmitry Vyukov's bounded queue. Each slot has a sequence
+ * number that tells whether it's free for the producer of a given position or
+ * holds the element the consumer expects next, so producers only contend on
+ * one counter and the consumer doesn't contend at all.
+ *
+ * @param <E>
+ *            The type of the elements.
+ */
+final class MpscRingBuffer<E> {
+
+	private final int mask;
+
+	private final Object[] elements;
+
+	/**
+	 * The slot at <code>position &amp; mask</code> is free for the producer of
+	 * <code>position</code> when its sequence is <code>position</code> and
+	 * holds that producer's element when it is <code>position + 1</code>.
+	 */
+	private final AtomicLongArray sequences;
+
+	private final AtomicLong tail = new AtomicLong();
+
+	/**
+	 * Only used by the consumer thread.
+	 */
+	private long head;
+
+	/**
+	 * @param capacity
+	 *            Rounded up to a power of two, at least two so the sequences
+	 *            of a free and a full slot differ.
+	 */
+	MpscRingBuffer(int capacity) {
+		if (capacity < 1 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("Capacity must be between 1 and 2^30 but was " + capacity);
+		}
+		int size = 2;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		mask = size - 1;
+		elements = new Object[size];
+		sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+	}
+
+	int capacity() {
+		return elements.length;
+	}
+
+	/**
+	 * Adds an element, from any thread.
+	 *
+	 * @return <code>false</code> if the buffer is full.
+	 */
+	boolean offer(E element) {
+		for (;;) {
+			final long position = tail.get();
+			final int index = (int) position & mask;
+			final long difference = sequences.get(index) - position;
+			if (difference == 0) {
+				if (tail.compareAndSet(position, position + 1)) {
+					elements[index] = element;
+					// Publishes the element to the consumer. A volatile write, so
+					// the caller's next volatile read can't move ahead of it
+					sequences.set(index, position + 1);
+					return true;
+				}
+			} else if (difference < 0) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Removes the oldest element, from the consumer thread only.
+	 *
+	 * @return The element or <code>null</code> if the buffer is empty.
+	 */
+	@SuppressWarnings("unchecked")
+	E poll() {
+		final int index = (int) head & mask;
+		if (sequences.get(index) != head + 1) {
+			return null;
+		}
+		final E element = (E) elements[index];
+		elements[index] = null;
+		// Frees the slot for the producer one lap ahead
+		sequences.lazySet(index, head + elements.length);
+		head++;
+		return element;
+	}
+
+	/**
+	 * Moves up to <code>max</code> elements to <code>target</code>, from the
+	 * consumer thread only.
+	 *
+	 * @return The number of elements moved.
+	 */
+	int drainTo(List<? super E> target, int max) {
+		int count = 0;
+		while (count < max) {
+			final E element = poll();
+			if (element == null) {
+				break;
+			}
+			target.add(element);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * @return <code>true</code> if there's no element the consumer could
+	 *         take, from the consumer thread only. A producer may be about to
+	 *         publish one.
+	 */
+	boolean isEmpty() {
+		return sequences.get((int) head & mask) != head + 1;
+	}
+}
@@ -22,6 +22,11 @@ import demo.org.powermock.examples.tutorial.domainmocking.domain.BusinessMessage
 import demo.org.powermock.examples.tutorial.domainmocking.domain.Person;
 import demo.org.powermock.examples.tutorial.domainmocking.domain.SampleServiceException;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
 /**
  * This is a simple service that delegates calls to two stub services. The
  * purpose of this service is to demonstrate that need to mock instantiation of
@@ -69,4 +74,46 @@ public class SampleServiceImpl implements SampleService {
 
 		return !hasErrors;
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public BitSet createPersons(Iterable<Person> persons) {
+		final List<Person> validPersons = new ArrayList<Person>();
+		// The index in persons of each valid person
+		int[] indices = new int[16];
+		int count = 0;
+		for (Person person : persons) {
+			if (person != null) {
+				if (validPersons.size() == indices.length) {
+					indices = Arrays.copyOf(indices, indices.length * 2);
+				}
+				indices[validPersons.size()] = count;
+				validPersons.add(person);
+			}
+			count++;
+		}
+		final BitSet created = new BitSet(count);
+		if (validPersons.isEmpty()) {
+			return created;
+		}
+
+		BusinessMessages messages = new BusinessMessages();
+		final BitSet failed = personService.createAll(validPersons, messages);
+
+		final List<Person> failedPersons = new ArrayList<Person>(failed.cardinality());
+		for (int i = 0; i < validPersons.size(); i++) {
+			if (failed.get(i)) {
+				failedPersons.add(validPersons.get(i));
+			} else {
+				created.set(indices[i]);
+			}
+		}
+		if (!failedPersons.isEmpty()) {
+			eventService.sendErrorEvents(failedPersons, messages);
+		}
+
+		return created;
+	}
 }
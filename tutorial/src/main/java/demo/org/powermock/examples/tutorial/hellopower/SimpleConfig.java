@@ -15,33 +15,108 @@
  */
 package demo.org.powermock.examples.tutorial.hellopower;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Important third party code that cannot be changed.
+ * <p>
+ * The configuration is read into an immutable snapshot that is published
+ * through an atomic reference, so reading a setting is a plain field read
+ * without locking. The first snapshot is loaded by the class initialization
+ * of a holder class when a setting is read for the first time,
+ * {@link #reload()} replaces it.
  */
 public class SimpleConfig {
 
-    private static Properties PROPERTIES;
-
-    private static synchronized void initialize() {
-    	if (PROPERTIES == null) {
-	        PROPERTIES = new Properties();
-		    try {
-	            PROPERTIES.load(SimpleConfig.class.getClassLoader().getResourceAsStream("simpleConfig.properties"));
-	        } catch (Exception e) {
-	            throw new RuntimeException(e);
-	        }
-    	}
-    }
-    
+    private static final String RESOURCE = "simpleConfig.properties";
+
+    private static final AtomicReference<Snapshot> SNAPSHOT = new AtomicReference<Snapshot>();
+
     public static String getGreeting() {
-    	initialize();
-        return PROPERTIES.getProperty("greeting");
+        return snapshot().greeting;
     }
 
     public static String getTarget() {
-    	initialize();
-        return PROPERTIES.getProperty("target");
+        return snapshot().target;
+    }
+
+    /**
+     * Reads the configuration again and publishes it. Readers see either the
+     * previous or the new configuration, never a mix of both.
+     * 
+     * @throws RuntimeException
+     *             If the configuration can't be read, the previous
+     *             configuration stays in place then.
+     */
+    public static void reload() {
+        SNAPSHOT.set(load());
+    }
+
+    private static Snapshot snapshot() {
+        final Snapshot current = SNAPSHOT.get();
+        return current != null ? current : InitialSnapshot.get();
+    }
+
+    private static Snapshot load() {
+        final InputStream stream = SimpleConfig.class.getClassLoader().getResourceAsStream(RESOURCE);
+        if (stream == null) {
+            throw new RuntimeException("Couldn't find " + RESOURCE);
+        }
+        final Properties properties = new Properties();
+        try {
+            try {
+                properties.load(stream);
+            } finally {
+                stream.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return new Snapshot(properties);
+    }
+
+    /**
+     * The settings of one version of the configuration.
+     */
+    private static final class Snapshot {
+        final String greeting;
+
+        final String target;
+
+        Snapshot(Properties properties) {
+            greeting = properties.getProperty("greeting");
+            target = properties.getProperty("target");
+        }
+    }
+
+    /**
+     * Loads the first snapshot when it is needed, the JVM guarantees that this
+     * happens once. A failed load is remembered, so reads keep failing until
+     * {@link SimpleConfig#reload()} succeeds.
+     */
+    private static final class InitialSnapshot {
+        private static final RuntimeException FAILURE;
+
+        static {
+            RuntimeException failure = null;
+            try {
+                // Doesn't replace a snapshot published by a concurrent reload
+                SNAPSHOT.compareAndSet(null, load());
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            FAILURE = failure;
+        }
+
+        static Snapshot get() {
+            final Snapshot current = SNAPSHOT.get();
+            if (current == null) {
+                throw new IllegalStateException("The configuration couldn't be loaded", FAILURE);
+            }
+            return current;
+        }
     }
 }
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.partialmocking.dao;
+
+import demo.org.powermock.examples.tutorial.partialmocking.dao.domain.impl.ServiceArtifact;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * The changes to the service producers of a {@link ProviderDao} between two
+ * versions. An artifact is in at most one of the added, modified and removed
+ * sets.
+ */
+public final class ProviderChanges {
+
+	private final long version;
+
+	private final boolean fullReloadRequired;
+
+	private final Set<ServiceArtifact> added;
+
+	private final Set<ServiceArtifact> modified;
+
+	private final Set<ServiceArtifact> removed;
+
+	public ProviderChanges(long version, Set<ServiceArtifact> added, Set<ServiceArtifact> modified, Set<ServiceArtifact> removed) {
+		this(version, false, added, modified, removed);
+	}
+
+	private ProviderChanges(long version, boolean fullReloadRequired, Set<ServiceArtifact> added, Set<ServiceArtifact> modified,
+			Set<ServiceArtifact> removed) {
+		this.version = version;
+		this.fullReloadRequired = fullReloadRequired;
+		this.added = Collections.unmodifiableSet(added);
+		this.modified = Collections.unmodifiableSet(modified);
+		this.removed = Collections.unmodifiableSet(removed);
+	}
+
+	/**
+	 * @return Changes telling the consumer to reload all service producers
+	 *         because the changes since the requested version are unknown.
+	 */
+	public static ProviderChanges fullReload(long version) {
+		final Set<ServiceArtifact> none = Collections.emptySet();
+		return new ProviderChanges(version, true, none, none, none);
+	}
+
+	/**
+	 * @return The version these changes lead to, to be passed to the next
+	 *         {@link ProviderDao#getChangesSince(long)} call.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return <code>true</code> if the changes are unknown and the consumer
+	 *         has to reload all service producers. The artifact sets are
+	 *         empty in that case.
+	 */
+	public boolean isFullReloadRequired() {
+		return fullReloadRequired;
+	}
+
+	public Set<ServiceArtifact> getAdded() {
+		return added;
+	}
+
+	public Set<ServiceArtifact> getModified() {
+		return modified;
+	}
+
+	public Set<ServiceArtifact> getRemoved() {
+		return removed;
+	}
+
+	public boolean isEmpty() {
+		return !fullReloadRequired && added.isEmpty() && modified.isEmpty() && removed.isEmpty();
+	}
+}
@@ -26,4 +26,20 @@ public interface ProviderDao {
 	 */
 	Set<ServiceArtifact> getAllServiceProducers();
 
+	/**
+	 * @return A token for the current state of the service producers, to be
+	 *         passed to {@link #getChangesSince(long)}. Read it before
+	 *         {@link #getAllServiceProducers()} so no change is missed.
+	 */
+	long getVersion();
+
+	/**
+	 * @param version
+	 *            A token returned by {@link #getVersion()} or
+	 *            {@link ProviderChanges#getVersion()}.
+	 * @return The changes to the service producers since
+	 *         <code>version</code>. If the changes are no longer known the
+	 *         result requires a full reload.
+	 */
+	ProviderChanges getChangesSince(long version);
 }
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.partialmocking.dao.domain;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A connection whose operations don't wait for the peer. The returned futures
+ * complete once the data has been handed to the operating system, or
+ * exceptionally if it couldn't be.
+ */
+public interface AsyncConnection {
+
+	CompletableFuture<Void> send(byte[] data);
+
+	/**
+	 * Send the remaining bytes of a buffer. The buffer must not be modified
+	 * until the returned future has completed.
+	 */
+	CompletableFuture<Void> send(ByteBuffer data);
+
+	/**
+	 * Disconnect once everything sent so far has been written. Sending after
+	 * disconnecting fails.
+	 */
+	CompletableFuture<Void> disconnect();
+}
@@ -15,10 +15,30 @@
  */
 package demo.org.powermock.examples.tutorial.partialmocking.dao.domain;
 
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
 public interface Connection {
 	
 	void disconnect();
 	
 	void send(byte[] data);
 
+	/**
+	 * Send the remaining bytes of a buffer. The position of the buffer is
+	 * advanced as the bytes are sent.
+	 */
+	void send(ByteBuffer data);
+
+	/**
+	 * Send the remaining bytes of several buffers, in order, as one payload.
+	 */
+	void send(ByteBuffer[] data);
+
+	/**
+	 * Send <code>length</code> bytes of a file, starting at
+	 * <code>offset</code>.
+	 */
+	void sendFile(Path file, long offset, long length);
+
 }
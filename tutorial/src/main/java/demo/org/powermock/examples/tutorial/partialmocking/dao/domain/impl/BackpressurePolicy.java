@@ -0,0 +1,40 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.partialmocking.dao.domain.impl;
+
+/**
+ * What an {@link demo.org.powermock.examples.tutorial.partialmocking.dao.domain.AsyncConnection}
+ * does with a send when its outbound queue is full.
+ */
+public enum BackpressurePolicy {
+	/**
+	 * Fail the new send with a
+	 * {@link java.util.concurrent.RejectedExecutionException}.
+	 */
+	REJECT,
+
+	/**
+	 * Make the sending thread wait until there's room in the queue. Sends from
+	 * the event loop thread are rejected instead.
+	 */
+	BLOCK,
+
+	/**
+	 * Cancel the oldest queued send that hasn't started to be written yet to
+	 * make room, or reject the new send if there's no such send.
+	 */
+	DROP_OLDEST
+}
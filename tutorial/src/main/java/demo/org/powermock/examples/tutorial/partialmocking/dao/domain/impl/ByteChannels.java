@@ -0,0 +1,75 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.partialmocking.dao.domain.impl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes that don't return until everything has been written.
+ */
+final class ByteChannels {
+
+	private ByteChannels() {
+	}
+
+	static void writeFully(GatheringByteChannel channel, ByteBuffer[] buffers) throws IOException {
+		int offset = 0;
+		while (offset < buffers.length) {
+			channel.write(buffers, offset, buffers.length - offset);
+			while (offset < buffers.length && !buffers[offset].hasRemaining()) {
+				offset++;
+			}
+		}
+	}
+
+	/**
+	 * Transfers part of a file with {@link FileChannel#transferTo}, which lets
+	 * the operating system copy the bytes without passing them through user
+	 * space where it can.
+	 *
+	 * @throws EOFException
+	 *             If the file is truncated before the part has been sent.
+	 */
+	static void transferFully(Path file, long offset, long length, WritableByteChannel target) throws IOException {
+		final FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			if (offset < 0 || length < 0 || offset + length > fileChannel.size()) {
+				throw new IllegalArgumentException("Can't send " + length + " bytes at offset " + offset + " of " + file + " with "
+						+ fileChannel.size() + " bytes");
+			}
+			long position = offset;
+			final long end = offset + length;
+			while (position < end) {
+				final long transferred = fileChannel.transferTo(position, end - position, target);
+				if (transferred == 0 && fileChannel.size() < end) {
+					// Nothing is left to transfer past the end of the file
+					throw new EOFException(file + " was truncated to " + fileChannel.size() + " bytes while sending " + length
+							+ " bytes at offset " + offset);
+				}
+				position += transferred;
+			}
+		} finally {
+			fileChannel.close();
+		}
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.partialmocking.dao.domain.impl;
+
+import demo.org.powermock.examples.tutorial.partialmocking.dao.domain.AsyncConnection;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A single thread that performs the I/O of any number of
+ * {@link AsyncConnection}s with a {@link Selector}, so connections don't need
+ * a thread each. The futures returned by the connections are completed on
+ * this thread, so dependent actions must not block.
+ */
+public class ConnectionEventLoop {
+
+	private final Selector selector;
+
+	private final Thread thread;
+
+	private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+	private volatile boolean running = true;
+
+	public ConnectionEventLoop() {
+		try {
+			selector = Selector.open();
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to open a selector", e);
+		}
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				loop();
+			}
+		}, "connection-event-loop");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Connect to a peer.
+	 *
+	 * @param maxQueuedWrites
+	 *            The number of sends that may wait to be written before the
+	 *            <code>policy</code> applies.
+	 */
+	public AsyncConnection connect(SocketAddress address, int maxQueuedWrites, BackpressurePolicy policy) {
+		if (!running) {
+			throw new IllegalStateException("The event loop has been closed");
+		}
+		if (maxQueuedWrites < 1) {
+			throw new IllegalArgumentException("maxQueuedWrites must be at least 1 but was " + maxQueuedWrites);
+		}
+		return new NioAsyncConnection(this, address, maxQueuedWrites, policy);
+	}
+
+	/**
+	 * Stop the event loop. Connections that are still open are closed and
+	 * their queued sends fail.
+	 */
+	public void close() throws InterruptedException {
+		running = false;
+		selector.wakeup();
+		if (!inEventLoop()) {
+			thread.join();
+		}
+	}
+
+	boolean inEventLoop() {
+		return Thread.currentThread() == thread;
+	}
+
+	Selector selector() {
+		return selector;
+	}
+
+	/**
+	 * Run a task on the event loop thread.
+	 */
+	void execute(Runnable task) {
+		tasks.add(task);
+		if (!inEventLoop()) {
+			selector.wakeup();
+		}
+	}
+
+	private void loop() {
+		try {
+			while (running) {
+				selector.select();
+				for (Runnable task = tasks.poll(); task != null; task = tasks.poll()) {
+					task.run();
+				}
+				final Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+				while (selected.hasNext()) {
+					final SelectionKey key = selected.next();
+					selected.remove();
+					((NioAsyncConnection) key.attachment()).handle(key);
+				}
+			}
+		} catch (IOException e) {
+			// The selector is broken, close all connections below
+		} finally {
+			// Let pending registrations happen so their connections are closed
+			// too
+			for (Runnable task = tasks.poll(); task != null; task = tasks.poll()) {
+				task.run();
+			}
+			for (SelectionKey key : selector.keys()) {
+				((NioAsyncConnection) key.attachment()).fail(new ClosedChannelException());
+			}
+			try {
+				selector.close();
+			} catch (IOException e) {
+				// Nothing left to clean up
+			}
+		}
+	}
+}
@@ -17,6 +17,9 @@ package demo.org.powermock.examples.tutorial.partialmocking.dao.domain.impl;
 
 import demo.org.powermock.examples.tutorial.partialmocking.dao.domain.Connection;
 
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
 public class ConnectionImpl implements Connection {
 
 	@Override
@@ -28,4 +31,25 @@ public class ConnectionImpl implements Connection {
 	public void send(byte[] data) {
 		System.out.println("Sending data of " + data.length + " bytes.");
 	}
+
+	@Override
+	public void send(ByteBuffer data) {
+		System.out.println("Sending data of " + data.remaining() + " bytes.");
+		data.position(data.limit());
+	}
+
+	@Override
+	public void send(ByteBuffer[] data) {
+		long length = 0;
+		for (ByteBuffer buffer : data) {
+			length += buffer.remaining();
+			buffer.position(buffer.limit());
+		}
+		System.out.println("Sending data of " + length + " bytes.");
+	}
+
+	@Override
+	public void sendFile(Path file, long offset, long length) {
+		System.out.println("Sending " + length + " bytes of " + file + ".");
+	}
 }
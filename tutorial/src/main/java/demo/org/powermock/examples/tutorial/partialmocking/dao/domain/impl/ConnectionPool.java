@@ -0,0 +1,353 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.partialmocking.dao.domain.impl;
+
+import demo.org.powermock.examples.tutorial.common.collections.ConcurrentLongHashMap;
+import demo.org.powermock.examples.tutorial.partialmocking.dao.domain.Connection;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pool of connections to service artifacts, keyed by artifact id. At most
+ * <code>maxPerArtifact</code> connections to an artifact are handed out at a
+ * time; {@link Connection#disconnect()} on a pooled connection returns it to
+ * the pool instead of closing it. Connections that have been idle for longer
+ * than <code>maxIdleMillis</code> are closed when the pool of their artifact
+ * is used next, or by {@link #evictIdle()}. Connections that failed to send
+ * are closed when they're returned instead of being reused.
+ */
+public class ConnectionPool {
+
+	/**
+	 * Opens new connections for the pool.
+	 */
+	public interface ConnectionFactory {
+		Connection connect(ServiceArtifact serviceArtifact);
+	}
+
+	private final ConnectionFactory connectionFactory;
+
+	private final int maxPerArtifact;
+
+	private final long maxIdleNanos;
+
+	private final ConcurrentLongHashMap<Partition> partitions = new ConcurrentLongHashMap<Partition>();
+
+	private volatile boolean closed;
+
+	/**
+	 * Create a pool that opens connections with
+	 * {@link ServiceArtifact#connectToService()}.
+	 */
+	public ConnectionPool(int maxPerArtifact, long maxIdleMillis) {
+		this(new ConnectionFactory() {
+			@Override
+			public Connection connect(ServiceArtifact serviceArtifact) {
+				return serviceArtifact.connectToService();
+			}
+		}, maxPerArtifact, maxIdleMillis);
+	}
+
+	public ConnectionPool(ConnectionFactory connectionFactory, int maxPerArtifact, long maxIdleMillis) {
+		if (maxPerArtifact < 1) {
+			throw new IllegalArgumentException("maxPerArtifact must be at least 1 but was " + maxPerArtifact);
+		}
+		this.connectionFactory = connectionFactory;
+		this.maxPerArtifact = maxPerArtifact;
+		this.maxIdleNanos = TimeUnit.MILLISECONDS.toNanos(maxIdleMillis);
+	}
+
+	/**
+	 * Get a connection to a service artifact, waiting for one to be returned
+	 * if <code>maxPerArtifact</code> connections are in use.
+	 */
+	public Connection acquire(ServiceArtifact serviceArtifact) {
+		final Partition partition = partitionFor(serviceArtifact);
+		try {
+			partition.permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a connection to " + serviceArtifact.getName(), e);
+		}
+		return open(partition, serviceArtifact);
+	}
+
+	/**
+	 * Get a connection to a service artifact, waiting at most
+	 * <code>timeout</code> for one to be returned if
+	 * <code>maxPerArtifact</code> connections are in use.
+	 *
+	 * @return The connection or <code>null</code> if none became available
+	 *         in time.
+	 */
+	public Connection tryAcquire(ServiceArtifact serviceArtifact, long timeout, TimeUnit unit) throws InterruptedException {
+		final Partition partition = partitionFor(serviceArtifact);
+		if (!partition.permits.tryAcquire(timeout, unit)) {
+			return null;
+		}
+		return open(partition, serviceArtifact);
+	}
+
+	/**
+	 * Close the connections of all artifacts that have been idle for too
+	 * long.
+	 */
+	public void evictIdle() {
+		for (Partition partition : partitions.values()) {
+			disconnectAll(partition.removeIdle(System.nanoTime() - maxIdleNanos));
+		}
+	}
+
+	/**
+	 * Close all idle connections. Connections in use are closed when they're
+	 * returned.
+	 */
+	public void close() {
+		closed = true;
+		for (Partition partition : partitions.values()) {
+			disconnectAll(partition.removeIdle(Long.MAX_VALUE));
+		}
+	}
+
+	/**
+	 * @return The number of idle connections to a service artifact.
+	 */
+	public int getIdleCount(ServiceArtifact serviceArtifact) {
+		final Partition partition = partitions.get(serviceArtifact.getId());
+		return partition == null ? 0 : partition.idleCount();
+	}
+
+	private Partition partitionFor(ServiceArtifact serviceArtifact) {
+		if (closed) {
+			throw new IllegalStateException("The connection pool has been closed");
+		}
+		Partition partition = partitions.get(serviceArtifact.getId());
+		if (partition == null) {
+			final Partition created = new Partition(maxPerArtifact);
+			partition = partitions.putIfAbsent(serviceArtifact.getId(), created);
+			if (partition == null) {
+				partition = created;
+			}
+		}
+		return partition;
+	}
+
+	private Connection open(Partition partition, ServiceArtifact serviceArtifact) {
+		try {
+			disconnectAll(partition.removeIdle(System.nanoTime() - maxIdleNanos));
+			Connection connection = partition.pollIdle();
+			if (connection == null) {
+				connection = connectionFactory.connect(serviceArtifact);
+			}
+			return new PooledConnection(partition, connection);
+		} catch (RuntimeException e) {
+			partition.permits.release();
+			throw e;
+		}
+	}
+
+	private void release(Partition partition, Connection connection, boolean failed) {
+		boolean reusable = !closed && !failed;
+		try {
+			if (reusable && connection instanceof Flushable) {
+				((Flushable) connection).flush();
+			}
+		} catch (IOException e) {
+			// Don't reuse a connection that failed
+			reusable = false;
+		} catch (RuntimeException e) {
+			reusable = false;
+		}
+		if (reusable) {
+			partition.offerIdle(connection, System.nanoTime());
+			if (closed) {
+				// The pool was closed while the connection was returned
+				disconnectAll(partition.removeIdle(Long.MAX_VALUE));
+			}
+		} else {
+			disconnectAll(Collections.singletonList(connection));
+		}
+		partition.permits.release();
+	}
+
+	private static void disconnectAll(List<Connection> connections) {
+		for (Connection connection : connections) {
+			try {
+				connection.disconnect();
+			} catch (RuntimeException e) {
+				// The connection is discarded anyway
+			}
+		}
+	}
+
+	/**
+	 * The connections to one service artifact.
+	 */
+	private static final class Partition {
+		final Semaphore permits;
+
+		/**
+		 * Most recently returned last, guarded by <code>this</code>.
+		 */
+		private final ArrayDeque<IdleConnection> idle = new ArrayDeque<IdleConnection>();
+
+		Partition(int maxConnections) {
+			permits = new Semaphore(maxConnections, true);
+		}
+
+		synchronized Connection pollIdle() {
+			final IdleConnection idleConnection = idle.pollLast();
+			return idleConnection == null ? null : idleConnection.connection;
+		}
+
+		synchronized void offerIdle(Connection connection, long now) {
+			idle.addLast(new IdleConnection(connection, now));
+		}
+
+		synchronized int idleCount() {
+			return idle.size();
+		}
+
+		/**
+		 * @return The connections that have been idle since before
+		 *         <code>idleBefore</code>.
+		 */
+		synchronized List<Connection> removeIdle(long idleBefore) {
+			final List<Connection> removed = new ArrayList<Connection>();
+			while (!idle.isEmpty() && idle.peekFirst().since - idleBefore <= 0) {
+				removed.add(idle.pollFirst().connection);
+			}
+			return removed;
+		}
+	}
+
+	private static final class IdleConnection {
+		final Connection connection;
+
+		final long since;
+
+		IdleConnection(Connection connection, long since) {
+			this.connection = connection;
+			this.since = since;
+		}
+	}
+
+	/**
+	 * A connection handed out by the pool, returned to it on
+	 * {@link #disconnect()}.
+	 */
+	private final class PooledConnection implements Connection, Flushable {
+		private final Partition partition;
+
+		private Connection connection;
+
+		/**
+		 * Set when a call to the connection threw, the connection isn't
+		 * reused then.
+		 */
+		private boolean failed;
+
+		PooledConnection(Partition partition, Connection connection) {
+			this.partition = partition;
+			this.connection = connection;
+		}
+
+		@Override
+		public synchronized void send(byte[] data) {
+			final Connection acquired = checkAcquired();
+			try {
+				acquired.send(data);
+			} catch (RuntimeException e) {
+				failed = true;
+				throw e;
+			}
+		}
+
+		@Override
+		public synchronized void send(ByteBuffer data) {
+			final Connection acquired = checkAcquired();
+			try {
+				acquired.send(data);
+			} catch (RuntimeException e) {
+				failed = true;
+				throw e;
+			}
+		}
+
+		@Override
+		public synchronized void send(ByteBuffer[] data) {
+			final Connection acquired = checkAcquired();
+			try {
+				acquired.send(data);
+			} catch (RuntimeException e) {
+				failed = true;
+				throw e;
+			}
+		}
+
+		@Override
+		public synchronized void sendFile(Path file, long offset, long length) {
+			final Connection acquired = checkAcquired();
+			try {
+				acquired.sendFile(file, offset, length);
+			} catch (RuntimeException e) {
+				failed = true;
+				throw e;
+			}
+		}
+
+		@Override
+		public synchronized void flush() throws IOException {
+			final Connection acquired = checkAcquired();
+			if (acquired instanceof Flushable) {
+				try {
+					((Flushable) acquired).flush();
+				} catch (IOException e) {
+					failed = true;
+					throw e;
+				} catch (RuntimeException e) {
+					failed = true;
+					throw e;
+				}
+			}
+		}
+
+		@Override
+		public synchronized void disconnect() {
+			if (connection != null) {
+				final Connection returned = connection;
+				connection = null;
+				release(partition, returned, failed);
+			}
+		}
+
+		private Connection checkAcquired() {
+			if (connection == null) {
+				throw new IllegalStateException("The connection has been returned to the pool");
+			}
+			return connection;
+		}
+	}
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.partialmocking.dao.domain.impl;
+
+import demo.org.powermock.examples.tutorial.partialmocking.dao.domain.AsyncConnection;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An {@link AsyncConnection} over a non-blocking {@link SocketChannel}. Sends
+ * are queued and written by the {@link ConnectionEventLoop}, up to
+ * {@value #MAX_BUFFERS_PER_WRITE} queued buffers with one gathering write.
+ * Futures are always completed outside the queue lock.
+ */
+final class NioAsyncConnection implements AsyncConnection {
+
+	private static final int MAX_BUFFERS_PER_WRITE = 64;
+
+	private final ConnectionEventLoop eventLoop;
+
+	private final SocketChannel channel;
+
+	private final int maxQueuedWrites;
+
+	private final BackpressurePolicy policy;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition notFull = lock.newCondition();
+
+	/**
+	 * Guarded by {@link #lock}, as are {@link #disconnecting} and
+	 * {@link #connected}.
+	 */
+	private final ArrayDeque<PendingWrite> queue = new ArrayDeque<PendingWrite>();
+
+	private boolean disconnecting;
+
+	private boolean connected;
+
+	private final CompletableFuture<Void> disconnected = new CompletableFuture<Void>();
+
+	/**
+	 * Only used on the event loop thread.
+	 */
+	private SelectionKey key;
+
+	private final Runnable writeTask = new Runnable() {
+		@Override
+		public void run() {
+			writeQueued();
+		}
+	};
+
+	NioAsyncConnection(ConnectionEventLoop eventLoop, SocketAddress address, int maxQueuedWrites, BackpressurePolicy policy) {
+		this.eventLoop = eventLoop;
+		this.maxQueuedWrites = maxQueuedWrites;
+		this.policy = policy;
+		try {
+			channel = SocketChannel.open();
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to connect to " + address, e);
+		}
+		try {
+			channel.configureBlocking(false);
+			connected = channel.connect(address);
+		} catch (IOException e) {
+			closeQuietly(channel);
+			throw new IllegalStateException("Failed to connect to " + address, e);
+		} catch (RuntimeException e) {
+			// For example an UnresolvedAddressException
+			closeQuietly(channel);
+			throw e;
+		}
+		eventLoop.execute(new Runnable() {
+			@Override
+			public void run() {
+				register();
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Void> send(byte[] data) {
+		return send(ByteBuffer.wrap(data));
+	}
+
+	@Override
+	public CompletableFuture<Void> send(ByteBuffer data) {
+		final PendingWrite write = new PendingWrite(data);
+		PendingWrite dropped = null;
+		Throwable failure = null;
+		boolean wasEmpty = false;
+		lock.lock();
+		try {
+			while (failure == null && !disconnecting && queue.size() >= maxQueuedWrites) {
+				if (policy == BackpressurePolicy.BLOCK && !eventLoop.inEventLoop()) {
+					try {
+						notFull.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						failure = e;
+					}
+				} else if (policy == BackpressurePolicy.DROP_OLDEST && (dropped = removeOldestUnstarted()) != null) {
+					break;
+				} else {
+					failure = new RejectedExecutionException("The outbound queue is full with " + queue.size() + " writes");
+				}
+			}
+			if (failure == null && disconnecting) {
+				failure = new IllegalStateException("The connection has been disconnected");
+			}
+			if (failure == null) {
+				wasEmpty = queue.isEmpty();
+				queue.addLast(write);
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (dropped != null) {
+			dropped.future.cancel(false);
+		}
+		if (failure != null) {
+			write.future.completeExceptionally(failure);
+		} else if (wasEmpty) {
+			eventLoop.execute(writeTask);
+		}
+		return write.future;
+	}
+
+	@Override
+	public CompletableFuture<Void> disconnect() {
+		lock.lock();
+		try {
+			disconnecting = true;
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		// Closes the channel once the queue is drained
+		eventLoop.execute(writeTask);
+		return disconnected;
+	}
+
+	/**
+	 * Called on the event loop thread when the channel is ready.
+	 */
+	void handle(SelectionKey selectedKey) {
+		if (selectedKey.isValid() && selectedKey.isConnectable()) {
+			try {
+				if (!channel.finishConnect()) {
+					return;
+				}
+			} catch (IOException e) {
+				fail(e);
+				return;
+			}
+			lock.lock();
+			try {
+				connected = true;
+			} finally {
+				lock.unlock();
+			}
+		}
+		if (selectedKey.isValid()) {
+			writeQueued();
+		}
+	}
+
+	/**
+	 * Fail all queued sends and close the channel, on the event loop thread.
+	 */
+	void fail(Throwable failure) {
+		final List<PendingWrite> failed;
+		lock.lock();
+		try {
+			disconnecting = true;
+			failed = new ArrayList<PendingWrite>(queue);
+			queue.clear();
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		closeChannel();
+		for (PendingWrite write : failed) {
+			write.future.completeExceptionally(failure);
+		}
+		disconnected.completeExceptionally(failure);
+	}
+
+	private void register() {
+		try {
+			key = channel.register(eventLoop.selector(), SelectionKey.OP_CONNECT, this);
+		} catch (ClosedChannelException e) {
+			fail(e);
+			return;
+		}
+		writeQueued();
+	}
+
+	/**
+	 * Writes as much of the queue as the channel accepts without blocking, on
+	 * the event loop thread.
+	 */
+	private void writeQueued() {
+		if (key == null || !key.isValid()) {
+			return;
+		}
+		final List<PendingWrite> written = new ArrayList<PendingWrite>();
+		IOException failure = null;
+		boolean close = false;
+		lock.lock();
+		try {
+			if (!connected) {
+				return;
+			}
+			try {
+				writeQueued(written);
+			} catch (IOException e) {
+				failure = e;
+			}
+			if (!written.isEmpty()) {
+				notFull.signalAll();
+			}
+			close = disconnecting && queue.isEmpty();
+			if (failure == null) {
+				key.interestOps(queue.isEmpty() ? 0 : SelectionKey.OP_WRITE);
+			}
+		} finally {
+			lock.unlock();
+		}
+		completeAll(written);
+		if (failure != null) {
+			fail(failure);
+		} else if (close) {
+			closeChannel();
+			disconnected.complete(null);
+		}
+	}
+
+	/**
+	 * Moves the writes that have been written completely to
+	 * <code>written</code>, with {@link #lock} held.
+	 */
+	private void writeQueued(List<PendingWrite> written) throws IOException {
+		final ByteBuffer[] buffers = new ByteBuffer[Math.min(queue.size(), MAX_BUFFERS_PER_WRITE)];
+		while (!queue.isEmpty()) {
+			final int count = Math.min(queue.size(), buffers.length);
+			final Iterator<PendingWrite> queued = queue.iterator();
+			long batchBytes = 0;
+			for (int i = 0; i < count; i++) {
+				buffers[i] = queued.next().buffer;
+				batchBytes += buffers[i].remaining();
+			}
+			final long writtenBytes = channel.write(buffers, 0, count);
+			while (!queue.isEmpty() && !queue.peekFirst().buffer.hasRemaining()) {
+				written.add(queue.pollFirst());
+			}
+			if (writtenBytes < batchBytes) {
+				// The socket buffer is full
+				return;
+			}
+		}
+	}
+
+	/**
+	 * @return The oldest queued write none of whose bytes have been written,
+	 *         removed from the queue, or <code>null</code> if there's none.
+	 */
+	private PendingWrite removeOldestUnstarted() {
+		final Iterator<PendingWrite> queued = queue.iterator();
+		while (queued.hasNext()) {
+			final PendingWrite write = queued.next();
+			if (write.buffer.position() == write.startPosition) {
+				queued.remove();
+				return write;
+			}
+		}
+		return null;
+	}
+
+	private void closeChannel() {
+		if (key != null) {
+			key.cancel();
+		}
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// The channel is unusable either way
+		}
+	}
+
+	private static void closeQuietly(SocketChannel channel) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// The connection failed already
+		}
+	}
+
+	private static void completeAll(List<PendingWrite> writes) {
+		for (PendingWrite write : writes) {
+			write.future.complete(null);
+		}
+	}
+
+	private static final class PendingWrite {
+		final ByteBuffer buffer;
+
+		final int startPosition;
+
+		final CompletableFuture<Void> future = new CompletableFuture<Void>();
+
+		PendingWrite(ByteBuffer buffer) {
+			this.buffer = buffer;
+			this.startPosition = buffer.position();
+		}
+	}
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.partialmocking.dao.domain.impl;
+
+import demo.org.powermock.examples.tutorial.partialmocking.dao.domain.Connection;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.file.Path;
+
+/**
+ * A {@link Connection} that queues the payloads it's asked to send and
+ * writes them to a channel in batches, with one gathering write per batch
+ * instead of one write per payload. A batch is written when it reaches
+ * <code>maxBatchSize</code> buffers or <code>maxBatchBytes</code> bytes, on
+ * {@link #flush()}, before a file is sent and on {@link #disconnect()}.
+ * <p>
+ * Payloads are not copied, so arrays and buffers that have been sent must not
+ * be modified until they have been written.
+ * <p>
+ * A write that fails leaves the channel in an unknown state, so the queued
+ * payloads are dropped and every later call except {@link #disconnect()}
+ * throws an {@link IllegalStateException}.
+ */
+public class PipelinedConnection implements Connection, Flushable {
+
+	public static final int DEFAULT_MAX_BATCH_SIZE = 64;
+
+	public static final int DEFAULT_MAX_BATCH_BYTES = 64 * 1024;
+
+	private final GatheringByteChannel channel;
+
+	private final int maxBatchBytes;
+
+	private final ByteBuffer[] batch;
+
+	private int batchSize;
+
+	private long batchBytes;
+
+	/**
+	 * The cause of the write that failed, <code>null</code> while the
+	 * connection is usable.
+	 */
+	private IOException failure;
+
+	public PipelinedConnection(GatheringByteChannel channel) {
+		this(channel, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_BATCH_BYTES);
+	}
+
+	public PipelinedConnection(GatheringByteChannel channel, int maxBatchSize, int maxBatchBytes) {
+		if (maxBatchSize < 1 || maxBatchBytes < 1) {
+			throw new IllegalArgumentException("Batch limits must be positive but were " + maxBatchSize + " payloads and " + maxBatchBytes + " bytes");
+		}
+		this.channel = channel;
+		this.maxBatchBytes = maxBatchBytes;
+		this.batch = new ByteBuffer[maxBatchSize];
+	}
+
+	@Override
+	public synchronized void send(byte[] data) {
+		enqueue(ByteBuffer.wrap(data));
+	}
+
+	@Override
+	public synchronized void send(ByteBuffer data) {
+		enqueue(data);
+	}
+
+	@Override
+	public synchronized void send(ByteBuffer[] data) {
+		for (ByteBuffer buffer : data) {
+			enqueue(buffer);
+		}
+	}
+
+	/**
+	 * Write the queued payloads, then transfer the file straight to the
+	 * channel.
+	 */
+	@Override
+	public synchronized void sendFile(Path file, long offset, long length) {
+		flush();
+		try {
+			ByteChannels.transferFully(file, offset, length, channel);
+		} catch (IOException e) {
+			failure = e;
+			throw new IllegalStateException("Failed to send " + file, e);
+		}
+	}
+
+	/**
+	 * Write all queued payloads.
+	 */
+	@Override
+	public synchronized void flush() {
+		checkUsable();
+		int offset = 0;
+		try {
+			while (offset < batchSize) {
+				channel.write(batch, offset, batchSize - offset);
+				while (offset < batchSize && !batch[offset].hasRemaining()) {
+					offset++;
+				}
+			}
+		} catch (IOException e) {
+			failure = e;
+			throw new IllegalStateException("Failed to send " + batchBytes + " bytes", e);
+		} finally {
+			// Written or not, the batch is gone
+			for (int i = 0; i < batchSize; i++) {
+				batch[i] = null;
+			}
+			batchSize = 0;
+			batchBytes = 0;
+		}
+	}
+
+	private void enqueue(ByteBuffer buffer) {
+		checkUsable();
+		batch[batchSize++] = buffer;
+		batchBytes += buffer.remaining();
+		if (batchSize == batch.length || batchBytes >= maxBatchBytes) {
+			flush();
+		}
+	}
+
+	private void checkUsable() {
+		if (failure != null) {
+			throw new IllegalStateException("The connection failed to send and can't be used anymore", failure);
+		}
+	}
+
+	/**
+	 * Write all queued payloads and close the channel. Only closes the
+	 * channel if the connection has failed.
+	 */
+	@Override
+	public synchronized void disconnect() {
+		try {
+			if (failure == null) {
+				flush();
+			}
+		} finally {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				throw new IllegalStateException("Failed to close " + channel, e);
+			}
+		}
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.partialmocking.dao.domain.impl;
+
+import demo.org.powermock.examples.tutorial.partialmocking.dao.domain.Connection;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+/**
+ * A {@link Connection} that writes straight to a blocking
+ * {@link SocketChannel}. Buffers are written as they are, several buffers
+ * with one gathering write, and files are transferred with
+ * {@link java.nio.channels.FileChannel#transferTo} so large artifacts are not
+ * copied through user space.
+ */
+public class SocketChannelConnection implements Connection {
+
+	private final SocketChannel channel;
+
+	public SocketChannelConnection(SocketChannel channel) {
+		this.channel = channel;
+	}
+
+	public static SocketChannelConnection open(SocketAddress address) {
+		try {
+			return new SocketChannelConnection(SocketChannel.open(address));
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to connect to " + address, e);
+		}
+	}
+
+	@Override
+	public synchronized void send(byte[] data) {
+		send(ByteBuffer.wrap(data));
+	}
+
+	@Override
+	public synchronized void send(ByteBuffer data) {
+		send(new ByteBuffer[] { data });
+	}
+
+	@Override
+	public synchronized void send(ByteBuffer[] data) {
+		try {
+			ByteChannels.writeFully(channel, data);
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to send data", e);
+		}
+	}
+
+	@Override
+	public synchronized void sendFile(Path file, long offset, long length) {
+		try {
+			ByteChannels.transferFully(file, offset, length, channel);
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to send " + file, e);
+		}
+	}
+
+	@Override
+	public synchronized void disconnect() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to close " + channel, e);
+		}
+	}
+}
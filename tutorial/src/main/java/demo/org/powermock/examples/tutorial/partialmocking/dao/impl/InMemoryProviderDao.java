@@ -0,0 +1,164 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.partialmocking.dao.impl;
+
+import demo.org.powermock.examples.tutorial.partialmocking.dao.ProviderChanges;
+import demo.org.powermock.examples.tutorial.partialmocking.dao.ProviderDao;
+import demo.org.powermock.examples.tutorial.partialmocking.dao.domain.impl.ServiceArtifact;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link ProviderDao} that keeps the service artifacts in memory. Every
+ * change increments the version and is recorded in a change log holding at
+ * most <code>changeLogCapacity</code> entries; consumers that fall further
+ * behind are told to reload everything.
+ */
+public class InMemoryProviderDao implements ProviderDao {
+
+	public static final int DEFAULT_CHANGE_LOG_CAPACITY = 1024;
+
+	private static final int ADDED = 0;
+
+	private static final int MODIFIED = 1;
+
+	private static final int REMOVED = 2;
+
+	private final int changeLogCapacity;
+
+	private final Map<Integer, ServiceArtifact> serviceArtifacts = new LinkedHashMap<Integer, ServiceArtifact>();
+
+	private final ArrayDeque<Change> changeLog = new ArrayDeque<Change>();
+
+	private long version;
+
+	public InMemoryProviderDao() {
+		this(DEFAULT_CHANGE_LOG_CAPACITY);
+	}
+
+	public InMemoryProviderDao(int changeLogCapacity) {
+		if (changeLogCapacity < 1) {
+			throw new IllegalArgumentException("Change log capacity must be at least 1 but was " + changeLogCapacity);
+		}
+		this.changeLogCapacity = changeLogCapacity;
+	}
+
+	/**
+	 * Add a service artifact, or replace the one with the same id.
+	 */
+	public synchronized void save(ServiceArtifact serviceArtifact) {
+		final ServiceArtifact previous = serviceArtifacts.put(serviceArtifact.getId(), serviceArtifact);
+		record(previous == null ? ADDED : MODIFIED, serviceArtifact);
+	}
+
+	/**
+	 * @return <code>false</code> if there's no service artifact with that
+	 *         id.
+	 */
+	public synchronized boolean remove(int id) {
+		final ServiceArtifact removed = serviceArtifacts.remove(id);
+		if (removed == null) {
+			return false;
+		}
+		record(REMOVED, removed);
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized Set<ServiceArtifact> getAllServiceProducers() {
+		return new HashSet<ServiceArtifact>(serviceArtifacts.values());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized long getVersion() {
+		return version;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Several changes to the same artifact are merged, so an artifact that was
+	 * added and removed again is not reported at all.
+	 */
+	@Override
+	public synchronized ProviderChanges getChangesSince(long since) {
+		if (since > version || since < version - changeLog.size()) {
+			return ProviderChanges.fullReload(version);
+		}
+		// The first and last change of each artifact decide its net change
+		final Map<Integer, Change[]> changesById = new LinkedHashMap<Integer, Change[]>();
+		final Iterator<Change> newestFirst = changeLog.descendingIterator();
+		while (newestFirst.hasNext()) {
+			final Change change = newestFirst.next();
+			if (change.version <= since) {
+				break;
+			}
+			final Change[] firstAndLast = changesById.get(change.serviceArtifact.getId());
+			if (firstAndLast == null) {
+				changesById.put(change.serviceArtifact.getId(), new Change[] { change, change });
+			} else {
+				firstAndLast[0] = change;
+			}
+		}
+		final Set<ServiceArtifact> added = new HashSet<ServiceArtifact>();
+		final Set<ServiceArtifact> modified = new HashSet<ServiceArtifact>();
+		final Set<ServiceArtifact> removed = new HashSet<ServiceArtifact>();
+		for (Change[] firstAndLast : changesById.values()) {
+			final boolean existedBefore = firstAndLast[0].kind != ADDED;
+			final boolean existsNow = firstAndLast[1].kind != REMOVED;
+			if (existedBefore && existsNow) {
+				modified.add(firstAndLast[1].serviceArtifact);
+			} else if (existsNow) {
+				added.add(firstAndLast[1].serviceArtifact);
+			} else if (existedBefore) {
+				removed.add(firstAndLast[1].serviceArtifact);
+			}
+		}
+		return new ProviderChanges(version, added, modified, removed);
+	}
+
+	private void record(int kind, ServiceArtifact serviceArtifact) {
+		if (changeLog.size() == changeLogCapacity) {
+			changeLog.removeFirst();
+		}
+		changeLog.addLast(new Change(++version, kind, serviceArtifact));
+	}
+
+	private static final class Change {
+		final long version;
+
+		final int kind;
+
+		final ServiceArtifact serviceArtifact;
+
+		Change(long version, int kind, ServiceArtifact serviceArtifact) {
+			this.version = version;
+			this.kind = kind;
+			this.serviceArtifact = serviceArtifact;
+		}
+	}
+}
@@ -15,31 +15,69 @@
  */
 package demo.org.powermock.examples.tutorial.partialmocking.domain;
 
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
+/**
+ * A service producer and the data producers it depends on. The data producers
+ * are kept in an array sorted by id and name, without duplicates, and are
+ * exposed as a read-only {@link Set} view that looks them up by binary
+ * search. The hash code is computed once, at construction.
+ */
 public class ServiceProducer extends ProviderArtifact {
-	private final Set<DataProducer> dataProducingArtifacts;
+
+	private static final DataProducer[] NO_DATA_PRODUCERS = new DataProducer[0];
+
+	/**
+	 * Orders by id and then by name, <code>null</code> first.
+	 */
+	private static final Comparator<DataProducer> ORDER = new Comparator<DataProducer>() {
+		@Override
+		public int compare(DataProducer first, DataProducer second) {
+			if (first == null || second == null) {
+				return first == second ? 0 : (first == null ? -1 : 1);
+			}
+			if (first.getId() != second.getId()) {
+				return first.getId() < second.getId() ? -1 : 1;
+			}
+			final String firstName = first.getName();
+			final String secondName = second.getName();
+			if (firstName == null || secondName == null) {
+				return firstName == secondName ? 0 : (firstName == null ? -1 : 1);
+			}
+			return firstName.compareTo(secondName);
+		}
+	};
+
+	private final DataProducer[] dataProducingArtifacts;
+
+	private final int hashCode;
+
+	private final Set<DataProducer> dataProducers;
 
 	public ServiceProducer(int id, String name, DataProducer... dataProducingArtifacts) {
 		super(id, name);
-		this.dataProducingArtifacts = new HashSet<DataProducer>();
-		for (DataProducer dataProducingArtifact : dataProducingArtifacts) {
-			this.dataProducingArtifacts.add(dataProducingArtifact);
+		this.dataProducingArtifacts = sortedWithoutDuplicates(dataProducingArtifacts);
+		int dataProducersHashCode = 0;
+		for (DataProducer dataProducingArtifact : this.dataProducingArtifacts) {
+			dataProducersHashCode += dataProducingArtifact == null ? 0 : dataProducingArtifact.hashCode();
 		}
+		final int prime = 31;
+		this.hashCode = prime * super.hashCode() + dataProducersHashCode;
+		this.dataProducers = new DataProducerSet();
 	}
 
 	public Set<DataProducer> getDataProducers() {
-		return Collections.unmodifiableSet(dataProducingArtifacts);
+		return dataProducers;
 	}
 
 	@Override
 	public int hashCode() {
-		final int prime = 31;
-		int result = super.hashCode();
-		result = prime * result + ((dataProducingArtifacts == null) ? 0 : dataProducingArtifacts.hashCode());
-		return result;
+		return hashCode;
 	}
 
 	@Override
@@ -51,12 +89,91 @@ public class ServiceProducer extends ProviderArtifact {
 		if (getClass() != obj.getClass())
 			return false;
 		final ServiceProducer other = (ServiceProducer) obj;
-		if (dataProducingArtifacts == null) {
-			if (other.dataProducingArtifacts != null)
-				return false;
-		} else if (!dataProducingArtifacts.equals(other.dataProducingArtifacts))
+		if (hashCode != other.hashCode)
 			return false;
-		return true;
+		return Arrays.equals(dataProducingArtifacts, other.dataProducingArtifacts) || dataProducers.equals(other.dataProducers);
+	}
+
+	private static DataProducer[] sortedWithoutDuplicates(DataProducer[] dataProducingArtifacts) {
+		if (dataProducingArtifacts == null || dataProducingArtifacts.length == 0) {
+			return NO_DATA_PRODUCERS;
+		}
+		final DataProducer[] sorted = dataProducingArtifacts.clone();
+		Arrays.sort(sorted, ORDER);
+		int length = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (indexOf(sorted, length, sorted[i]) < 0) {
+				sorted[length++] = sorted[i];
+			}
+		}
+		return length == sorted.length ? sorted : Arrays.copyOf(sorted, length);
+	}
+
+	/**
+	 * @return The index of a data producer equal to <code>dataProducer</code>
+	 *         in the first <code>length</code> elements of
+	 *         <code>sorted</code>, or a negative value if there is none.
+	 */
+	private static int indexOf(DataProducer[] sorted, int length, Object dataProducer) {
+		if (dataProducer != null && !(dataProducer instanceof DataProducer)) {
+			return -1;
+		}
+		int index = Arrays.binarySearch(sorted, 0, length, (DataProducer) dataProducer, ORDER);
+		if (index < 0) {
+			return index;
+		}
+		// Producers of different classes can share id and name, so check all
+		// of them
+		while (index > 0 && ORDER.compare(sorted[index - 1], (DataProducer) dataProducer) == 0) {
+			index--;
+		}
+		for (; index < length && ORDER.compare(sorted[index], (DataProducer) dataProducer) == 0; index++) {
+			if (dataProducer == null ? sorted[index] == null : dataProducer.equals(sorted[index])) {
+				return index;
+			}
+		}
+		return -1;
 	}
 
+	private final class DataProducerSet extends AbstractSet<DataProducer> {
+		@Override
+		public Iterator<DataProducer> iterator() {
+			return new Iterator<DataProducer>() {
+				private int index;
+
+				@Override
+				public boolean hasNext() {
+					return index < dataProducingArtifacts.length;
+				}
+
+				@Override
+				public DataProducer next() {
+					if (index == dataProducingArtifacts.length) {
+						throw new NoSuchElementException();
+					}
+					return dataProducingArtifacts[index++];
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return dataProducingArtifacts.length;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return indexOf(dataProducingArtifacts, dataProducingArtifacts.length, o) >= 0;
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode - 31 * ServiceProducer.super.hashCode();
+		}
+	}
 }
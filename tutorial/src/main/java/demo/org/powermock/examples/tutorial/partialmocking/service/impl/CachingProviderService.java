@@ -0,0 +1,355 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.partialmocking.service.impl;
+
+import demo.org.powermock.examples.tutorial.partialmocking.domain.ServiceProducer;
+import demo.org.powermock.examples.tutorial.partialmocking.service.ProviderService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link ProviderService} decorator that caches the results of another
+ * provider service.
+ * <p>
+ * A cached result is used for <code>ttlMillis</code> after it was loaded.
+ * The first read after <code>refreshAfterMillis</code> starts reloading it on
+ * the executor and keeps returning the cached result meanwhile, so readers
+ * only wait for the delegate when a result is missing or has expired.
+ * Concurrent loads of the same result are collapsed into a single call to the
+ * delegate.
+ * <p>
+ * At most <code>maximumSize</code> results are kept. When a load exceeds the
+ * limit, expired results and then the least recently read ones are dropped
+ * until a quarter of the space is free again.
+ */
+public class CachingProviderService implements ProviderService {
+
+	/**
+	 * The cache key of {@link #getAllServiceProviders()}, the results of
+	 * {@link #getServiceProvider(int)} are keyed by id.
+	 */
+	private static final Object ALL_SERVICE_PROVIDERS = new Object();
+
+	static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+	private final ProviderService delegate;
+
+	private final long ttlNanos;
+
+	private final long refreshAfterNanos;
+
+	private final Executor refreshExecutor;
+
+	private final int maximumSize;
+
+	/**
+	 * Incremented by {@link #invalidateAll()}, entries and loads of an older
+	 * generation are ignored.
+	 */
+	private final AtomicLong generation = new AtomicLong();
+
+	private final AtomicBoolean evicting = new AtomicBoolean();
+
+	private final ConcurrentHashMap<Object, Entry> entries = new ConcurrentHashMap<Object, Entry>();
+
+	private final ConcurrentHashMap<Object, FutureTask<Object>> loads = new ConcurrentHashMap<Object, FutureTask<Object>>();
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private final AtomicLong missCount = new AtomicLong();
+
+	private final AtomicLong loadCount = new AtomicLong();
+
+	private final AtomicLong totalLoadTimeNanos = new AtomicLong();
+
+	/**
+	 * Creates a cache of at most {@value #DEFAULT_MAXIMUM_SIZE} results.
+	 *
+	 * @see #CachingProviderService(ProviderService, long, long, Executor, int)
+	 */
+	public CachingProviderService(ProviderService delegate, long ttlMillis, long refreshAfterMillis, Executor refreshExecutor) {
+		this(delegate, ttlMillis, refreshAfterMillis, refreshExecutor, DEFAULT_MAXIMUM_SIZE);
+	}
+
+	/**
+	 * @param delegate
+	 *            The provider service whose results are cached.
+	 * @param ttlMillis
+	 *            How long a result is used after it was loaded.
+	 * @param refreshAfterMillis
+	 *            How long after it was loaded a result is reloaded in the
+	 *            background, at most <code>ttlMillis</code>.
+	 * @param refreshExecutor
+	 *            Runs the background reloads.
+	 * @param maximumSize
+	 *            The number of results that are kept at most.
+	 */
+	public CachingProviderService(ProviderService delegate, long ttlMillis, long refreshAfterMillis, Executor refreshExecutor, int maximumSize) {
+		if (ttlMillis <= 0) {
+			throw new IllegalArgumentException("ttlMillis must be positive but was " + ttlMillis);
+		}
+		if (refreshAfterMillis < 0 || refreshAfterMillis > ttlMillis) {
+			throw new IllegalArgumentException("refreshAfterMillis must be between 0 and " + ttlMillis + " but was " + refreshAfterMillis);
+		}
+		this.delegate = delegate;
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+		this.refreshAfterNanos = TimeUnit.MILLISECONDS.toNanos(refreshAfterMillis);
+		if (maximumSize <= 0) {
+			throw new IllegalArgumentException("maximumSize must be positive but was " + maximumSize);
+		}
+		this.refreshExecutor = refreshExecutor;
+		this.maximumSize = maximumSize;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The returned set is shared by all callers until it's reloaded and
+	 * can't be modified.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public Set<ServiceProducer> getAllServiceProviders() {
+		return (Set<ServiceProducer>) get(ALL_SERVICE_PROVIDERS, new Callable<Object>() {
+			@Override
+			public Object call() {
+				final Set<ServiceProducer> serviceProducers = delegate.getAllServiceProviders();
+				if (serviceProducers == null || serviceProducers.isEmpty()) {
+					return Collections.emptySet();
+				}
+				return Collections.unmodifiableSet(serviceProducers);
+			}
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ServiceProducer getServiceProvider(final int id) {
+		return (ServiceProducer) get(id, new Callable<Object>() {
+			@Override
+			public Object call() {
+				return delegate.getServiceProvider(id);
+			}
+		});
+	}
+
+	/**
+	 * Drop all cached results, the next reads load them again. Loads that
+	 * are still running don't put their results into the cache.
+	 */
+	public void invalidateAll() {
+		generation.incrementAndGet();
+		loads.clear();
+		entries.clear();
+	}
+
+	/**
+	 * @return The number of cached results.
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * @return The number of calls to the delegate, including background
+	 *         reloads and failed calls.
+	 */
+	public long getLoadCount() {
+		return loadCount.get();
+	}
+
+	/**
+	 * @return The time spent in calls to the delegate, in nanoseconds.
+	 */
+	public long getTotalLoadTimeNanos() {
+		return totalLoadTimeNanos.get();
+	}
+
+	private Object get(final Object key, final Callable<Object> loader) {
+		final Entry entry = entries.get(key);
+		if (entry != null && entry.generation == generation.get()) {
+			final long now = System.nanoTime();
+			final long age = now - entry.loadedAt;
+			if (age < ttlNanos) {
+				hitCount.incrementAndGet();
+				entry.lastReadAt = now;
+				if (age >= refreshAfterNanos && entry.refreshing.compareAndSet(false, true)) {
+					refresh(key, loader, entry);
+				}
+				return entry.value;
+			}
+		}
+		missCount.incrementAndGet();
+		return load(key, loader);
+	}
+
+	private void refresh(final Object key, final Callable<Object> loader, final Entry entry) {
+		try {
+			refreshExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						load(key, loader);
+					} catch (RuntimeException e) {
+						// Keep the cached result, the next read tries again
+						entry.refreshing.set(false);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			// Keep the cached result, the next read tries again
+			entry.refreshing.set(false);
+		}
+	}
+
+	/**
+	 * Loads a result unless it's already being loaded, in which case the
+	 * result of that load is returned.
+	 */
+	private Object load(final Object key, final Callable<Object> loader) {
+		final long loadGeneration = generation.get();
+		final FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				final long start = System.nanoTime();
+				try {
+					final Object value = loader.call();
+					final Entry entry = new Entry(value, System.nanoTime(), loadGeneration);
+					entries.put(key, entry);
+					if (generation.get() != loadGeneration) {
+						// Invalidated while loading, reads ignore the entry anyway
+						entries.remove(key, entry);
+					} else if (entries.size() > maximumSize) {
+						evict();
+					}
+					return value;
+				} finally {
+					loadCount.incrementAndGet();
+					totalLoadTimeNanos.addAndGet(System.nanoTime() - start);
+				}
+			}
+		});
+		FutureTask<Object> load = loads.putIfAbsent(key, task);
+		if (load == null) {
+			load = task;
+			try {
+				task.run();
+			} finally {
+				loads.remove(key, task);
+			}
+		}
+		try {
+			return load.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for " + key + " to be loaded", e);
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * Drops expired entries and then the least recently read ones until a
+	 * quarter of the maximum size is free. Only one thread evicts at a time,
+	 * the others carry on.
+	 */
+	private void evict() {
+		if (!evicting.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			final long now = System.nanoTime();
+			final List<Map.Entry<Object, Entry>> live = new ArrayList<Map.Entry<Object, Entry>>(entries.size());
+			for (Map.Entry<Object, Entry> cached : entries.entrySet()) {
+				if (now - cached.getValue().loadedAt >= ttlNanos) {
+					entries.remove(cached.getKey(), cached.getValue());
+				} else {
+					live.add(cached);
+				}
+			}
+			final int target = maximumSize - maximumSize / 4;
+			if (live.size() > target) {
+				// Entries that are read meanwhile may still be dropped, the order only needs to be roughly right
+				final long[] lastReads = new long[live.size()];
+				for (int i = 0; i < lastReads.length; i++) {
+					lastReads[i] = live.get(i).getValue().lastReadAt;
+				}
+				Arrays.sort(lastReads);
+				final long newestDropped = lastReads[live.size() - target - 1];
+				for (Map.Entry<Object, Entry> cached : live) {
+					if (cached.getValue().lastReadAt <= newestDropped) {
+						entries.remove(cached.getKey(), cached.getValue());
+					}
+				}
+			}
+		} finally {
+			evicting.set(false);
+		}
+	}
+
+	private static final class Entry {
+		/**
+		 * May be <code>null</code> when the delegate has no service provider
+		 * with the requested id.
+		 */
+		final Object value;
+
+		final long loadedAt;
+
+		final long generation;
+
+		volatile long lastReadAt;
+
+		final AtomicBoolean refreshing = new AtomicBoolean();
+
+		Entry(Object value, long loadedAt, long generation) {
+			this.value = value;
+			this.loadedAt = loadedAt;
+			this.generation = generation;
+			this.lastReadAt = loadedAt;
+		}
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.partialmocking.service.impl;
+
+import demo.org.powermock.examples.tutorial.common.annotation.Inject;
+import demo.org.powermock.examples.tutorial.partialmocking.dao.ProviderChanges;
+import demo.org.powermock.examples.tutorial.partialmocking.dao.ProviderDao;
+import demo.org.powermock.examples.tutorial.partialmocking.dao.domain.impl.ServiceArtifact;
+import demo.org.powermock.examples.tutorial.partialmocking.domain.ServiceProducer;
+import demo.org.powermock.examples.tutorial.partialmocking.service.ProviderService;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * An implementation of the providers service that loads all service producers
+ * from the {@link ProviderDao} once and keeps them in an index. Lookups by id
+ * are O(1) and {@link #getAllServiceProviders()} returns a live view instead
+ * of a copy. Changes to the artifacts are applied one at a time, either
+ * pulled from the change feed of the DAO by {@link #refresh()} or pushed
+ * through {@link #serviceArtifactChanged(ServiceArtifact)} and
+ * {@link #serviceArtifactRemoved(int)}.
+ */
+public class IndexedProviderServiceImpl implements ProviderService {
+
+	@Inject
+	private ProviderDao providerDao;
+
+	private final ProviderCatalog catalog = new ProviderCatalog();
+
+	private volatile boolean loaded;
+
+	/**
+	 * The DAO version the catalog is up to date with, guarded by
+	 * <code>this</code>.
+	 */
+	private long version;
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The returned set is read-only and reflects later changes.
+	 */
+	@Override
+	public Set<ServiceProducer> getAllServiceProviders() {
+		loadIfNeeded();
+		return catalog.getAll();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public ServiceProducer getServiceProvider(int id) {
+		loadIfNeeded();
+		return catalog.get(id);
+	}
+
+	/**
+	 * Add or replace the service producer of an artifact that was added or
+	 * modified. Waits for a running refresh or reload, so the change isn't
+	 * overwritten by the older state it loaded.
+	 */
+	public synchronized void serviceArtifactChanged(ServiceArtifact serviceArtifact) {
+		catalog.put(serviceArtifact);
+	}
+
+	/**
+	 * Remove the service producer of an artifact that was removed. Waits for a
+	 * running refresh or reload like
+	 * {@link #serviceArtifactChanged(ServiceArtifact)}.
+	 */
+	public synchronized void serviceArtifactRemoved(int id) {
+		catalog.remove(id);
+	}
+
+	/**
+	 * Apply the changes the {@link ProviderDao} reports since the last refresh
+	 * or reload, in time proportional to the number of changes.
+	 */
+	public synchronized void refresh() {
+		if (!loaded) {
+			reload();
+			return;
+		}
+		final ProviderChanges changes = providerDao.getChangesSince(version);
+		if (changes.isFullReloadRequired()) {
+			reload();
+			return;
+		}
+		for (ServiceArtifact serviceArtifact : changes.getAdded()) {
+			catalog.put(serviceArtifact);
+		}
+		for (ServiceArtifact serviceArtifact : changes.getModified()) {
+			catalog.put(serviceArtifact);
+		}
+		for (ServiceArtifact serviceArtifact : changes.getRemoved()) {
+			catalog.remove(serviceArtifact.getId());
+		}
+		version = changes.getVersion();
+	}
+
+	/**
+	 * Reload all service producers from the {@link ProviderDao}.
+	 */
+	public synchronized void reload() {
+		// Changes made while loading are applied again by the next refresh
+		version = providerDao.getVersion();
+		Set<ServiceArtifact> serviceArtifacts = providerDao.getAllServiceProducers();
+		if (serviceArtifacts == null) {
+			serviceArtifacts = Collections.emptySet();
+		}
+		catalog.replaceAll(serviceArtifacts);
+		loaded = true;
+	}
+
+	private void loadIfNeeded() {
+		if (!loaded) {
+			synchronized (this) {
+				if (!loaded) {
+					reload();
+				}
+			}
+		}
+	}
+}
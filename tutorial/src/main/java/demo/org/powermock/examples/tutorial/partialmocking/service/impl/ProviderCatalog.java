@@ -0,0 +1,103 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.partialmocking.service.impl;
+
+import demo.org.powermock.examples.tutorial.common.collections.ConcurrentLongHashMap;
+import demo.org.powermock.examples.tutorial.partialmocking.dao.domain.impl.ServiceArtifact;
+import demo.org.powermock.examples.tutorial.partialmocking.domain.ServiceProducer;
+
+import java.util.AbstractSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * The service producers known to a provider service, indexed by id. The
+ * catalog is updated one artifact at a time so a change costs O(1) no matter
+ * how many producers there are. Ids are expected to be unique, an artifact
+ * replaces the producer with the same id.
+ */
+class ProviderCatalog {
+
+	private final ConcurrentLongHashMap<ServiceProducer> producers = new ConcurrentLongHashMap<ServiceProducer>();
+
+	private final Set<ServiceProducer> allProducers = new ProducerSet();
+
+	ServiceProducer get(int id) {
+		return producers.get(id);
+	}
+
+	/**
+	 * @return A read-only, live view of all producers in the catalog.
+	 */
+	Set<ServiceProducer> getAll() {
+		return allProducers;
+	}
+
+	/**
+	 * Adds the producer for a new artifact or replaces the producer of a
+	 * modified one.
+	 */
+	void put(ServiceArtifact serviceArtifact) {
+		producers.put(serviceArtifact.getId(), toServiceProducer(serviceArtifact));
+	}
+
+	void remove(int id) {
+		producers.remove(id);
+	}
+
+	/**
+	 * Replaces the content of the catalog with <code>serviceArtifacts</code>.
+	 * Producers that are in both the old and the new content stay visible to
+	 * concurrent readers throughout.
+	 */
+	void replaceAll(Set<ServiceArtifact> serviceArtifacts) {
+		final Set<Integer> ids = new HashSet<Integer>();
+		for (ServiceArtifact serviceArtifact : serviceArtifacts) {
+			put(serviceArtifact);
+			ids.add(serviceArtifact.getId());
+		}
+		for (ServiceProducer serviceProducer : producers.values()) {
+			if (!ids.contains(serviceProducer.getId())) {
+				producers.remove(serviceProducer.getId());
+			}
+		}
+	}
+
+	private static ServiceProducer toServiceProducer(ServiceArtifact serviceArtifact) {
+		return new ServiceProducer(serviceArtifact.getId(), serviceArtifact.getName(), serviceArtifact.getDataProducers());
+	}
+
+	private final class ProducerSet extends AbstractSet<ServiceProducer> {
+		@Override
+		public Iterator<ServiceProducer> iterator() {
+			return producers.values().iterator();
+		}
+
+		@Override
+		public int size() {
+			return producers.size();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			if (!(o instanceof ServiceProducer)) {
+				return false;
+			}
+			return o.equals(producers.get(((ServiceProducer) o).getId()));
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.staticmocking;
+
+import java.util.Arrays;
+
+/**
+ * The outcome of a batch operation on an {@link IServiceRegistrator}. Entries
+ * are identified by their index in the batch; failed entries are listed
+ * together with the exception that made them fail.
+ */
+public class BatchResult {
+
+	private final long[] ids;
+
+	private final int[] failedIndices;
+
+	private final RuntimeException[] failures;
+
+	private BatchResult(long[] ids, int[] failedIndices, RuntimeException[] failures) {
+		this.ids = ids;
+		this.failedIndices = failedIndices;
+		this.failures = failures;
+	}
+
+	/**
+	 * @return The service id of each entry in the batch, in batch order. Ids
+	 *         of failed entries are not registered.
+	 */
+	public long[] getIds() {
+		return ids;
+	}
+
+	/**
+	 * @return <code>true</code> if no entry failed.
+	 */
+	public boolean isSuccessful() {
+		return failedIndices.length == 0;
+	}
+
+	/**
+	 * @return The batch indices of the failed entries, in ascending order.
+	 */
+	public int[] getFailedIndices() {
+		return failedIndices;
+	}
+
+	/**
+	 * @param index
+	 *            The batch index of an entry.
+	 * @return The exception that made the entry fail or <code>null</code> if
+	 *         it succeeded.
+	 */
+	public RuntimeException getFailure(int index) {
+		final int position = Arrays.binarySearch(failedIndices, index);
+		return position < 0 ? null : failures[position];
+	}
+
+	/**
+	 * @return The ids of the entries that succeeded, for example to roll back
+	 *         a partially registered batch.
+	 */
+	public long[] getSucceededIds() {
+		final long[] succeeded = new long[ids.length - failedIndices.length];
+		int next = 0;
+		int failed = 0;
+		for (int i = 0; i < ids.length; i++) {
+			if (failed < failedIndices.length && failedIndices[failed] == i) {
+				failed++;
+			} else {
+				succeeded[next++] = ids[i];
+			}
+		}
+		return succeeded;
+	}
+
+	/**
+	 * Collects the failures of a batch while it's processed. Failures must be
+	 * added in ascending index order.
+	 */
+	public static class Builder {
+
+		private final long[] ids;
+
+		private int[] failedIndices = new int[0];
+
+		private RuntimeException[] failures = new RuntimeException[0];
+
+		private int failed;
+
+		public Builder(long[] ids) {
+			this.ids = ids;
+		}
+
+		public Builder fail(int index, RuntimeException failure) {
+			if (failed == failedIndices.length) {
+				final int capacity = Math.max(4, failed * 2);
+				failedIndices = Arrays.copyOf(failedIndices, capacity);
+				failures = Arrays.copyOf(failures, capacity);
+			}
+			failedIndices[failed] = index;
+			failures[failed] = failure;
+			failed++;
+			return this;
+		}
+
+		public BatchResult build() {
+			return new BatchResult(ids, Arrays.copyOf(failedIndices, failed), Arrays.copyOf(failures, failed));
+		}
+	}
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.staticmocking;
+
+import java.util.List;
+
+/**
+ * An interface to be implemented by services that can look up registered
+ * services by name.
+ */
+public interface IServiceLookup {
+
+	/**
+	 * Get a service by name.
+	 *
+	 * @param name
+	 *            The name the service was registered with.
+	 * @return The first registered service with that name or
+	 *         <code>null</code> if there is none.
+	 */
+	Object getService(String name);
+
+	/**
+	 * Find services whose names start with a prefix.
+	 *
+	 * @param namePrefix
+	 *            The prefix of the service names.
+	 * @return The matching services ordered by name, or an empty list if no
+	 *         service matches.
+	 */
+	List<Object> findServicesByPrefix(String namePrefix);
+
+	/**
+	 * Find services matching an LDAP-style filter, for example
+	 * <code>(&amp;(name=com.acme.*)(objectClass=java.lang.Runnable))</code>.
+	 * The attributes that can be matched are <code>name</code>,
+	 * <code>objectClass</code> (the classes and interfaces of the service
+	 * implementation) and <code>service.id</code>.
+	 *
+	 * @param filter
+	 *            The filter to match.
+	 * @return The matching services ordered by name, or an empty list if no
+	 *         service matches.
+	 * @throws IllegalArgumentException
+	 *             If the filter can't be parsed.
+	 */
+	List<Object> findServices(String filter);
+}
@@ -15,6 +15,8 @@
  */
 package demo.org.powermock.examples.tutorial.staticmocking;
 
+import java.util.List;
+
 /**
  * An interface to be implemented by services that performs service
  * registrations.
@@ -44,4 +46,35 @@ public interface IServiceRegistrator {
 	 *             been unregistered.
 	 */
 	void unregisterService(long id);
+
+	/**
+	 * Registers several services to the service framework. The ids for the
+	 * whole batch are allocated at once. A service that fails to register
+	 * doesn't stop the rest of the batch, it's reported in the result instead.
+	 * 
+	 * @param names
+	 *            The names of the services to register.
+	 * @param serviceImplementations
+	 *            The implementations of the services, in the same order as
+	 *            <code>names</code>.
+	 * @return The ids of the services, in batch order, and the entries that
+	 *         failed.
+	 * @throws IllegalArgumentException
+	 *             If <code>names</code> and
+	 *             <code>serviceImplementations</code> differ in size.
+	 */
+	BatchResult registerServices(List<String> names, List<?> serviceImplementations);
+
+	/**
+	 * Unregisters several services from the service framework. An id that
+	 * can't be unregistered doesn't stop the rest of the batch, it's reported
+	 * in the result instead.
+	 * 
+	 * @param ids
+	 *            The ids of the services that should be removed.
+	 * @return The result of the batch, failed entries hold the
+	 *         {@link IllegalStateException} that
+	 *         {@link #unregisterService(long)} would have thrown.
+	 */
+	BatchResult unregisterServices(long[] ids);
 }
@@ -0,0 +1,352 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.staticmocking.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A parsed LDAP-style filter (RFC 1960) as used by OSGi service lookups. The
+ * operators <code>&amp;</code>, <code>|</code>, <code>!</code>,
+ * <code>=</code> (with <code>*</code> wildcards and presence),
+ * <code>~=</code>, <code>&gt;=</code> and <code>&lt;=</code> are supported.
+ * Attribute names are case-insensitive.
+ */
+abstract class LdapFilter {
+
+	/**
+	 * Gives a filter access to the attributes of the object it's matched
+	 * against.
+	 */
+	interface Attributes {
+		/**
+		 * @return The value of the attribute, an array of values or
+		 *         <code>null</code> if the attribute is missing.
+		 */
+		Object get(String lowerCaseName);
+	}
+
+	abstract boolean matches(Attributes attributes);
+
+	/**
+	 * @return A string every value of the <code>attribute</code> matched by
+	 *         this filter starts with, or <code>null</code> if there's no
+	 *         such string.
+	 */
+	String requiredPrefix(String attribute) {
+		return null;
+	}
+
+	static LdapFilter parse(String filter) {
+		final Parser parser = new Parser(filter);
+		final LdapFilter parsed = parser.parseFilter();
+		if (parser.position != filter.length()) {
+			throw parser.error("Unexpected trailing characters");
+		}
+		return parsed;
+	}
+
+	private static final class And extends LdapFilter {
+		private final LdapFilter[] operands;
+
+		And(LdapFilter[] operands) {
+			this.operands = operands;
+		}
+
+		@Override
+		boolean matches(Attributes attributes) {
+			for (LdapFilter operand : operands) {
+				if (!operand.matches(attributes)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		String requiredPrefix(String attribute) {
+			String longest = null;
+			for (LdapFilter operand : operands) {
+				final String prefix = operand.requiredPrefix(attribute);
+				if (prefix != null && (longest == null || prefix.length() > longest.length())) {
+					longest = prefix;
+				}
+			}
+			return longest;
+		}
+	}
+
+	private static final class Or extends LdapFilter {
+		private final LdapFilter[] operands;
+
+		Or(LdapFilter[] operands) {
+			this.operands = operands;
+		}
+
+		@Override
+		boolean matches(Attributes attributes) {
+			for (LdapFilter operand : operands) {
+				if (operand.matches(attributes)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	private static final class Not extends LdapFilter {
+		private final LdapFilter operand;
+
+		Not(LdapFilter operand) {
+			this.operand = operand;
+		}
+
+		@Override
+		boolean matches(Attributes attributes) {
+			return !operand.matches(attributes);
+		}
+	}
+
+	/**
+	 * A comparison of one attribute against a value.
+	 */
+	private static final class Comparison extends LdapFilter {
+		static final int EQUAL = 0;
+		static final int APPROX = 1;
+		static final int GREATER_OR_EQUAL = 2;
+		static final int LESS_OR_EQUAL = 3;
+		static final int PRESENT = 4;
+
+		private final String attribute;
+
+		private final int operator;
+
+		/**
+		 * The value split at its unescaped wildcards. A value without
+		 * wildcards has a single part.
+		 */
+		private final String[] parts;
+
+		Comparison(String attribute, int operator, String[] parts) {
+			this.attribute = attribute;
+			this.operator = operator;
+			this.parts = parts;
+		}
+
+		@Override
+		boolean matches(Attributes attributes) {
+			final Object value = attributes.get(attribute);
+			if (value == null) {
+				return false;
+			}
+			if (operator == PRESENT) {
+				return true;
+			}
+			if (value instanceof Object[]) {
+				for (Object element : (Object[]) value) {
+					if (element != null && matchesValue(element)) {
+						return true;
+					}
+				}
+				return false;
+			}
+			return matchesValue(value);
+		}
+
+		@Override
+		String requiredPrefix(String attribute) {
+			return operator == EQUAL && this.attribute.equals(attribute) ? parts[0] : null;
+		}
+
+		private boolean matchesValue(Object value) {
+			final String string = value.toString();
+			switch (operator) {
+			case APPROX:
+				return normalize(string).equalsIgnoreCase(normalize(parts[0]));
+			case GREATER_OR_EQUAL:
+				return compare(value, parts[0]) >= 0;
+			case LESS_OR_EQUAL:
+				return compare(value, parts[0]) <= 0;
+			default:
+				return matchesWildcards(string);
+			}
+		}
+
+		private boolean matchesWildcards(String value) {
+			if (parts.length == 1) {
+				return value.equals(parts[0]);
+			}
+			if (!value.startsWith(parts[0])) {
+				return false;
+			}
+			int position = parts[0].length();
+			for (int i = 1; i < parts.length - 1; i++) {
+				final int found = value.indexOf(parts[i], position);
+				if (found < 0) {
+					return false;
+				}
+				position = found + parts[i].length();
+			}
+			final String last = parts[parts.length - 1];
+			return value.length() - position >= last.length() && value.endsWith(last);
+		}
+
+		private static int compare(Object value, String other) {
+			if (value instanceof Number) {
+				try {
+					final long number = ((Number) value).longValue();
+					final long otherNumber = Long.parseLong(other.trim());
+					return number < otherNumber ? -1 : (number == otherNumber ? 0 : 1);
+				} catch (NumberFormatException e) {
+					// Fall back to comparing strings
+				}
+			}
+			return value.toString().compareTo(other);
+		}
+
+		private static String normalize(String value) {
+			final StringBuilder normalized = new StringBuilder(value.length());
+			for (int i = 0; i < value.length(); i++) {
+				final char c = value.charAt(i);
+				if (!Character.isWhitespace(c)) {
+					normalized.append(c);
+				}
+			}
+			return normalized.toString();
+		}
+	}
+
+	private static final class Parser {
+		private final String filter;
+
+		private int position;
+
+		Parser(String filter) {
+			this.filter = filter;
+		}
+
+		LdapFilter parseFilter() {
+			expect('(');
+			final LdapFilter parsed;
+			switch (peek()) {
+			case '&':
+				position++;
+				parsed = new And(parseOperands());
+				break;
+			case '|':
+				position++;
+				parsed = new Or(parseOperands());
+				break;
+			case '!':
+				position++;
+				parsed = new Not(parseFilter());
+				break;
+			default:
+				parsed = parseComparison();
+			}
+			expect(')');
+			return parsed;
+		}
+
+		private LdapFilter[] parseOperands() {
+			final List<LdapFilter> operands = new ArrayList<LdapFilter>();
+			while (peek() == '(') {
+				operands.add(parseFilter());
+			}
+			if (operands.isEmpty()) {
+				throw error("Expected at least one operand");
+			}
+			return operands.toArray(new LdapFilter[operands.size()]);
+		}
+
+		private LdapFilter parseComparison() {
+			final int start = position;
+			while (position < filter.length() && "=~<>()".indexOf(filter.charAt(position)) < 0) {
+				position++;
+			}
+			final String attribute = filter.substring(start, position).trim().toLowerCase(Locale.ENGLISH);
+			if (attribute.length() == 0) {
+				throw error("Expected an attribute name");
+			}
+			final int operator;
+			switch (peek()) {
+			case '=':
+				operator = Comparison.EQUAL;
+				position++;
+				break;
+			case '~':
+				operator = Comparison.APPROX;
+				position++;
+				expect('=');
+				break;
+			case '>':
+				operator = Comparison.GREATER_OR_EQUAL;
+				position++;
+				expect('=');
+				break;
+			case '<':
+				operator = Comparison.LESS_OR_EQUAL;
+				position++;
+				expect('=');
+				break;
+			default:
+				throw error("Expected an operator");
+			}
+			final List<String> parts = new ArrayList<String>();
+			final StringBuilder part = new StringBuilder();
+			while (peek() != ')') {
+				final char c = filter.charAt(position++);
+				if (c == '\\') {
+					if (position == filter.length()) {
+						throw error("Unterminated escape");
+					}
+					part.append(filter.charAt(position++));
+				} else if (c == '*' && operator == Comparison.EQUAL) {
+					parts.add(part.toString());
+					part.setLength(0);
+				} else if (c == '(') {
+					throw error("Unescaped '('");
+				} else {
+					part.append(c);
+				}
+			}
+			parts.add(part.toString());
+			if (operator == Comparison.EQUAL && parts.size() == 2 && parts.get(0).length() == 0 && parts.get(1).length() == 0) {
+				return new Comparison(attribute, Comparison.PRESENT, null);
+			}
+			return new Comparison(attribute, operator, parts.toArray(new String[parts.size()]));
+		}
+
+		private char peek() {
+			if (position == filter.length()) {
+				throw error("Unexpected end of filter");
+			}
+			return filter.charAt(position);
+		}
+
+		private void expect(char expected) {
+			if (peek() != expected) {
+				throw error("Expected '" + expected + "'");
+			}
+			position++;
+		}
+
+		IllegalArgumentException error(String message) {
+			return new IllegalArgumentException(message + " at position " + position + " in filter " + filter);
+		}
+	}
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.staticmocking.impl;
+
+import demo.org.powermock.examples.tutorial.common.collections.ConcurrentLongHashMap;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of leases for ids and reports the ids whose lease has run out.
+ * Deadlines are kept in a {@link TimingWheel} that is advanced once per tick;
+ * all ids that expired during a tick are reported to the
+ * {@link ExpiryListener} in one batch. All lease managers share one daemon
+ * thread, and a manager only ticks while it has leases, so managers that
+ * are dropped without {@link #shutdown()} don't keep anything running.
+ */
+class LeaseManager {
+
+	static final long DEFAULT_TICK_MILLIS = 100;
+
+	/**
+	 * Gets notified about expired leases.
+	 */
+	interface ExpiryListener {
+		/**
+		 * Called on the lease manager thread with the ids whose lease has
+		 * expired since the previous call.
+		 */
+		void expired(long[] ids);
+	}
+
+	private final long tickMillis;
+
+	private final ExpiryListener listener;
+
+	/**
+	 * Guarded by <code>this</code>, as is {@link #leases}.
+	 */
+	private final TimingWheel wheel;
+
+	private final ConcurrentLongHashMap<TimingWheel.Timeout> leases = new ConcurrentLongHashMap<TimingWheel.Timeout>();
+
+	/**
+	 * The periodic tick, <code>null</code> while there are no leases.
+	 */
+	private ScheduledFuture<?> ticking;
+
+	private boolean shutdown;
+
+	LeaseManager(long tickMillis, ExpiryListener listener) {
+		this.tickMillis = tickMillis;
+		this.listener = listener;
+		this.wheel = new TimingWheel(tickMillis, System.currentTimeMillis());
+	}
+
+	/**
+	 * Grants <code>id</code> a lease of <code>durationMillis</code>,
+	 * replacing any lease it already has.
+	 */
+	synchronized void grant(long id, long durationMillis) {
+		if (durationMillis <= 0) {
+			throw new IllegalArgumentException("Lease duration must be positive but was " + durationMillis);
+		}
+		if (shutdown) {
+			throw new IllegalStateException("Leases can't be granted after shutdown");
+		}
+		final TimingWheel.Timeout previous = leases.put(id, wheel.schedule(id, System.currentTimeMillis() + durationMillis));
+		if (previous != null) {
+			wheel.cancel(previous);
+		}
+		if (ticking == null) {
+			startTicking();
+		}
+	}
+
+	/**
+	 * Extends the lease of <code>id</code> to <code>durationMillis</code>
+	 * from now.
+	 *
+	 * @return <code>false</code> if <code>id</code> has no lease, for
+	 *         example because it has already expired.
+	 */
+	synchronized boolean renew(long id, long durationMillis) {
+		if (!leases.containsKey(id)) {
+			return false;
+		}
+		grant(id, durationMillis);
+		return true;
+	}
+
+	/**
+	 * Removes the lease of <code>id</code>, if any.
+	 */
+	synchronized void cancel(long id) {
+		final TimingWheel.Timeout timeout = leases.remove(id);
+		if (timeout != null) {
+			wheel.cancel(timeout);
+			if (leases.isEmpty()) {
+				stopTicking();
+			}
+		}
+	}
+
+	/**
+	 * Stops expiring leases. Leases that haven't expired yet never will.
+	 */
+	synchronized void shutdown() {
+		shutdown = true;
+		stopTicking();
+	}
+
+	/**
+	 * @return <code>true</code> if the manager is scheduled to expire leases.
+	 */
+	synchronized boolean isTicking() {
+		return ticking != null;
+	}
+
+	/**
+	 * Advances the wheel to <code>nowMillis</code> and reports the expired
+	 * ids to the listener.
+	 */
+	void expireDue(long nowMillis) {
+		final long[] expired;
+		synchronized (this) {
+			expired = wheel.advance(nowMillis);
+			for (long id : expired) {
+				leases.remove(id);
+			}
+			if (leases.isEmpty()) {
+				stopTicking();
+			}
+		}
+		if (expired.length > 0) {
+			listener.expired(expired);
+		}
+	}
+
+	private void startTicking() {
+		ticking = Scheduler.INSTANCE.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					expireDue(System.currentTimeMillis());
+				} catch (RuntimeException e) {
+					// Keep expiring leases on the next tick
+				}
+			}
+		}, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private void stopTicking() {
+		if (ticking != null) {
+			ticking.cancel(false);
+			ticking = null;
+		}
+	}
+
+	/**
+	 * Holds the thread shared by all lease managers, created on first use.
+	 */
+	private static final class Scheduler {
+		static final ScheduledThreadPoolExecutor INSTANCE = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				final Thread thread = new Thread(runnable, "service-lease-expiry");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		static {
+			// Don't keep the ticks of idle managers queued
+			INSTANCE.setRemoveOnCancelPolicy(true);
+		}
+	}
+}
@@ -0,0 +1,507 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.staticmocking.impl;
+
+import demo.org.powermock.examples.tutorial.common.collections.ConcurrentLongHashMap;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An index of registered services ordered by name. The index is an immutable
+ * snapshot that is replaced whenever services are added or removed, so
+ * lookups never lock and always see a complete snapshot. Writers are
+ * serialized instead of racing to copy the snapshot; a batch of additions or
+ * removals is merged into one new snapshot, and entries are found by id
+ * without scanning the snapshot. Services registered without a name are not
+ * indexed.
+ * <p>
+ * A snapshot is a sorted list of chunks of at most {@value #CHUNK_SIZE}
+ * entries. A write only copies the chunks it changes and the list of chunks,
+ * the other chunks are shared with the previous snapshot.
+ */
+class ServiceIndex {
+
+	static final int CHUNK_SIZE = 256;
+
+	private static final Comparator<Entry> BY_NAME = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry first, Entry second) {
+			return first.name.compareTo(second.name);
+		}
+	};
+
+	private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+	/**
+	 * The indexed entries by id, only changed while holding the lock of the
+	 * index.
+	 */
+	private final ConcurrentLongHashMap<Entry> entries = new ConcurrentLongHashMap<Entry>();
+
+	void add(long id, String name, Object service) {
+		addAll(Collections.singletonList(new Entry(id, name, service)));
+	}
+
+	/**
+	 * Adds the entries with one new snapshot. Entries with equal names keep
+	 * the order of the list after the entries that were indexed already.
+	 */
+	synchronized void addAll(List<Entry> added) {
+		final List<Entry> named = new ArrayList<Entry>(added.size());
+		for (Entry entry : added) {
+			if (entry.name != null) {
+				if (entries.containsKey(entry.id)) {
+					throw new IllegalStateException("A service with id " + entry.id + " is indexed already");
+				}
+				named.add(entry);
+			}
+		}
+		if (named.isEmpty()) {
+			return;
+		}
+		// The sort is stable, so equal names keep their order
+		Collections.sort(named, BY_NAME);
+		final Entry[][] chunks = snapshot.chunks;
+		final SnapshotBuilder updated = new SnapshotBuilder(chunks.length + 1);
+		if (chunks.length == 0) {
+			updated.add(named.toArray(new Entry[named.size()]));
+		}
+		int from = 0;
+		for (int chunk = 0; chunk < chunks.length; chunk++) {
+			// An entry goes to the first chunk whose last name is greater, or
+			// to the last chunk
+			int to = named.size();
+			if (chunk < chunks.length - 1) {
+				final String lastName = lastName(chunks[chunk]);
+				to = from;
+				while (to < named.size() && named.get(to).name.compareTo(lastName) < 0) {
+					to++;
+				}
+			}
+			if (to == from) {
+				updated.share(chunks[chunk]);
+			} else {
+				updated.add(merge(chunks[chunk], named.subList(from, to)));
+				from = to;
+			}
+		}
+		for (Entry entry : named) {
+			entries.put(entry.id, entry);
+		}
+		snapshot = updated.build();
+	}
+
+	synchronized void remove(long id) {
+		removeAll(new long[] { id });
+	}
+
+	/**
+	 * Removes the entries of <code>ids</code> with one new snapshot, ids
+	 * that aren't indexed are ignored.
+	 */
+	synchronized void removeAll(long[] ids) {
+		final Set<Entry> removed = new HashSet<Entry>();
+		for (long id : ids) {
+			final Entry entry = entries.remove(id);
+			if (entry != null) {
+				removed.add(entry);
+			}
+		}
+		if (removed.isEmpty()) {
+			return;
+		}
+		final Snapshot current = snapshot;
+		final boolean[] changed = new boolean[current.chunks.length];
+		for (Entry entry : removed) {
+			// Equal names may continue in the following chunks
+			int chunk = current.firstChunkNotBefore(entry.name);
+			while (!contains(current.chunks[chunk], entry)) {
+				chunk++;
+			}
+			changed[chunk] = true;
+		}
+		final SnapshotBuilder updated = new SnapshotBuilder(current.chunks.length);
+		for (int chunk = 0; chunk < current.chunks.length; chunk++) {
+			if (!changed[chunk]) {
+				updated.share(current.chunks[chunk]);
+				continue;
+			}
+			final List<Entry> kept = new ArrayList<Entry>(current.chunks[chunk].length);
+			for (Entry entry : current.chunks[chunk]) {
+				if (!removed.contains(entry)) {
+					kept.add(entry);
+				}
+			}
+			updated.add(kept.toArray(new Entry[kept.size()]));
+		}
+		snapshot = updated.build();
+	}
+
+	Object get(String name) {
+		final Snapshot current = snapshot;
+		final int index = current.lowerBound(name);
+		if (index == current.size()) {
+			return null;
+		}
+		final Entry entry = current.entry(index);
+		return entry.name.equals(name) ? entry.service : null;
+	}
+
+	List<Object> findByPrefix(String prefix) {
+		final Snapshot current = snapshot;
+		final int from = current.lowerBound(prefix);
+		return new ServiceList(current, from, current.prefixEnd(from, prefix));
+	}
+
+	List<Object> find(String filter) {
+		final Snapshot current = snapshot;
+		if (filter == null) {
+			return new ServiceList(current, 0, current.size());
+		}
+		final LdapFilter parsed = LdapFilter.parse(filter);
+		// Only scan the names that can match if the filter requires a prefix
+		final String prefix = parsed.requiredPrefix(Entry.NAME);
+		int from = 0;
+		int to = current.size();
+		if (prefix != null) {
+			from = current.lowerBound(prefix);
+			to = current.prefixEnd(from, prefix);
+		}
+		final List<Object> services = new ArrayList<Object>();
+		while (from < to) {
+			final int chunk = current.chunkOf(from);
+			final Entry[] chunkEntries = current.chunks[chunk];
+			final int offset = current.offsets[chunk];
+			final int end = Math.min(chunkEntries.length, to - offset);
+			for (int i = from - offset; i < end; i++) {
+				if (parsed.matches(chunkEntries[i])) {
+					services.add(chunkEntries[i].service);
+				}
+			}
+			from = offset + end;
+		}
+		return services.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(services);
+	}
+
+	/**
+	 * @return The entries of <code>chunk</code> and <code>added</code> in name
+	 *         order, entries of the chunk first if names are equal.
+	 */
+	private static Entry[] merge(Entry[] chunk, List<Entry> added) {
+		final Entry[] merged = new Entry[chunk.length + added.size()];
+		int from = 0;
+		int index = 0;
+		for (Entry entry : added) {
+			final int to = upperBound(chunk, from, entry.name);
+			System.arraycopy(chunk, from, merged, index, to - from);
+			index += to - from;
+			from = to;
+			merged[index++] = entry;
+		}
+		System.arraycopy(chunk, from, merged, index, chunk.length - from);
+		return merged;
+	}
+
+	private static boolean contains(Entry[] chunk, Entry entry) {
+		for (int i = lowerBound(chunk, entry.name); i < chunk.length && chunk[i].name.equals(entry.name); i++) {
+			if (chunk[i] == entry) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String lastName(Entry[] chunk) {
+		return chunk[chunk.length - 1].name;
+	}
+
+	/**
+	 * @return The index of the first entry whose name is not less than
+	 *         <code>name</code>.
+	 */
+	private static int lowerBound(Entry[] entries, String name) {
+		int low = 0;
+		int high = entries.length;
+		while (low < high) {
+			final int middle = (low + high) >>> 1;
+			if (entries[middle].name.compareTo(name) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return The index of the first entry from <code>from</code> on whose
+	 *         name is greater than <code>name</code>, so services with equal
+	 *         names keep their registration order.
+	 */
+	private static int upperBound(Entry[] entries, int from, String name) {
+		int low = from;
+		int high = entries.length;
+		while (low < high) {
+			final int middle = (low + high) >>> 1;
+			if (entries[middle].name.compareTo(name) <= 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * The entries of the index in name order, split into non-empty chunks.
+	 */
+	private static final class Snapshot {
+		static final Snapshot EMPTY = new Snapshot(new Entry[0][], new int[1]);
+
+		final Entry[][] chunks;
+
+		/**
+		 * The number of entries before each chunk, followed by the size of the
+		 * snapshot.
+		 */
+		final int[] offsets;
+
+		Snapshot(Entry[][] chunks, int[] offsets) {
+			this.chunks = chunks;
+			this.offsets = offsets;
+		}
+
+		int size() {
+			return offsets[chunks.length];
+		}
+
+		Entry entry(int index) {
+			final int chunk = chunkOf(index);
+			return chunks[chunk][index - offsets[chunk]];
+		}
+
+		/**
+		 * @return The chunk that holds the entry at <code>index</code>.
+		 */
+		int chunkOf(int index) {
+			int low = 0;
+			int high = chunks.length - 1;
+			while (low < high) {
+				final int middle = (low + high + 1) >>> 1;
+				if (offsets[middle] <= index) {
+					low = middle;
+				} else {
+					high = middle - 1;
+				}
+			}
+			return low;
+		}
+
+		/**
+		 * @return The first chunk whose last name is not less than
+		 *         <code>name</code>.
+		 */
+		int firstChunkNotBefore(String name) {
+			int low = 0;
+			int high = chunks.length;
+			while (low < high) {
+				final int middle = (low + high) >>> 1;
+				if (lastName(chunks[middle]).compareTo(name) < 0) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+
+		/**
+		 * @return The index of the first entry whose name is not less than
+		 *         <code>name</code>.
+		 */
+		int lowerBound(String name) {
+			final int chunk = firstChunkNotBefore(name);
+			return chunk == chunks.length ? size() : offsets[chunk] + ServiceIndex.lowerBound(chunks[chunk], name);
+		}
+
+		/**
+		 * @return The index of the first entry from <code>from</code> on whose
+		 *         name doesn't start with <code>prefix</code>, the names from
+		 *         <code>from</code> on must not be less than the prefix.
+		 */
+		int prefixEnd(int from, String prefix) {
+			int low = from;
+			int high = size();
+			while (low < high) {
+				final int middle = (low + high) >>> 1;
+				if (entry(middle).name.startsWith(prefix)) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+	}
+
+	/**
+	 * Collects the chunks of a new snapshot. Changed chunks are split when
+	 * they grow too large and joined with the previous chunk when they shrink
+	 * too small, so the number of chunks stays proportional to the size.
+	 */
+	private static final class SnapshotBuilder {
+		private final List<Entry[]> chunks;
+
+		SnapshotBuilder(int expectedChunks) {
+			chunks = new ArrayList<Entry[]>(expectedChunks);
+		}
+
+		void share(Entry[] chunk) {
+			chunks.add(chunk);
+		}
+
+		void add(Entry[] chunk) {
+			if (chunk.length == 0) {
+				return;
+			}
+			if (chunk.length > CHUNK_SIZE) {
+				final int parts = (chunk.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+				for (int part = 0; part < parts; part++) {
+					chunks.add(Arrays.copyOfRange(chunk, chunk.length * part / parts, chunk.length * (part + 1) / parts));
+				}
+				return;
+			}
+			final int last = chunks.size() - 1;
+			if (chunk.length < CHUNK_SIZE / 4 && last >= 0 && chunks.get(last).length + chunk.length <= CHUNK_SIZE) {
+				final Entry[] previous = chunks.get(last);
+				final Entry[] joined = Arrays.copyOf(previous, previous.length + chunk.length);
+				System.arraycopy(chunk, 0, joined, previous.length, chunk.length);
+				chunks.set(last, joined);
+				return;
+			}
+			chunks.add(chunk);
+		}
+
+		Snapshot build() {
+			final Entry[][] built = chunks.toArray(new Entry[chunks.size()][]);
+			final int[] offsets = new int[built.length + 1];
+			for (int chunk = 0; chunk < built.length; chunk++) {
+				offsets[chunk + 1] = offsets[chunk] + built[chunk].length;
+			}
+			return new Snapshot(built, offsets);
+		}
+	}
+
+	/**
+	 * An indexed service. Entries are compared by identity.
+	 */
+	static final class Entry implements LdapFilter.Attributes {
+		static final String NAME = "name";
+
+		static final String OBJECT_CLASS = "objectclass";
+
+		static final String SERVICE_ID = "service.id";
+
+		final long id;
+
+		final String name;
+
+		final Object service;
+
+		/**
+		 * Computed on the first filter that asks for it.
+		 */
+		private volatile String[] objectClasses;
+
+		Entry(long id, String name, Object service) {
+			this.id = id;
+			this.name = name;
+			this.service = service;
+		}
+
+		@Override
+		public Object get(String lowerCaseName) {
+			if (NAME.equals(lowerCaseName)) {
+				return name;
+			} else if (SERVICE_ID.equals(lowerCaseName)) {
+				return id;
+			} else if (OBJECT_CLASS.equals(lowerCaseName)) {
+				return objectClasses();
+			}
+			return null;
+		}
+
+		private String[] objectClasses() {
+			String[] classes = objectClasses;
+			if (classes == null && service != null) {
+				final Set<String> names = new LinkedHashSet<String>();
+				for (Class<?> type = service.getClass(); type != null; type = type.getSuperclass()) {
+					names.add(type.getName());
+					addInterfaces(type, names);
+				}
+				classes = names.toArray(new String[names.size()]);
+				objectClasses = classes;
+			}
+			return classes;
+		}
+
+		private static void addInterfaces(Class<?> type, Set<String> names) {
+			for (Class<?> implemented : type.getInterfaces()) {
+				if (names.add(implemented.getName())) {
+					addInterfaces(implemented, names);
+				}
+			}
+		}
+	}
+
+	/**
+	 * A read-only view of the services in a range of a snapshot.
+	 */
+	private static final class ServiceList extends AbstractList<Object> {
+		private final Snapshot snapshot;
+
+		private final int from;
+
+		private final int to;
+
+		ServiceList(Snapshot snapshot, int from, int to) {
+			this.snapshot = snapshot;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public Object get(int index) {
+			if (index < 0 || index >= to - from) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+			}
+			return snapshot.entry(from + index).service;
+		}
+
+		@Override
+		public int size() {
+			return to - from;
+		}
+	}
+}
@@ -16,20 +16,31 @@
 package demo.org.powermock.examples.tutorial.staticmocking.impl;
 
 import demo.org.powermock.examples.tutorial.common.annotation.Inject;
+import demo.org.powermock.examples.tutorial.common.collections.ConcurrentLongHashMap;
+import demo.org.powermock.examples.tutorial.staticmocking.BatchResult;
+import demo.org.powermock.examples.tutorial.staticmocking.IServiceLookup;
 import demo.org.powermock.examples.tutorial.staticmocking.IServiceRegistrator;
 import demo.org.powermock.examples.tutorial.staticmocking.osgi.BundleContext;
 import demo.org.powermock.examples.tutorial.staticmocking.osgi.ServiceRegistration;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 
 /**
  * An "OSGi"-ish implementation of the {@link IServiceRegistrator} interface.
  * The test for this class demonstrates static mocking as well as getting and
  * setting internal state.
+ * <p>
+ * Registered services can be looked up by name through the
+ * {@link IServiceLookup} interface.
+ * <p>
+ * Services can be registered with a lease, they are unregistered
+ * automatically unless the lease is renewed in time.
  * 
  */
-public class ServiceRegistrator implements IServiceRegistrator {
+public class ServiceRegistrator implements IServiceRegistrator, IServiceLookup {
 
 	@Inject
 	private BundleContext bundleContext;
@@ -38,13 +49,32 @@ public class ServiceRegistrator implements IServiceRegistrator {
 	 * Holds all services registrations that has been registered by this service
 	 * registrator.
 	 */
-	private final Map<Long, ServiceRegistration> serviceRegistrations;
+	private final ConcurrentLongHashMap<ServiceRegistration> serviceRegistrations;
+
+	/**
+	 * Indexes the registered services by name.
+	 */
+	private final ServiceIndex serviceIndex;
+
+	/**
+	 * Unregisters the services whose lease has expired.
+	 */
+	private final LeaseManager leaseManager;
 
 	/**
 	 * Default constructor, initializes internal state.
 	 */
 	public ServiceRegistrator() {
-		serviceRegistrations = new ConcurrentHashMap<Long, ServiceRegistration>();
+		serviceRegistrations = new ConcurrentLongHashMap<ServiceRegistration>();
+		serviceIndex = new ServiceIndex();
+		leaseManager = new LeaseManager(LeaseManager.DEFAULT_TICK_MILLIS, new LeaseManager.ExpiryListener() {
+			@Override
+			public void expired(long[] ids) {
+				// Services that were unregistered meanwhile are reported as
+				// failures and can be ignored
+				unregisterServices(ids);
+			}
+		});
 	}
 
 	/**
@@ -55,19 +85,163 @@ public class ServiceRegistrator implements IServiceRegistrator {
 		ServiceRegistration registerService = bundleContext.registerService(name, serviceImplementation, null);
 		final long id = IdGenerator.generateNewId();
 		serviceRegistrations.put(id, registerService);
+		serviceIndex.add(id, name, serviceImplementation);
+		return id;
+	}
+
+	/**
+	 * Register a service that is unregistered automatically when its lease
+	 * expires.
+	 * 
+	 * @param name
+	 *            The name of the service.
+	 * @param serviceImplementation
+	 *            The service implementation.
+	 * @param leaseMillis
+	 *            The lease duration in milliseconds.
+	 * @return An id of the registered service.
+	 * @throws IllegalArgumentException
+	 *             If <code>leaseMillis</code> isn't positive.
+	 * @see #renewLease(long, long)
+	 */
+	public long registerService(String name, Object serviceImplementation, long leaseMillis) {
+		if (leaseMillis <= 0) {
+			throw new IllegalArgumentException("Lease duration must be positive but was " + leaseMillis);
+		}
+		final long id = registerService(name, serviceImplementation);
+		leaseManager.grant(id, leaseMillis);
 		return id;
 	}
 
+	/**
+	 * Renew the lease of a service.
+	 * 
+	 * @param id
+	 *            The id of the service.
+	 * @param leaseMillis
+	 *            The new lease duration in milliseconds, counted from now.
+	 * @return <code>true</code> if the lease was renewed, <code>false</code>
+	 *         if the service wasn't registered with a lease or has already
+	 *         expired.
+	 */
+	public boolean renewLease(long id, long leaseMillis) {
+		return leaseManager.renew(id, leaseMillis);
+	}
+
+	/**
+	 * Stop expiring leases. Services registered with a lease stay registered
+	 * until they are unregistered explicitly.
+	 */
+	public void shutdown() {
+		leaseManager.shutdown();
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	public void unregisterService(long id) {
+		final ServiceRegistration registration = removeRegistration(id);
+		serviceIndex.remove(id);
+		registration.unregister();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public BatchResult registerServices(List<String> names, List<?> serviceImplementations) {
+		if (names.size() != serviceImplementations.size()) {
+			throw new IllegalArgumentException("Got " + names.size() + " names but " + serviceImplementations.size() + " service implementations");
+		}
+		final long[] ids = IdGenerator.generateNewIds(names.size());
+		final BatchResult.Builder result = new BatchResult.Builder(ids);
+		final Iterator<?> implementations = serviceImplementations.iterator();
+		final List<ServiceIndex.Entry> registered = new ArrayList<ServiceIndex.Entry>(ids.length);
+		int index = 0;
+		for (String name : names) {
+			final Object serviceImplementation = implementations.next();
+			try {
+				serviceRegistrations.put(ids[index], bundleContext.registerService(name, serviceImplementation, null));
+				registered.add(new ServiceIndex.Entry(ids[index], name, serviceImplementation));
+			} catch (RuntimeException e) {
+				result.fail(index, e);
+			}
+			index++;
+		}
+		// Index the whole batch at once instead of copying the index per service
+		serviceIndex.addAll(registered);
+		return result.build();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public BatchResult unregisterServices(long[] ids) {
+		final BatchResult.Builder result = new BatchResult.Builder(ids);
+		final ServiceRegistration[] registrations = new ServiceRegistration[ids.length];
+		final long[] removedIds = new long[ids.length];
+		int removed = 0;
+		for (int i = 0; i < ids.length; i++) {
+			try {
+				registrations[i] = removeRegistration(ids[i]);
+				removedIds[removed++] = ids[i];
+			} catch (RuntimeException e) {
+				result.fail(i, e);
+			}
+		}
+		// Remove the whole batch from the index at once instead of copying it per service
+		serviceIndex.removeAll(Arrays.copyOf(removedIds, removed));
+		for (int i = 0; i < ids.length; i++) {
+			if (registrations[i] != null) {
+				try {
+					registrations[i].unregister();
+				} catch (RuntimeException e) {
+					result.fail(i, e);
+				}
+			}
+		}
+		return result.build();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Object getService(String name) {
+		return serviceIndex.get(name);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<Object> findServicesByPrefix(String namePrefix) {
+		return serviceIndex.findByPrefix(namePrefix);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public List<Object> findServices(String filter) {
+		return serviceIndex.find(filter);
+	}
+
+	/**
+	 * Remove a registration and cancel its lease, leaving the index to the
+	 * caller.
+	 *
+	 * @throws IllegalStateException
+	 *             If there's no registration with the id.
+	 */
+	private ServiceRegistration removeRegistration(long id) {
 		final ServiceRegistration registration = serviceRegistrations.remove(id);
 		if (registration == null) {
 			throw new IllegalStateException("Registration with id " + id + " has already been removed or has never been registered");
 		}
-		registration.unregister();
+		leaseManager.cancel(id);
+		return registration;
 	}
-
 }
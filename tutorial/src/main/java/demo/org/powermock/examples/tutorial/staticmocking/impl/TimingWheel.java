@@ -0,0 +1,288 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.staticmocking.impl;
+
+import java.util.Arrays;
+
+/**
+ * A hierarchical timing wheel that keeps track of deadlines for
+ * <code>long</code> ids. Each level has 64 slots, a slot on level
+ * <code>n</code> covers <code>64^n</code> ticks. Scheduling and cancelling
+ * are O(1); a timeout is moved to a lower level at most once per level
+ * before it expires, so advancing the wheel costs O(1) per tick and timeout.
+ * Slots are intrusive linked lists, so a cancelled timeout is unlinked right
+ * away instead of waiting in its slot until its deadline.
+ * <p>
+ * Deadlines beyond the highest level wait in an overflow list that is
+ * re-examined each time the highest level wraps around.
+ * <p>
+ * The wheel is not thread-safe.
+ */
+class TimingWheel {
+
+	private static final int SLOT_BITS = 6;
+
+	private static final int SLOTS = 1 << SLOT_BITS;
+
+	private static final int SLOT_MASK = SLOTS - 1;
+
+	private static final int LEVELS = 4;
+
+	private final long tickMillis;
+
+	private final long startMillis;
+
+	private final Bucket[] slots;
+
+	private final Bucket overflow = new Bucket();
+
+	/**
+	 * Timeouts whose deadline has been reached when they were placed.
+	 */
+	private final Bucket due = new Bucket();
+
+	private long currentTick;
+
+	private int size;
+
+	/**
+	 * A scheduled deadline, can be cancelled until it expires.
+	 */
+	static final class Timeout {
+		final long id;
+
+		final long deadlineTick;
+
+		boolean cancelled;
+
+		/**
+		 * The slot the timeout is linked into, <code>null</code> once it has
+		 * expired or been cancelled.
+		 */
+		private Bucket bucket;
+
+		private Timeout previous;
+
+		private Timeout next;
+
+		Timeout(long id, long deadlineTick) {
+			this.id = id;
+			this.deadlineTick = deadlineTick;
+		}
+	}
+
+	TimingWheel(long tickMillis, long startMillis) {
+		if (tickMillis <= 0) {
+			throw new IllegalArgumentException("tickMillis must be positive but was " + tickMillis);
+		}
+		this.tickMillis = tickMillis;
+		this.startMillis = startMillis;
+		slots = new Bucket[LEVELS * SLOTS];
+		for (int i = 0; i < slots.length; i++) {
+			slots[i] = new Bucket();
+		}
+	}
+
+	/**
+	 * Schedules <code>id</code> to expire at <code>deadlineMillis</code>,
+	 * rounded up to the next tick.
+	 */
+	Timeout schedule(long id, long deadlineMillis) {
+		final long deadlineTick = (deadlineMillis - startMillis + tickMillis - 1) / tickMillis;
+		final Timeout timeout = new Timeout(id, deadlineTick);
+		place(timeout);
+		return timeout;
+	}
+
+	/**
+	 * Cancels <code>timeout</code> and removes it from its slot.
+	 */
+	void cancel(Timeout timeout) {
+		timeout.cancelled = true;
+		if (timeout.bucket != null) {
+			timeout.bucket.unlink(timeout);
+			size--;
+		}
+	}
+
+	/**
+	 * @return The number of timeouts that are scheduled and haven't expired
+	 *         yet.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Advances the wheel to <code>nowMillis</code>.
+	 *
+	 * @return The ids whose deadline has passed and that were not cancelled.
+	 */
+	long[] advance(long nowMillis) {
+		final long targetTick = (nowMillis - startMillis) / tickMillis;
+		final Expired expired = new Expired();
+		drain(due, expired);
+		while (currentTick < targetTick) {
+			currentTick++;
+			cascade();
+			// Cascading puts timeouts that are due on this tick into the due list
+			drain(due, expired);
+			drain(slots[(int) (currentTick & SLOT_MASK)], expired);
+		}
+		return expired.toArray();
+	}
+
+	/**
+	 * Moves the timeouts of every level whose slot boundary has been reached
+	 * down the hierarchy, starting from the highest level.
+	 */
+	private void cascade() {
+		if ((currentTick & ((1L << (SLOT_BITS * LEVELS)) - 1)) == 0) {
+			replace(overflow);
+		}
+		for (int level = LEVELS - 1; level > 0; level--) {
+			final int shift = SLOT_BITS * level;
+			if ((currentTick & ((1L << shift) - 1)) == 0) {
+				replace(slots[level * SLOTS + (int) ((currentTick >>> shift) & SLOT_MASK)]);
+			}
+		}
+	}
+
+	/**
+	 * Places the timeouts of <code>bucket</code> again.
+	 */
+	private void replace(Bucket bucket) {
+		Timeout timeout = bucket.clear();
+		while (timeout != null) {
+			final Timeout next = timeout.next;
+			timeout.previous = null;
+			timeout.next = null;
+			size--;
+			place(timeout);
+			timeout = next;
+		}
+	}
+
+	private void drain(Bucket bucket, Expired expired) {
+		Timeout timeout = bucket.clear();
+		while (timeout != null) {
+			final Timeout next = timeout.next;
+			timeout.previous = null;
+			timeout.next = null;
+			size--;
+			if (!timeout.cancelled) {
+				expired.add(timeout.id);
+			}
+			timeout = next;
+		}
+	}
+
+	/**
+	 * Places a timeout on the lowest level whose current rotation contains
+	 * its deadline.
+	 */
+	private void place(Timeout timeout) {
+		if (timeout.cancelled) {
+			return;
+		}
+		size++;
+		if (timeout.deadlineTick <= currentTick) {
+			due.link(timeout);
+			return;
+		}
+		for (int level = 0; level < LEVELS; level++) {
+			final int parentShift = SLOT_BITS * (level + 1);
+			if ((timeout.deadlineTick >>> parentShift) == (currentTick >>> parentShift)) {
+				final int slot = (int) ((timeout.deadlineTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+				slots[level * SLOTS + slot].link(timeout);
+				return;
+			}
+		}
+		overflow.link(timeout);
+	}
+
+	/**
+	 * A doubly linked list of timeouts.
+	 */
+	private static final class Bucket {
+		private Timeout head;
+
+		private Timeout tail;
+
+		void link(Timeout timeout) {
+			timeout.bucket = this;
+			timeout.previous = tail;
+			if (tail == null) {
+				head = timeout;
+			} else {
+				tail.next = timeout;
+			}
+			tail = timeout;
+		}
+
+		void unlink(Timeout timeout) {
+			if (timeout.previous == null) {
+				head = timeout.next;
+			} else {
+				timeout.previous.next = timeout.next;
+			}
+			if (timeout.next == null) {
+				tail = timeout.previous;
+			} else {
+				timeout.next.previous = timeout.previous;
+			}
+			timeout.bucket = null;
+			timeout.previous = null;
+			timeout.next = null;
+		}
+
+		/**
+		 * Empties the bucket.
+		 *
+		 * @return The first of the timeouts that were linked, which are still
+		 *         chained by their <code>next</code> references.
+		 */
+		Timeout clear() {
+			final Timeout first = head;
+			head = null;
+			tail = null;
+			for (Timeout timeout = first; timeout != null; timeout = timeout.next) {
+				timeout.bucket = null;
+			}
+			return first;
+		}
+	}
+
+	/**
+	 * Collects the ids of expired timeouts.
+	 */
+	private static final class Expired {
+		private long[] ids = new long[16];
+
+		private int count;
+
+		void add(long id) {
+			if (count == ids.length) {
+				ids = Arrays.copyOf(ids, count * 2);
+			}
+			ids[count++] = id;
+		}
+
+		long[] toArray() {
+			return Arrays.copyOf(ids, count);
+		}
+	}
+}
@@ -16,13 +16,15 @@
 package demo.org.powermock.examples.tutorial.staticmocking.impl.withoutpowermock;
 
 import demo.org.powermock.examples.tutorial.common.annotation.Inject;
+import demo.org.powermock.examples.tutorial.common.collections.ConcurrentLongHashMap;
+import demo.org.powermock.examples.tutorial.staticmocking.BatchResult;
 import demo.org.powermock.examples.tutorial.staticmocking.IServiceRegistrator;
 import demo.org.powermock.examples.tutorial.staticmocking.impl.IdGenerator;
 import demo.org.powermock.examples.tutorial.staticmocking.osgi.BundleContext;
 import demo.org.powermock.examples.tutorial.staticmocking.osgi.ServiceRegistration;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Iterator;
+import java.util.List;
 
 /**
  * This refactored implementation demonstrate how one could test the
@@ -38,13 +40,13 @@ public class ServiceRegistratorWithoutPowerMock implements IServiceRegistrator {
 	 * Holds all services registrations that has been registered by this service
 	 * registrator.
 	 */
-	private final Map<Long, ServiceRegistration> serviceRegistrations;
+	private final ConcurrentLongHashMap<ServiceRegistration> serviceRegistrations;
 
 	/**
 	 * Default constructor, initializes internal state.
 	 */
 	public ServiceRegistratorWithoutPowerMock() {
-		serviceRegistrations = new ConcurrentHashMap<Long, ServiceRegistration>();
+		serviceRegistrations = new ConcurrentLongHashMap<ServiceRegistration>();
 	}
 
 	/**
@@ -65,6 +67,15 @@ public class ServiceRegistratorWithoutPowerMock implements IServiceRegistrator {
 		return IdGenerator.generateNewId();
 	}
 
+	/**
+	 * @param count
+	 *            The number of ids to generate.
+	 * @return <code>count</code> new ids
+	 */
+	protected long[] generateIds(int count) {
+		return IdGenerator.generateNewIds(count);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -77,4 +88,43 @@ public class ServiceRegistratorWithoutPowerMock implements IServiceRegistrator {
 		registration.unregister();
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public BatchResult registerServices(List<String> names, List<?> serviceImplementations) {
+		if (names.size() != serviceImplementations.size()) {
+			throw new IllegalArgumentException("Got " + names.size() + " names but " + serviceImplementations.size() + " service implementations");
+		}
+		final long[] ids = generateIds(names.size());
+		final BatchResult.Builder result = new BatchResult.Builder(ids);
+		final Iterator<?> implementations = serviceImplementations.iterator();
+		int index = 0;
+		for (String name : names) {
+			final Object serviceImplementation = implementations.next();
+			try {
+				serviceRegistrations.put(ids[index], bundleContext.registerService(name, serviceImplementation, null));
+			} catch (RuntimeException e) {
+				result.fail(index, e);
+			}
+			index++;
+		}
+		return result.build();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public BatchResult unregisterServices(long[] ids) {
+		final BatchResult.Builder result = new BatchResult.Builder(ids);
+		for (int i = 0; i < ids.length; i++) {
+			try {
+				unregisterService(ids[i]);
+			} catch (RuntimeException e) {
+				result.fail(i, e);
+			}
+		}
+		return result.build();
+	}
 }
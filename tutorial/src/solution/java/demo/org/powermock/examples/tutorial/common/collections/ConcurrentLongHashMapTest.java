@@ -0,0 +1,131 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.common.collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for the {@link ConcurrentLongHashMap} class.
+ */
+public class ConcurrentLongHashMapTest {
+
+	private ConcurrentLongHashMap<String> tested;
+
+	@Before
+	public void setUp() {
+		tested = new ConcurrentLongHashMap<String>();
+	}
+
+	@Test
+	public void putGetAndRemove() throws Exception {
+		assertNull(tested.put(42L, "a"));
+		assertEquals("a", tested.put(42L, "b"));
+		assertEquals("b", tested.get(42L));
+		assertEquals(1, tested.size());
+
+		assertEquals("b", tested.remove(42L));
+		assertNull(tested.get(42L));
+		assertNull(tested.remove(42L));
+		assertTrue(tested.isEmpty());
+	}
+
+	@Test
+	public void supportsZeroAndNegativeKeys() throws Exception {
+		tested.put(0L, "zero");
+		tested.put(-1L, "minus one");
+		tested.put(Long.MIN_VALUE, "min");
+
+		assertEquals("zero", tested.get(0L));
+		assertEquals("minus one", tested.get(-1L));
+		assertEquals("min", tested.get(Long.MIN_VALUE));
+		assertEquals(3, tested.size());
+
+		assertEquals("zero", tested.remove(0L));
+		assertFalse(tested.containsKey(0L));
+		assertEquals(2, tested.size());
+	}
+
+	@Test
+	public void putIfAbsentKeepsExistingValue() throws Exception {
+		assertNull(tested.putIfAbsent(1L, "a"));
+		assertEquals("a", tested.putIfAbsent(1L, "b"));
+		assertEquals("a", tested.get(1L));
+	}
+
+	@Test
+	public void growsAndKeepsAllMappings() throws Exception {
+		final int count = 100000;
+		for (long key = 1; key <= count; key++) {
+			tested.put(key, Long.toString(key));
+		}
+		for (long key = 1; key <= count; key += 2) {
+			tested.remove(key);
+		}
+
+		assertEquals(count / 2, tested.size());
+		for (long key = 1; key <= count; key++) {
+			assertEquals(key % 2 == 0 ? Long.toString(key) : null, tested.get(key));
+		}
+		assertEquals(count / 2, new HashSet<String>(tested.values()).size());
+		assertTrue(tested.containsValue("2"));
+		assertFalse(tested.containsValue("1"));
+	}
+
+	@Test
+	public void concurrentWritersDoNotLoseMappings() throws Exception {
+		final int threads = 8;
+		final int keysPerThread = 20000;
+		final Thread[] workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			final long offset = (long) i * keysPerThread;
+			workers[i] = new Thread() {
+				@Override
+				public void run() {
+					for (long key = offset; key < offset + keysPerThread; key++) {
+						tested.put(key, "value");
+						if (key % 3 == 0) {
+							tested.remove(key);
+						}
+					}
+				}
+			};
+			workers[i].start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+
+		final Set<Long> expected = new HashSet<Long>();
+		for (long key = 0; key < (long) threads * keysPerThread; key++) {
+			if (key % 3 != 0) {
+				expected.add(key);
+			}
+			assertEquals(key % 3 != 0, tested.containsKey(key));
+		}
+		assertEquals(expected.size(), tested.size());
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void rejectsNullValues() throws Exception {
+		tested.put(1L, null);
+	}
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.domainmocking.impl;
+
+import demo.org.powermock.examples.tutorial.domainmocking.EventService;
+import demo.org.powermock.examples.tutorial.domainmocking.domain.BusinessMessages;
+import demo.org.powermock.examples.tutorial.domainmocking.domain.Person;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for the {@link AsyncEventService} class.
+ */
+public class AsyncEventServiceTest {
+
+	private final Person first = new Person("first", "person");
+
+	private final Person second = new Person("second", "person");
+
+	private final Person third = new Person("third", "person");
+
+	@Test
+	public void groupsConsecutiveEventsWithSameMessages() throws Exception {
+		final RecordingEventService delegate = new RecordingEventService();
+		final AsyncEventService tested = new AsyncEventService(delegate, 16, 16, 60000, AsyncEventService.OverflowPolicy.DROP);
+		final BusinessMessages messages = new BusinessMessages();
+		final BusinessMessages otherMessages = new BusinessMessages();
+
+		tested.sendErrorEvent(first, messages);
+		tested.sendErrorEvents(Arrays.asList(second, third), messages);
+		tested.sendErrorEvent(first, otherMessages);
+		tested.close();
+
+		assertEquals(Arrays.asList(Arrays.asList(first, second, third), Collections.singletonList(first)), delegate.calls);
+		assertSame(messages, delegate.messages.get(0));
+		assertSame(otherMessages, delegate.messages.get(1));
+		assertEquals(1, delegate.singleEvents);
+	}
+
+	@Test
+	public void deliversBatchAfterMaxDelay() throws Exception {
+		final RecordingEventService delegate = new RecordingEventService();
+		final AsyncEventService tested = new AsyncEventService(delegate, 16, 16, 10, AsyncEventService.OverflowPolicy.DROP);
+		try {
+			tested.sendErrorEvent(first, new BusinessMessages());
+
+			assertTrue(delegate.delivered.await(5, TimeUnit.SECONDS));
+		} finally {
+			tested.close();
+		}
+	}
+
+	@Test
+	public void dropsAndCountsEventsThatDontFit() throws Exception {
+		final BlockingEventService delegate = new BlockingEventService();
+		final AsyncEventService tested = new AsyncEventService(delegate, 2, 1, 0, AsyncEventService.OverflowPolicy.DROP);
+		tested.sendErrorEvent(first, new BusinessMessages());
+		assertTrue(delegate.blocked.await(5, TimeUnit.SECONDS));
+
+		tested.sendErrorEvent(first, new BusinessMessages());
+		tested.sendErrorEvent(first, new BusinessMessages());
+		tested.sendErrorEvents(Arrays.asList(second, third), new BusinessMessages());
+		tested.sendErrorEvents(Collections.<Person> emptyList(), new BusinessMessages());
+
+		assertEquals(2, tested.getDroppedCount());
+		delegate.release.countDown();
+		tested.close();
+		assertEquals(3, delegate.events);
+	}
+
+	@Test
+	public void countsEventsTheDelegateFailedToDeliver() throws Exception {
+		final AsyncEventService tested = new AsyncEventService(new EventService() {
+			@Override
+			public void sendErrorEvent(Person person, BusinessMessages messages) {
+				throw new IllegalStateException("unavailable");
+			}
+
+			@Override
+			public void sendErrorEvents(List<Person> persons, BusinessMessages messages) {
+				throw new IllegalStateException("unavailable");
+			}
+		}, 16, 16, 60000, AsyncEventService.OverflowPolicy.DROP);
+		final BusinessMessages messages = new BusinessMessages();
+
+		tested.sendErrorEvents(Arrays.asList(first, second, third), messages);
+		tested.sendErrorEvent(first, messages);
+		tested.sendErrorEvent(second, new BusinessMessages());
+		tested.close();
+
+		assertEquals(3, tested.getFailedCount());
+	}
+
+	@Test
+	public void deliversOnCallerThreadWhenQueueIsFull() throws Exception {
+		final BlockingEventService delegate = new BlockingEventService();
+		final AsyncEventService tested = new AsyncEventService(delegate, 2, 1, 0, AsyncEventService.OverflowPolicy.CALLER_RUNS);
+		tested.sendErrorEvent(first, new BusinessMessages());
+		assertTrue(delegate.blocked.await(5, TimeUnit.SECONDS));
+		tested.sendErrorEvent(second, new BusinessMessages());
+		tested.sendErrorEvent(second, new BusinessMessages());
+
+		tested.sendErrorEvent(third, new BusinessMessages());
+
+		assertEquals(Thread.currentThread(), delegate.lastThread);
+		assertEquals(0, tested.getDroppedCount());
+		delegate.release.countDown();
+		tested.close();
+		assertEquals(4, delegate.events);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void rejectsEventsAfterClose() throws Exception {
+		final AsyncEventService tested = new AsyncEventService(new RecordingEventService(), 1, 1, 0, AsyncEventService.OverflowPolicy.BLOCK);
+		tested.close();
+		tested.sendErrorEvent(first, new BusinessMessages());
+	}
+
+	@Test
+	public void blockedProducerGivesUpOnClose() throws Exception {
+		final BlockingEventService delegate = new BlockingEventService();
+		final AsyncEventService tested = new AsyncEventService(delegate, 2, 1, 0, AsyncEventService.OverflowPolicy.BLOCK);
+		tested.sendErrorEvent(first, new BusinessMessages());
+		assertTrue(delegate.blocked.await(5, TimeUnit.SECONDS));
+		tested.sendErrorEvent(second, new BusinessMessages());
+		tested.sendErrorEvent(second, new BusinessMessages());
+		final ExecutorService threads = Executors.newFixedThreadPool(2);
+		try {
+			final Future<?> blocked = threads.submit(new Callable<Void>() {
+				@Override
+				public Void call() {
+					tested.sendErrorEvent(third, new BusinessMessages());
+					return null;
+				}
+			});
+			final Future<?> closing = threads.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws InterruptedException {
+					tested.close();
+					return null;
+				}
+			});
+
+			try {
+				blocked.get(5, TimeUnit.SECONDS);
+				fail("Should throw IllegalStateException");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof IllegalStateException);
+			}
+			delegate.release.countDown();
+			closing.get(5, TimeUnit.SECONDS);
+			assertEquals(3, delegate.events);
+		} finally {
+			threads.shutdownNow();
+		}
+	}
+
+	@Test
+	public void deliversOrRejectsEventsSentWhileClosing() throws Exception {
+		for (int round = 0; round < 20; round++) {
+			final CountingEventService delegate = new CountingEventService();
+			final AsyncEventService tested = new AsyncEventService(delegate, 64, 8, 0, AsyncEventService.OverflowPolicy.BLOCK);
+			final AtomicInteger sent = new AtomicInteger();
+			final CountDownLatch started = new CountDownLatch(4);
+			final ExecutorService producers = Executors.newFixedThreadPool(4);
+			try {
+				final List<Future<?>> sending = new ArrayList<Future<?>>();
+				for (int i = 0; i < 4; i++) {
+					sending.add(producers.submit(new Runnable() {
+						@Override
+						public void run() {
+							started.countDown();
+							try {
+								for (;;) {
+									tested.sendErrorEvent(first, new BusinessMessages());
+									sent.incrementAndGet();
+								}
+							} catch (IllegalStateException e) {
+								// Closed
+							}
+						}
+					}));
+				}
+				assertTrue(started.await(5, TimeUnit.SECONDS));
+				tested.close();
+				for (Future<?> producer : sending) {
+					producer.get(5, TimeUnit.SECONDS);
+				}
+
+				assertEquals(sent.get(), delegate.events.get());
+			} finally {
+				producers.shutdownNow();
+			}
+		}
+	}
+
+	private static class RecordingEventService implements EventService {
+		final List<List<Person>> calls = Collections.synchronizedList(new ArrayList<List<Person>>());
+
+		final List<BusinessMessages> messages = Collections.synchronizedList(new ArrayList<BusinessMessages>());
+
+		final CountDownLatch delivered = new CountDownLatch(1);
+
+		volatile int singleEvents;
+
+		@Override
+		public void sendErrorEvent(Person person, BusinessMessages messages) {
+			singleEvents++;
+			sendErrorEvents(Collections.singletonList(person), messages);
+		}
+
+		@Override
+		public void sendErrorEvents(List<Person> persons, BusinessMessages messages) {
+			calls.add(persons);
+			this.messages.add(messages);
+			delivered.countDown();
+		}
+	}
+
+	/**
+	 * Blocks the consumer thread on the first event until released.
+	 */
+	private static class BlockingEventService implements EventService {
+		final CountDownLatch blocked = new CountDownLatch(1);
+
+		final CountDownLatch release = new CountDownLatch(1);
+
+		volatile int events;
+
+		volatile Thread lastThread;
+
+		@Override
+		public void sendErrorEvent(Person person, BusinessMessages messages) {
+			sendErrorEvents(Collections.singletonList(person), messages);
+		}
+
+		@Override
+		public void sendErrorEvents(List<Person> persons, BusinessMessages messages) {
+			synchronized (this) {
+				events += persons.size();
+				lastThread = Thread.currentThread();
+			}
+			if (blocked.getCount() > 0) {
+				blocked.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+
+	private static class CountingEventService implements EventService {
+		final AtomicInteger events = new AtomicInteger();
+
+		@Override
+		public void sendErrorEvent(Person person, BusinessMessages messages) {
+			events.incrementAndGet();
+		}
+
+		@Override
+		public void sendErrorEvents(List<Person> persons, BusinessMessages messages) {
+			events.addAndGet(persons.size());
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.domainmocking.impl;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for the {@link MpscRingBuffer} class.
+ */
+public class MpscRingBufferTest {
+
+	@Test
+	public void roundsCapacityUpToPowerOfTwo() throws Exception {
+		assertEquals(2, new MpscRingBuffer<Object>(1).capacity());
+		assertEquals(8, new MpscRingBuffer<Object>(5).capacity());
+		assertEquals(8, new MpscRingBuffer<Object>(8).capacity());
+	}
+
+	@Test
+	public void rejectsElementsWhenFull() throws Exception {
+		final MpscRingBuffer<Integer> tested = new MpscRingBuffer<Integer>(2);
+
+		assertTrue(tested.offer(1));
+		assertTrue(tested.offer(2));
+		assertFalse(tested.offer(3));
+		assertEquals(Integer.valueOf(1), tested.poll());
+		assertTrue(tested.offer(3));
+
+		final List<Integer> drained = new ArrayList<Integer>();
+		assertEquals(2, tested.drainTo(drained, 10));
+		assertEquals(2, drained.size());
+		assertNull(tested.poll());
+		assertTrue(tested.isEmpty());
+	}
+
+	@Test
+	public void keepsPerProducerOrderWithConcurrentProducers() throws Exception {
+		final int producers = 4;
+		final int perProducer = 100000;
+		final MpscRingBuffer<long[]> tested = new MpscRingBuffer<long[]>(64);
+		final CountDownLatch start = new CountDownLatch(1);
+		for (int p = 0; p < producers; p++) {
+			final int producer = p;
+			final Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = 0; i < perProducer; i++) {
+						final long[] element = { producer, i };
+						while (!tested.offer(element)) {
+							Thread.yield();
+						}
+					}
+				}
+			});
+			thread.setDaemon(true);
+			thread.start();
+		}
+		start.countDown();
+
+		final long[] next = new long[producers];
+		for (int received = 0; received < producers * perProducer;) {
+			final long[] element = tested.poll();
+			if (element == null) {
+				Thread.yield();
+				continue;
+			}
+			assertEquals(next[(int) element[0]]++, element[1]);
+			received++;
+		}
+		for (long count : next) {
+			assertEquals(perProducer, count);
+		}
+	}
+}
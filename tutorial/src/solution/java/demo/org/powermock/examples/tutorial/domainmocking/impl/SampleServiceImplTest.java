@@ -27,7 +27,12 @@ import org.junit.runner.RunWith;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+
 import static org.easymock.EasyMock.expect;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.powermock.api.easymock.PowerMock.*;
@@ -115,4 +120,49 @@ public class SampleServiceImplTest {
 
 		verifyAll();
 	}
+
+	@Test
+	public void testCreatePersons() throws Exception {
+		final Person first = new Person("first", "person");
+		final Person second = new Person("second", "person");
+		final Person third = new Person("third", "person");
+
+		// Mock the creation of BusinessMessages, one for the whole batch
+		BusinessMessages businessMessagesMock = createMockAndExpectNew(BusinessMessages.class);
+
+		final BitSet failed = new BitSet();
+		failed.set(1);
+		expect(personServiceMock.createAll(Arrays.asList(first, second, third), businessMessagesMock)).andReturn(failed);
+
+		eventService.sendErrorEvents(Collections.singletonList(second), businessMessagesMock);
+		expectLastCall().times(1);
+
+		replayAll();
+
+		final BitSet created = tested.createPersons(Arrays.asList(first, null, second, third));
+
+		verifyAll();
+
+		final BitSet expected = new BitSet();
+		expected.set(0);
+		expected.set(3);
+		assertEquals(expected, created);
+	}
+
+	@Test
+	public void testCreatePersons_noErrors() throws Exception {
+		final Person person = new Person("first", "person");
+
+		BusinessMessages businessMessagesMock = createMockAndExpectNew(BusinessMessages.class);
+
+		expect(personServiceMock.createAll(Collections.singletonList(person), businessMessagesMock)).andReturn(new BitSet());
+
+		replayAll();
+
+		final BitSet created = tested.createPersons(Collections.singletonList(person));
+
+		verifyAll();
+
+		assertTrue(created.get(0));
+	}
 }
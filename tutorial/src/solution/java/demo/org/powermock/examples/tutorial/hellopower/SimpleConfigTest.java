@@ -0,0 +1,142 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.hellopower;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for the {@link SimpleConfig} class. Each test loads the class
+ * in its own class loader, so it starts without a snapshot and reads
+ * <code>simpleConfig.properties</code> from a temporary directory.
+ */
+public class SimpleConfigTest {
+
+	private File directory;
+
+	private File properties;
+
+	private URLClassLoader classLoader;
+
+	private Class<?> simpleConfig;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = File.createTempFile("simpleConfig", "");
+		directory.delete();
+		directory.mkdir();
+		properties = new File(directory, "simpleConfig.properties");
+		final URL classes = SimpleConfig.class.getProtectionDomain().getCodeSource().getLocation();
+		// No parent, so the class isn't shared with the application class loader
+		classLoader = new URLClassLoader(new URL[] { classes, directory.toURI().toURL() }, null);
+		simpleConfig = classLoader.loadClass(SimpleConfig.class.getName());
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		classLoader.close();
+		properties.delete();
+		directory.delete();
+	}
+
+	@Test
+	public void reloadPublishesNewSnapshot() throws Exception {
+		writeProperties("Hello", "world");
+		assertEquals("Hello", invoke("getGreeting"));
+		assertEquals("world", invoke("getTarget"));
+
+		writeProperties("Goodbye", "moon");
+		assertEquals("Hello", invoke("getGreeting"));
+		invoke("reload");
+
+		assertEquals("Goodbye", invoke("getGreeting"));
+		assertEquals("moon", invoke("getTarget"));
+	}
+
+	@Test
+	public void failedReloadKeepsPreviousSnapshot() throws Exception {
+		writeProperties("Hello", "world");
+		assertEquals("Hello", invoke("getGreeting"));
+		properties.delete();
+
+		try {
+			invoke("reload");
+			fail("Should throw RuntimeException");
+		} catch (RuntimeException e) {
+			assertEquals("Couldn't find simpleConfig.properties", e.getMessage());
+		}
+
+		assertEquals("Hello", invoke("getGreeting"));
+		assertEquals("world", invoke("getTarget"));
+	}
+
+	@Test
+	public void readsFailUntilReloadSucceedsAfterFailedFirstLoad() throws Exception {
+		for (int i = 0; i < 2; i++) {
+			try {
+				invoke("getGreeting");
+				fail("Should throw IllegalStateException");
+			} catch (IllegalStateException e) {
+				assertEquals("The configuration couldn't be loaded", e.getMessage());
+				assertEquals("Couldn't find simpleConfig.properties", e.getCause().getMessage());
+			}
+		}
+		writeProperties("Hello", "world");
+		invoke("reload");
+
+		assertEquals("Hello", invoke("getGreeting"));
+		assertEquals("world", invoke("getTarget"));
+	}
+
+	private void writeProperties(String greeting, String target) throws IOException {
+		final Properties settings = new Properties();
+		settings.setProperty("greeting", greeting);
+		settings.setProperty("target", target);
+		final OutputStream out = new FileOutputStream(properties);
+		try {
+			settings.store(out, null);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Calls a static method of the isolated class, rethrowing what it threw.
+	 */
+	private Object invoke(String method) throws Exception {
+		try {
+			return simpleConfig.getMethod(method).invoke(null);
+		} catch (InvocationTargetException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.partialmocking.dao.domain.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for the {@link ByteChannels} class.
+ */
+public class ByteChannelsTest {
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("byte-channels", ".bin");
+		final FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(new byte[64 * 1024]);
+		} finally {
+			out.close();
+		}
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void transfersRequestedPartOfFile() throws Exception {
+		final RecordingChannel target = new RecordingChannel(1000);
+
+		ByteChannels.transferFully(file.toPath(), 100, 50000, target);
+
+		assertEquals(50000, target.written.size());
+	}
+
+	@Test(timeout = 10000)
+	public void failsWhenFileIsTruncatedDuringTransfer() throws Exception {
+		final RecordingChannel target = new RecordingChannel() {
+			@Override
+			public int write(ByteBuffer src) throws IOException {
+				if (written.size() == 0) {
+					truncate();
+				}
+				return super.write(src);
+			}
+		};
+
+		try {
+			ByteChannels.transferFully(file.toPath(), 0, 64 * 1024, target);
+			fail("Should throw EOFException");
+		} catch (EOFException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("was truncated to 0 bytes"));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsPartBeyondEndOfFile() throws Exception {
+		ByteChannels.transferFully(file.toPath(), 1, 64 * 1024, new RecordingChannel());
+	}
+
+	private void truncate() throws IOException {
+		final RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+		try {
+			truncated.setLength(0);
+		} finally {
+			truncated.close();
+		}
+	}
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.partialmocking.dao.domain.impl;
+
+import demo.org.powermock.examples.tutorial.partialmocking.dao.domain.AsyncConnection;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.UnresolvedAddressException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Unit test for the {@link ConnectionEventLoop} and its connections.
+ */
+public class ConnectionEventLoopTest {
+
+	/**
+	 * Larger than the socket buffers of the loopback interface, so writing it
+	 * stalls while the peer isn't reading.
+	 */
+	private static final int STALLING_PAYLOAD_SIZE = 32 * 1024 * 1024;
+
+	private ConnectionEventLoop tested;
+
+	@Before
+	public void setUp() {
+		tested = new ConnectionEventLoop();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		tested.close();
+	}
+
+	@Test
+	public void sendsPayloadsOfManyConnections() throws Exception {
+		final List<LoopbackServer> servers = new ArrayList<LoopbackServer>();
+		final List<AsyncConnection> connections = new ArrayList<AsyncConnection>();
+		try {
+			for (int i = 0; i < 3; i++) {
+				servers.add(new LoopbackServer());
+				connections.add(tested.connect(servers.get(i).getAddress(), 1000, BackpressurePolicy.REJECT));
+			}
+			final List<CompletableFuture<Void>> sent = new ArrayList<CompletableFuture<Void>>();
+			for (int payload = 0; payload < 100; payload++) {
+				for (int i = 0; i < connections.size(); i++) {
+					sent.add(connections.get(i).send(("" + i + ":" + payload + ";").getBytes("UTF-8")));
+				}
+			}
+			for (AsyncConnection connection : connections) {
+				connection.disconnect().get(10, TimeUnit.SECONDS);
+			}
+
+			for (CompletableFuture<Void> future : sent) {
+				assertTrue(future.isDone() && !future.isCompletedExceptionally());
+			}
+			for (int i = 0; i < servers.size(); i++) {
+				final StringBuilder expected = new StringBuilder();
+				for (int payload = 0; payload < 100; payload++) {
+					expected.append(i).append(':').append(payload).append(';');
+				}
+				assertEquals(expected.toString(), new String(servers.get(i).getReceived(), "UTF-8"));
+			}
+		} finally {
+			for (LoopbackServer server : servers) {
+				server.close();
+			}
+		}
+	}
+
+	@Test
+	public void closesChannelWhenConnectFails() throws Exception {
+		final File openFiles = new File("/proc/self/fd");
+		assumeTrue(openFiles.isDirectory());
+		final InetSocketAddress unresolvable = InetSocketAddress.createUnresolved("unresolvable.invalid", 80);
+		// Warms up the classes the connection uses
+		connectUnresolvable(unresolvable);
+		final int before = openFiles.list().length;
+
+		for (int i = 0; i < 100; i++) {
+			connectUnresolvable(unresolvable);
+		}
+
+		assertTrue(openFiles.list().length - before < 10);
+	}
+
+	private void connectUnresolvable(InetSocketAddress address) {
+		try {
+			tested.connect(address, 10, BackpressurePolicy.REJECT);
+			fail("Should throw UnresolvedAddressException");
+		} catch (UnresolvedAddressException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void rejectsSendsWhenQueueIsFull() throws Exception {
+		final StalledServer server = new StalledServer();
+		try {
+			final AsyncConnection connection = tested.connect(server.getAddress(), 2, BackpressurePolicy.REJECT);
+			connection.send(new byte[STALLING_PAYLOAD_SIZE]);
+			connection.send(new byte[1]);
+
+			final CompletableFuture<Void> rejected = connection.send(new byte[1]);
+
+			assertCompletedWith(RejectedExecutionException.class, rejected);
+		} finally {
+			server.close();
+		}
+	}
+
+	@Test
+	public void dropsOldestUnstartedSendWhenQueueIsFull() throws Exception {
+		final StalledServer server = new StalledServer();
+		try {
+			final AsyncConnection connection = tested.connect(server.getAddress(), 2, BackpressurePolicy.DROP_OLDEST);
+			final CompletableFuture<Void> started = connection.send(new byte[STALLING_PAYLOAD_SIZE]);
+			// Let the event loop start writing the first payload
+			Thread.sleep(200);
+			final CompletableFuture<Void> oldest = connection.send(new byte[1]);
+
+			final CompletableFuture<Void> newest = connection.send(new byte[1]);
+
+			assertTrue(oldest.isCancelled());
+			assertFalse(started.isDone());
+			assertFalse(newest.isDone());
+		} finally {
+			server.close();
+		}
+	}
+
+	@Test
+	public void blocksSenderUntilQueueHasRoom() throws Exception {
+		final StalledServer server = new StalledServer();
+		try {
+			final AsyncConnection connection = tested.connect(server.getAddress(), 1, BackpressurePolicy.BLOCK);
+			final CompletableFuture<Void> first = connection.send(new byte[STALLING_PAYLOAD_SIZE]);
+			final FutureTask<CompletableFuture<Void>> blockedSend = new FutureTask<CompletableFuture<Void>>(new Callable<CompletableFuture<Void>>() {
+				@Override
+				public CompletableFuture<Void> call() {
+					return connection.send(new byte[1]);
+				}
+			});
+			new Thread(blockedSend).start();
+
+			assertStillRunning(blockedSend);
+			server.drain();
+
+			first.get(10, TimeUnit.SECONDS);
+			blockedSend.get(10, TimeUnit.SECONDS).get(10, TimeUnit.SECONDS);
+		} finally {
+			server.close();
+		}
+	}
+
+	@Test
+	public void failsSendsAfterDisconnect() throws Exception {
+		final LoopbackServer server = new LoopbackServer();
+		try {
+			final AsyncConnection connection = tested.connect(server.getAddress(), 10, BackpressurePolicy.REJECT);
+			connection.disconnect().get(10, TimeUnit.SECONDS);
+
+			assertCompletedWith(IllegalStateException.class, connection.send(new byte[1]));
+		} finally {
+			server.close();
+		}
+	}
+
+	private static void assertCompletedWith(Class<? extends Throwable> expected, CompletableFuture<Void> future) throws Exception {
+		try {
+			future.get(10, TimeUnit.SECONDS);
+			fail("Expected " + expected.getName());
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause().toString(), expected.isInstance(e.getCause()));
+		}
+	}
+
+	private static void assertStillRunning(Future<?> future) throws Exception {
+		try {
+			future.get(200, TimeUnit.MILLISECONDS);
+			fail("Expected the send to block");
+		} catch (TimeoutException e) {
+			// Expected
+		}
+	}
+
+	/**
+	 * A peer that accepts a connection but doesn't read until it's told to.
+	 */
+	private static class StalledServer {
+		private final ServerSocket serverSocket;
+
+		private Socket socket;
+
+		StalledServer() throws Exception {
+			serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+		}
+
+		InetSocketAddress getAddress() {
+			return new InetSocketAddress(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+		}
+
+		void drain() throws Exception {
+			socket = serverSocket.accept();
+			final InputStream in = socket.getInputStream();
+			final Thread reader = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					final byte[] buffer = new byte[65536];
+					try {
+						while (in.read(buffer) >= 0) {
+							// Discard
+						}
+					} catch (Exception e) {
+						// The test is over
+					}
+				}
+			});
+			reader.setDaemon(true);
+			reader.start();
+		}
+
+		void close() throws Exception {
+			if (socket != null) {
+				socket.close();
+			}
+			serverSocket.close();
+		}
+	}
+}
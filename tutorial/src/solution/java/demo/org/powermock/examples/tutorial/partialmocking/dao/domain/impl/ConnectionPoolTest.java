@@ -0,0 +1,211 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.partialmocking.dao.domain.impl;
+
+import demo.org.powermock.examples.tutorial.partialmocking.dao.domain.Connection;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for the {@link ConnectionPool} class.
+ */
+public class ConnectionPoolTest {
+
+	private final ServiceArtifact serviceArtifact = new ServiceArtifact(1, "artifact");
+
+	private final List<RecordingConnection> opened = new ArrayList<RecordingConnection>();
+
+	private final ConnectionPool.ConnectionFactory connectionFactory = new ConnectionPool.ConnectionFactory() {
+		@Override
+		public Connection connect(ServiceArtifact serviceArtifact) {
+			final RecordingConnection connection = new RecordingConnection();
+			opened.add(connection);
+			return connection;
+		}
+	};
+
+	private ConnectionPool tested;
+
+	@Before
+	public void setUp() {
+		tested = new ConnectionPool(connectionFactory, 2, 60000);
+	}
+
+	@Test
+	public void reusesReturnedConnection() throws Exception {
+		tested.acquire(serviceArtifact).disconnect();
+		final Connection connection = tested.acquire(serviceArtifact);
+		connection.send(new byte[3]);
+
+		assertEquals(1, opened.size());
+		assertEquals(3, opened.get(0).bytesSent);
+		assertFalse(opened.get(0).disconnected);
+	}
+
+	@Test
+	public void limitsConnectionsPerArtifact() throws Exception {
+		final Connection first = tested.acquire(serviceArtifact);
+		tested.acquire(serviceArtifact);
+
+		assertNull(tested.tryAcquire(serviceArtifact, 10, TimeUnit.MILLISECONDS));
+		assertNotNull(tested.tryAcquire(new ServiceArtifact(2, "other"), 10, TimeUnit.MILLISECONDS));
+
+		first.disconnect();
+		assertNotNull(tested.tryAcquire(serviceArtifact, 10, TimeUnit.MILLISECONDS));
+		assertEquals(3, opened.size());
+	}
+
+	@Test
+	public void evictsIdleConnections() throws Exception {
+		tested = new ConnectionPool(connectionFactory, 2, 1);
+		tested.acquire(serviceArtifact).disconnect();
+		Thread.sleep(5);
+
+		tested.evictIdle();
+
+		assertEquals(0, tested.getIdleCount(serviceArtifact));
+		assertTrue(opened.get(0).disconnected);
+	}
+
+	@Test
+	public void flushesConnectionsWhenReturned() throws Exception {
+		final RecordingChannel channel = new RecordingChannel();
+		tested = new ConnectionPool(new ConnectionPool.ConnectionFactory() {
+			@Override
+			public Connection connect(ServiceArtifact serviceArtifact) {
+				return new PipelinedConnection(channel);
+			}
+		}, 1, 60000);
+
+		final Connection connection = tested.acquire(serviceArtifact);
+		connection.send(new byte[] { 1, 2 });
+		assertEquals(0, channel.written.size());
+		connection.disconnect();
+
+		assertEquals(2, channel.written.size());
+		assertEquals(1, tested.getIdleCount(serviceArtifact));
+	}
+
+	@Test
+	public void discardsConnectionThatFailedToSend() throws Exception {
+		final Connection connection = tested.acquire(serviceArtifact);
+		opened.get(0).failing = true;
+		try {
+			connection.send(new byte[1]);
+			fail("Should throw IllegalStateException");
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+		connection.disconnect();
+
+		assertTrue(opened.get(0).disconnected);
+		assertEquals(0, tested.getIdleCount(serviceArtifact));
+		tested.acquire(serviceArtifact).send(new byte[2]);
+		assertEquals(2, opened.size());
+		assertEquals(2, opened.get(1).bytesSent);
+	}
+
+	@Test
+	public void discardsPipelinedConnectionThatFailedToWrite() throws Exception {
+		final RecordingChannel channel = new RecordingChannel();
+		tested = new ConnectionPool(new ConnectionPool.ConnectionFactory() {
+			@Override
+			public Connection connect(ServiceArtifact serviceArtifact) {
+				return new PipelinedConnection(channel, 1, 1024);
+			}
+		}, 1, 60000);
+		channel.failure = new IOException("connection reset");
+
+		final Connection connection = tested.acquire(serviceArtifact);
+		try {
+			connection.send(new byte[] { 1 });
+			fail("Should throw IllegalStateException");
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+		connection.disconnect();
+
+		assertFalse(channel.open);
+		assertEquals(0, tested.getIdleCount(serviceArtifact));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void returnedConnectionCannotBeUsed() throws Exception {
+		final Connection connection = tested.acquire(serviceArtifact);
+		connection.disconnect();
+		connection.send(new byte[1]);
+	}
+
+	@Test
+	public void closeDisconnectsIdleAndReturnedConnections() throws Exception {
+		final Connection inUse = tested.acquire(serviceArtifact);
+		tested.acquire(serviceArtifact).disconnect();
+
+		tested.close();
+		assertTrue(opened.get(1).disconnected);
+		assertFalse(opened.get(0).disconnected);
+		inUse.disconnect();
+
+		assertTrue(opened.get(0).disconnected);
+	}
+
+	private static class RecordingConnection implements Connection {
+		int bytesSent;
+
+		boolean failing;
+
+		boolean disconnected;
+
+		@Override
+		public void disconnect() {
+			disconnected = true;
+		}
+
+		@Override
+		public void send(byte[] data) {
+			if (failing) {
+				throw new IllegalStateException("Failed to send");
+			}
+			bytesSent += data.length;
+		}
+
+		@Override
+		public void send(ByteBuffer data) {
+			bytesSent += data.remaining();
+		}
+
+		@Override
+		public void send(ByteBuffer[] data) {
+			for (ByteBuffer buffer : data) {
+				send(buffer);
+			}
+		}
+
+		@Override
+		public void sendFile(Path file, long offset, long length) {
+			bytesSent += length;
+		}
+	}
+}
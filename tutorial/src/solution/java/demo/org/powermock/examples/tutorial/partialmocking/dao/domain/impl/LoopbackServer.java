@@ -0,0 +1,79 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.partialmocking.dao.domain.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A server on the loopback interface that accepts one connection and reads
+ * everything sent to it until the connection is closed.
+ */
+class LoopbackServer {
+
+	private final ServerSocket serverSocket;
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+	private final Future<byte[]> received;
+
+	LoopbackServer() throws IOException {
+		serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+		received = executor.submit(new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws Exception {
+				final Socket socket = serverSocket.accept();
+				try {
+					final InputStream in = socket.getInputStream();
+					final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+					final byte[] buffer = new byte[8192];
+					for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+						bytes.write(buffer, 0, read);
+					}
+					return bytes.toByteArray();
+				} finally {
+					socket.close();
+				}
+			}
+		});
+	}
+
+	InetSocketAddress getAddress() {
+		return new InetSocketAddress(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+	}
+
+	/**
+	 * @return Everything received once the client has disconnected.
+	 */
+	byte[] getReceived() throws Exception {
+		return received.get(10, TimeUnit.SECONDS);
+	}
+
+	void close() throws IOException {
+		executor.shutdownNow();
+		serverSocket.close();
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.partialmocking.dao.domain.impl;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for the {@link PipelinedConnection} class.
+ */
+public class PipelinedConnectionTest {
+
+	@Test
+	public void writesFullBatchWithOneGatheringWrite() throws Exception {
+		final RecordingChannel channel = new RecordingChannel();
+		final PipelinedConnection tested = new PipelinedConnection(channel, 3, 1024);
+
+		tested.send(new byte[] { 1 });
+		tested.send(new byte[] { 2, 3 });
+		assertEquals(0, channel.writes);
+		tested.send(new byte[] { 4 });
+
+		assertEquals(1, channel.writes);
+		assertArrayEquals(new byte[] { 1, 2, 3, 4 }, channel.written.toByteArray());
+	}
+
+	@Test
+	public void writesBatchWhenByteLimitIsReached() throws Exception {
+		final RecordingChannel channel = new RecordingChannel();
+		final PipelinedConnection tested = new PipelinedConnection(channel, 64, 4);
+
+		tested.send(new byte[3]);
+		assertEquals(0, channel.writes);
+		tested.send(new byte[1]);
+
+		assertEquals(4, channel.written.size());
+	}
+
+	@Test
+	public void completesPartialWrites() throws Exception {
+		final RecordingChannel channel = new RecordingChannel(2);
+		final PipelinedConnection tested = new PipelinedConnection(channel);
+
+		tested.send(new byte[] { 1, 2, 3 });
+		tested.send(new byte[] { 4, 5 });
+		tested.flush();
+
+		assertArrayEquals(new byte[] { 1, 2, 3, 4, 5 }, channel.written.toByteArray());
+		assertEquals(3, channel.writes);
+	}
+
+	@Test
+	public void disconnectWritesQueuedPayloadsAndClosesChannel() throws Exception {
+		final RecordingChannel channel = new RecordingChannel();
+		final PipelinedConnection tested = new PipelinedConnection(channel);
+
+		tested.send(new byte[] { 1 });
+		tested.disconnect();
+
+		assertEquals(1, channel.written.size());
+		assertFalse(channel.open);
+	}
+
+	@Test
+	public void queuesBuffersAndWritesThemBeforeFile() throws Exception {
+		final RecordingChannel channel = new RecordingChannel();
+		final PipelinedConnection tested = new PipelinedConnection(channel);
+		final File file = File.createTempFile("pipelined", ".bin");
+		try {
+			final FileOutputStream out = new FileOutputStream(file);
+			try {
+				out.write(new byte[] { 9, 8, 7, 6 });
+			} finally {
+				out.close();
+			}
+
+			tested.send(ByteBuffer.wrap(new byte[] { 1 }));
+			tested.send(new ByteBuffer[] { ByteBuffer.wrap(new byte[] { 2 }), ByteBuffer.wrap(new byte[] { 3 }) });
+			tested.sendFile(file.toPath(), 1, 2);
+		} finally {
+			file.delete();
+		}
+
+		assertArrayEquals(new byte[] { 1, 2, 3, 8, 7 }, channel.written.toByteArray());
+	}
+
+	@Test
+	public void refusesToSendAfterFailedWrite() throws Exception {
+		final RecordingChannel channel = new RecordingChannel();
+		final IOException failure = new IOException("connection reset");
+		channel.failure = failure;
+		final PipelinedConnection tested = new PipelinedConnection(channel, 2, 1024);
+
+		tested.send(new byte[] { 1 });
+		try {
+			tested.send(new byte[] { 2 });
+			fail("Should throw IllegalStateException");
+		} catch (IllegalStateException e) {
+			assertSame(failure, e.getCause());
+		}
+		channel.failure = null;
+		for (int i = 0; i < 3; i++) {
+			try {
+				tested.send(new byte[] { 3 });
+				fail("Should throw IllegalStateException");
+			} catch (IllegalStateException e) {
+				assertEquals("The connection failed to send and can't be used anymore", e.getMessage());
+				assertSame(failure, e.getCause());
+			}
+		}
+		tested.disconnect();
+
+		assertEquals(0, channel.written.size());
+		assertFalse(channel.open);
+	}
+
+	@Test
+	public void sendsPayloadsToLoopbackServer() throws Exception {
+		final LoopbackServer server = new LoopbackServer();
+		try {
+			final PipelinedConnection tested = new PipelinedConnection(SocketChannel.open(server.getAddress()), 16, 1024);
+			final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			for (int i = 0; i < 1000; i++) {
+				final byte[] payload = ("payload " + i + ";").getBytes("UTF-8");
+				tested.send(payload);
+				expected.write(payload);
+			}
+			tested.disconnect();
+
+			assertArrayEquals(expected.toByteArray(), server.getReceived());
+		} finally {
+			server.close();
+		}
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.partialmocking.dao.domain.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+/**
+ * A channel that keeps everything written to it and counts the writes.
+ * Writes at most <code>maxBytesPerWrite</code> bytes at a time to simulate
+ * partial writes, and throws <code>failure</code> once it's set.
+ */
+class RecordingChannel implements GatheringByteChannel {
+
+	final ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+	int writes;
+
+	boolean open = true;
+
+	IOException failure;
+
+	private final int maxBytesPerWrite;
+
+	RecordingChannel() {
+		this(Integer.MAX_VALUE);
+	}
+
+	RecordingChannel(int maxBytesPerWrite) {
+		this.maxBytesPerWrite = maxBytesPerWrite;
+	}
+
+	@Override
+	public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+		if (failure != null) {
+			throw failure;
+		}
+		writes++;
+		long count = 0;
+		for (int i = offset; i < offset + length && count < maxBytesPerWrite; i++) {
+			while (srcs[i].hasRemaining() && count < maxBytesPerWrite) {
+				written.write(srcs[i].get());
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public long write(ByteBuffer[] srcs) throws IOException {
+		return write(srcs, 0, srcs.length);
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		return (int) write(new ByteBuffer[] { src });
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public void close() {
+		open = false;
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.partialmocking.dao.domain.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for the {@link SocketChannelConnection} class.
+ */
+public class SocketChannelConnectionTest {
+
+	private LoopbackServer server;
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new LoopbackServer();
+		file = File.createTempFile("artifact", ".bin");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		server.close();
+		file.delete();
+	}
+
+	@Test
+	public void sendsArraysBuffersAndFilesInOrder() throws Exception {
+		final byte[] content = new byte[256 * 1024];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) i;
+		}
+		final FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
+		final ByteBuffer direct = ByteBuffer.allocateDirect(3);
+		direct.put(new byte[] { 4, 5, 6 }).flip();
+
+		final SocketChannelConnection tested = SocketChannelConnection.open(server.getAddress());
+		tested.send(new byte[] { 1, 2, 3 });
+		tested.send(direct);
+		tested.send(new ByteBuffer[] { ByteBuffer.wrap(new byte[] { 7 }), ByteBuffer.wrap(new byte[] { 8, 9 }) });
+		tested.sendFile(file.toPath(), 1000, content.length - 2000);
+		tested.disconnect();
+
+		final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		expected.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9 });
+		expected.write(content, 1000, content.length - 2000);
+		assertArrayEquals(expected.toByteArray(), server.getReceived());
+		assertFalse(direct.hasRemaining());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsRangeBeyondEndOfFile() throws Exception {
+		final SocketChannelConnection tested = SocketChannelConnection.open(server.getAddress());
+		try {
+			tested.sendFile(file.toPath(), 0, 1);
+		} finally {
+			tested.disconnect();
+		}
+	}
+}
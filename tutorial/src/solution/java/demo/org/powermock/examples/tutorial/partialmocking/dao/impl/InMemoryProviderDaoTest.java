@@ -0,0 +1,99 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.partialmocking.dao.impl;
+
+import demo.org.powermock.examples.tutorial.partialmocking.dao.ProviderChanges;
+import demo.org.powermock.examples.tutorial.partialmocking.dao.domain.impl.ServiceArtifact;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for the {@link InMemoryProviderDao} class.
+ */
+public class InMemoryProviderDaoTest {
+
+	private InMemoryProviderDao tested;
+
+	@Before
+	public void setUp() {
+		tested = new InMemoryProviderDao(4);
+		tested.save(new ServiceArtifact(1, "first"));
+		tested.save(new ServiceArtifact(2, "second"));
+	}
+
+	@Test
+	public void reportsNetChangesSinceVersion() throws Exception {
+		final long version = tested.getVersion();
+		tested.save(new ServiceArtifact(3, "third"));
+		tested.save(new ServiceArtifact(1, "renamed"));
+		tested.remove(2);
+
+		final ProviderChanges changes = tested.getChangesSince(version);
+
+		assertFalse(changes.isFullReloadRequired());
+		assertEquals(tested.getVersion(), changes.getVersion());
+		assertEquals(Collections.singleton(new ServiceArtifact(3, "third")), changes.getAdded());
+		assertEquals(Collections.singleton(new ServiceArtifact(1, "renamed")), changes.getModified());
+		assertEquals(Collections.singleton(new ServiceArtifact(2, "second")), changes.getRemoved());
+	}
+
+	@Test
+	public void mergesSeveralChangesOfOneArtifact() throws Exception {
+		final long version = tested.getVersion();
+		tested.save(new ServiceArtifact(3, "third"));
+		tested.remove(3);
+		tested.remove(2);
+		tested.save(new ServiceArtifact(2, "second again"));
+
+		final ProviderChanges changes = tested.getChangesSince(version);
+
+		assertTrue(changes.getAdded().isEmpty());
+		assertTrue(changes.getRemoved().isEmpty());
+		assertEquals(Collections.singleton(new ServiceArtifact(2, "second again")), changes.getModified());
+	}
+
+	@Test
+	public void reportsNoChangesForCurrentVersion() throws Exception {
+		assertTrue(tested.getChangesSince(tested.getVersion()).isEmpty());
+	}
+
+	@Test
+	public void requiresFullReloadWhenChangeLogHasMovedOn() throws Exception {
+		final long version = tested.getVersion();
+		for (int i = 0; i < 5; i++) {
+			tested.save(new ServiceArtifact(10 + i, "artifact"));
+		}
+
+		final ProviderChanges changes = tested.getChangesSince(version);
+
+		assertTrue(changes.isFullReloadRequired());
+		assertEquals(tested.getVersion(), changes.getVersion());
+		assertFalse(tested.getChangesSince(tested.getVersion() - 4).isFullReloadRequired());
+		assertTrue(tested.getChangesSince(tested.getVersion() + 1).isFullReloadRequired());
+	}
+
+	@Test
+	public void removingUnknownArtifactIsNotAChange() throws Exception {
+		final long version = tested.getVersion();
+
+		assertFalse(tested.remove(42));
+		assertEquals(version, tested.getVersion());
+	}
+}
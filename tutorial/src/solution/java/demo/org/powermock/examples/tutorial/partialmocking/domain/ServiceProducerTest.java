@@ -0,0 +1,85 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.partialmocking.domain;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for the {@link ServiceProducer} class.
+ */
+public class ServiceProducerTest {
+
+	private final DataProducer first = new DataProducer(1, "first");
+
+	private final DataProducer second = new DataProducer(2, "second");
+
+	private final DataProducer third = new DataProducer(2, "third");
+
+	@Test
+	public void dataProducersBehaveLikeHashSet() throws Exception {
+		final ServiceProducer tested = new ServiceProducer(1, "producer", third, first, null, second, new DataProducer(1, "first"), null);
+		final Set<DataProducer> expected = new HashSet<DataProducer>(Arrays.asList(first, second, third, null));
+
+		assertEquals(expected, tested.getDataProducers());
+		assertEquals(tested.getDataProducers(), expected);
+		assertEquals(expected.hashCode(), tested.getDataProducers().hashCode());
+		assertTrue(tested.getDataProducers().contains(new DataProducer(2, "third")));
+		assertTrue(tested.getDataProducers().contains(null));
+		assertFalse(tested.getDataProducers().contains(new DataProducer(2, "fourth")));
+		assertFalse(tested.getDataProducers().contains("first"));
+	}
+
+	@Test
+	public void iteratesDataProducersInIdAndNameOrder() throws Exception {
+		final ServiceProducer tested = new ServiceProducer(1, "producer", third, second, first);
+
+		assertEquals(Arrays.asList(first, second, third), Arrays.asList(tested.getDataProducers().toArray()));
+	}
+
+	@Test
+	public void hashCodeMatchesSetBasedDefinition() throws Exception {
+		final ServiceProducer tested = new ServiceProducer(7, "producer", first, second);
+		final int expected = 31 * new DataProducer(7, "producer").hashCode() + new HashSet<DataProducer>(Arrays.asList(first, second)).hashCode();
+
+		assertEquals(expected, tested.hashCode());
+	}
+
+	@Test
+	public void equalityIgnoresDataProducerOrder() throws Exception {
+		final ServiceProducer tested = new ServiceProducer(1, "producer", first, second, third);
+
+		assertEquals(new ServiceProducer(1, "producer", third, first, second, first), tested);
+		assertEquals(new ServiceProducer(1, "producer", third, first, second).hashCode(), tested.hashCode());
+		assertFalse(tested.equals(new ServiceProducer(1, "producer", first, second)));
+		assertFalse(tested.equals(new ServiceProducer(2, "producer", first, second, third)));
+	}
+
+	@Test
+	public void serviceProducerWithoutDataProducersHasEmptySet() throws Exception {
+		assertTrue(new ServiceProducer(1, "producer").getDataProducers().isEmpty());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void dataProducersAreReadOnly() throws Exception {
+		new ServiceProducer(1, "producer", first).getDataProducers().clear();
+	}
+}
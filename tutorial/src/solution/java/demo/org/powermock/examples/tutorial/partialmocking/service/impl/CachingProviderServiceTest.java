@@ -0,0 +1,256 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.partialmocking.service.impl;
+
+import demo.org.powermock.examples.tutorial.partialmocking.domain.ServiceProducer;
+import demo.org.powermock.examples.tutorial.partialmocking.service.ProviderService;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for the {@link CachingProviderService} class.
+ */
+public class CachingProviderServiceTest {
+
+	private static final Executor SAME_THREAD = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	private final CountingProviderService delegate = new CountingProviderService();
+
+	@Test
+	public void returnsCachedResultWithinTtl() throws Exception {
+		final CachingProviderService tested = new CachingProviderService(delegate, 60000, 60000, SAME_THREAD);
+
+		final ServiceProducer first = tested.getServiceProvider(1);
+		final ServiceProducer second = tested.getServiceProvider(1);
+
+		assertSame(first, second);
+		assertEquals(1, delegate.calls.get());
+		assertEquals(1, tested.getHitCount());
+		assertEquals(1, tested.getMissCount());
+		assertEquals(1, tested.getLoadCount());
+	}
+
+	@Test
+	public void cachesMissingServiceProviders() throws Exception {
+		final CachingProviderService tested = new CachingProviderService(delegate, 60000, 60000, SAME_THREAD);
+
+		assertNull(tested.getServiceProvider(-1));
+		assertNull(tested.getServiceProvider(-1));
+
+		assertEquals(1, delegate.calls.get());
+	}
+
+	@Test
+	public void refreshesAheadWhileReturningCachedResult() throws Exception {
+		final CachingProviderService tested = new CachingProviderService(delegate, 60000, 0, SAME_THREAD);
+
+		final ServiceProducer first = tested.getServiceProvider(1);
+		final ServiceProducer cached = tested.getServiceProvider(1);
+		final ServiceProducer refreshed = tested.getServiceProvider(1);
+
+		assertSame(first, cached);
+		assertNotSame(first, refreshed);
+		assertEquals(3, delegate.calls.get());
+		assertEquals(1, tested.getMissCount());
+	}
+
+	@Test
+	public void reloadsExpiredResult() throws Exception {
+		final CachingProviderService tested = new CachingProviderService(delegate, 1, 1, SAME_THREAD);
+
+		tested.getServiceProvider(1);
+		Thread.sleep(5);
+		tested.getServiceProvider(1);
+
+		assertEquals(2, delegate.calls.get());
+		assertEquals(2, tested.getMissCount());
+	}
+
+	@Test
+	public void collapsesConcurrentMissesIntoOneLoad() throws Exception {
+		final CountDownLatch loading = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountingProviderService blocking = new CountingProviderService() {
+			@Override
+			public ServiceProducer getServiceProvider(int id) {
+				loading.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return super.getServiceProvider(id);
+			}
+		};
+		final CachingProviderService tested = new CachingProviderService(blocking, 60000, 60000, SAME_THREAD);
+		final ExecutorService readers = Executors.newFixedThreadPool(2);
+		try {
+			final Callable<ServiceProducer> read = new Callable<ServiceProducer>() {
+				@Override
+				public ServiceProducer call() {
+					return tested.getServiceProvider(1);
+				}
+			};
+			final Future<ServiceProducer> first = readers.submit(read);
+			assertTrue(loading.await(5, TimeUnit.SECONDS));
+			final Future<ServiceProducer> second = readers.submit(read);
+			Thread.sleep(50);
+			release.countDown();
+
+			assertSame(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+			assertEquals(1, blocking.calls.get());
+		} finally {
+			readers.shutdownNow();
+		}
+	}
+
+	@Test
+	public void returnsEmptySetForNullResult() throws Exception {
+		final CachingProviderService tested = new CachingProviderService(delegate, 60000, 60000, SAME_THREAD);
+
+		assertSame(Collections.emptySet(), tested.getAllServiceProviders());
+	}
+
+	@Test
+	public void dropsLeastRecentlyReadResultsBeyondMaximumSize() throws Exception {
+		final CachingProviderService tested = new CachingProviderService(delegate, 60000, 60000, SAME_THREAD, 8);
+
+		for (int id = 0; id < 8; id++) {
+			tested.getServiceProvider(id);
+			Thread.sleep(1);
+		}
+		tested.getServiceProvider(0);
+		tested.getServiceProvider(8);
+
+		assertEquals(6, tested.size());
+		tested.getServiceProvider(0);
+		tested.getServiceProvider(8);
+		assertEquals(9, delegate.calls.get());
+		tested.getServiceProvider(1);
+		assertEquals(10, delegate.calls.get());
+		for (int id = -1; id > -1000; id--) {
+			tested.getServiceProvider(id);
+		}
+		assertTrue(tested.size() <= 8);
+	}
+
+	@Test
+	public void refreshesAgainAfterRejectedRefresh() throws Exception {
+		final AtomicInteger rejected = new AtomicInteger();
+		final CachingProviderService tested = new CachingProviderService(delegate, 60000, 0, new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				if (rejected.getAndIncrement() == 0) {
+					throw new RejectedExecutionException("shutting down");
+				}
+				command.run();
+			}
+		});
+
+		final ServiceProducer first = tested.getServiceProvider(1);
+		assertSame(first, tested.getServiceProvider(1));
+		assertSame(first, tested.getServiceProvider(1));
+
+		assertEquals(2, rejected.get());
+		assertEquals(2, delegate.calls.get());
+		assertNotSame(first, tested.getServiceProvider(1));
+	}
+
+	@Test
+	public void discardsResultLoadedBeforeInvalidateAll() throws Exception {
+		final CountDownLatch loading = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountingProviderService blocking = new CountingProviderService() {
+			@Override
+			public ServiceProducer getServiceProvider(int id) {
+				if (calls.get() == 0) {
+					loading.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				return super.getServiceProvider(id);
+			}
+		};
+		final CachingProviderService tested = new CachingProviderService(blocking, 60000, 60000, SAME_THREAD);
+		final ExecutorService readers = Executors.newSingleThreadExecutor();
+		try {
+			final Future<ServiceProducer> stale = readers.submit(new Callable<ServiceProducer>() {
+				@Override
+				public ServiceProducer call() {
+					return tested.getServiceProvider(1);
+				}
+			});
+			assertTrue(loading.await(5, TimeUnit.SECONDS));
+			tested.invalidateAll();
+			release.countDown();
+			final ServiceProducer staleProducer = stale.get(5, TimeUnit.SECONDS);
+
+			final ServiceProducer fresh = tested.getServiceProvider(1);
+			assertNotSame(staleProducer, fresh);
+			assertSame(fresh, tested.getServiceProvider(1));
+			assertEquals(2, blocking.calls.get());
+		} finally {
+			readers.shutdownNow();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsNonPositiveMaximumSize() throws Exception {
+		new CachingProviderService(delegate, 1000, 1000, SAME_THREAD, 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsRefreshAfterTtl() throws Exception {
+		new CachingProviderService(delegate, 1000, 2000, SAME_THREAD);
+	}
+
+	private static class CountingProviderService implements ProviderService {
+		final AtomicInteger calls = new AtomicInteger();
+
+		@Override
+		public Set<ServiceProducer> getAllServiceProviders() {
+			calls.incrementAndGet();
+			return null;
+		}
+
+		@Override
+		public ServiceProducer getServiceProvider(int id) {
+			calls.incrementAndGet();
+			return id < 0 ? null : new ServiceProducer(id, "producer");
+		}
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.partialmocking.service.impl;
+
+import demo.org.powermock.examples.tutorial.partialmocking.dao.ProviderChanges;
+import demo.org.powermock.examples.tutorial.partialmocking.dao.ProviderDao;
+import demo.org.powermock.examples.tutorial.partialmocking.dao.domain.impl.ServiceArtifact;
+import demo.org.powermock.examples.tutorial.partialmocking.domain.ServiceProducer;
+import org.easymock.IAnswer;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+import static org.powermock.reflect.Whitebox.setInternalState;
+
+/**
+ * Unit test for the {@link IndexedProviderServiceImpl} class.
+ */
+public class IndexedProviderServiceImplTest {
+
+	private IndexedProviderServiceImpl tested;
+	private ProviderDao providerDaoMock;
+
+	@Before
+	public void setUp() {
+		tested = new IndexedProviderServiceImpl();
+		providerDaoMock = createMock(ProviderDao.class);
+
+		setInternalState(tested, providerDaoMock);
+	}
+
+	@Test
+	public void loadsProducersFromDaoOnlyOnce() throws Exception {
+		expect(providerDaoMock.getVersion()).andReturn(0L);
+		expect(providerDaoMock.getAllServiceProducers()).andReturn(artifacts(new ServiceArtifact(1, "first"), new ServiceArtifact(2, "second")));
+		replay(providerDaoMock);
+
+		assertEquals(new ServiceProducer(2, "second"), tested.getServiceProvider(2));
+		assertNull(tested.getServiceProvider(3));
+		assertEquals(new HashSet<ServiceProducer>(Arrays.asList(new ServiceProducer(1, "first"), new ServiceProducer(2, "second"))),
+				tested.getAllServiceProviders());
+
+		verify(providerDaoMock);
+	}
+
+	@Test
+	public void appliesChangesToLiveView() throws Exception {
+		expect(providerDaoMock.getVersion()).andReturn(0L);
+		expect(providerDaoMock.getAllServiceProducers()).andReturn(artifacts(new ServiceArtifact(1, "first")));
+		replay(providerDaoMock);
+
+		final Set<ServiceProducer> allServiceProviders = tested.getAllServiceProviders();
+		tested.serviceArtifactChanged(new ServiceArtifact(2, "second"));
+		tested.serviceArtifactChanged(new ServiceArtifact(1, "renamed"));
+		tested.serviceArtifactRemoved(2);
+
+		assertEquals(1, allServiceProviders.size());
+		assertTrue(allServiceProviders.contains(new ServiceProducer(1, "renamed")));
+		assertFalse(allServiceProviders.contains(new ServiceProducer(1, "first")));
+		assertEquals(new ServiceProducer(1, "renamed"), tested.getServiceProvider(1));
+		verify(providerDaoMock);
+	}
+
+	@Test
+	public void reloadRemovesProducersNoLongerInDao() throws Exception {
+		expect(providerDaoMock.getVersion()).andReturn(0L);
+		expect(providerDaoMock.getAllServiceProducers()).andReturn(artifacts(new ServiceArtifact(1, "first"), new ServiceArtifact(2, "second")));
+		expect(providerDaoMock.getVersion()).andReturn(0L);
+		expect(providerDaoMock.getAllServiceProducers()).andReturn(artifacts(new ServiceArtifact(2, "second")));
+		replay(providerDaoMock);
+
+		tested.reload();
+		tested.reload();
+
+		assertNull(tested.getServiceProvider(1));
+		assertEquals(1, tested.getAllServiceProviders().size());
+		verify(providerDaoMock);
+	}
+
+	@Test
+	public void treatsNullFromDaoAsNoProducers() throws Exception {
+		expect(providerDaoMock.getVersion()).andReturn(0L);
+		expect(providerDaoMock.getAllServiceProducers()).andReturn(null);
+		replay(providerDaoMock);
+
+		assertTrue(tested.getAllServiceProviders().isEmpty());
+		verify(providerDaoMock);
+	}
+
+	@Test
+	public void refreshAppliesChangesSinceLastLoad() throws Exception {
+		expect(providerDaoMock.getVersion()).andReturn(5L);
+		expect(providerDaoMock.getAllServiceProducers()).andReturn(artifacts(new ServiceArtifact(1, "first"), new ServiceArtifact(2, "second")));
+		expect(providerDaoMock.getChangesSince(5L)).andReturn(
+				new ProviderChanges(7L, artifacts(new ServiceArtifact(3, "third")), artifacts(new ServiceArtifact(1, "renamed")),
+						artifacts(new ServiceArtifact(2, "second"))));
+		expect(providerDaoMock.getChangesSince(7L)).andReturn(new ProviderChanges(7L, artifacts(), artifacts(), artifacts()));
+		replay(providerDaoMock);
+
+		tested.reload();
+		tested.refresh();
+		tested.refresh();
+
+		assertEquals(new HashSet<ServiceProducer>(Arrays.asList(new ServiceProducer(1, "renamed"), new ServiceProducer(3, "third"))),
+				tested.getAllServiceProviders());
+		verify(providerDaoMock);
+	}
+
+	@Test
+	public void refreshReloadsWhenChangesAreUnknown() throws Exception {
+		expect(providerDaoMock.getVersion()).andReturn(5L);
+		expect(providerDaoMock.getAllServiceProducers()).andReturn(artifacts(new ServiceArtifact(1, "first")));
+		expect(providerDaoMock.getChangesSince(5L)).andReturn(ProviderChanges.fullReload(2000L));
+		expect(providerDaoMock.getVersion()).andReturn(2000L);
+		expect(providerDaoMock.getAllServiceProducers()).andReturn(artifacts(new ServiceArtifact(2, "second")));
+		replay(providerDaoMock);
+
+		tested.reload();
+		tested.refresh();
+
+		assertNull(tested.getServiceProvider(1));
+		assertNotNull(tested.getServiceProvider(2));
+		verify(providerDaoMock);
+	}
+
+	@Test
+	public void changePushedDuringReloadIsKept() throws Exception {
+		final Thread pusher = new Thread() {
+			@Override
+			public void run() {
+				tested.serviceArtifactChanged(new ServiceArtifact(1, "renamed"));
+			}
+		};
+		expect(providerDaoMock.getVersion()).andReturn(0L);
+		expect(providerDaoMock.getAllServiceProducers()).andAnswer(new IAnswer<Set<ServiceArtifact>>() {
+			@Override
+			public Set<ServiceArtifact> answer() throws Throwable {
+				// Push the change while the reload holds the state it loaded
+				pusher.start();
+				while (pusher.isAlive() && pusher.getState() != Thread.State.BLOCKED) {
+					Thread.yield();
+				}
+				return artifacts(new ServiceArtifact(1, "first"));
+			}
+		});
+		replay(providerDaoMock);
+
+		tested.reload();
+		pusher.join();
+
+		assertEquals(new ServiceProducer(1, "renamed"), tested.getServiceProvider(1));
+		verify(providerDaoMock);
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void allServiceProvidersIsReadOnly() throws Exception {
+		expect(providerDaoMock.getVersion()).andReturn(0L);
+		expect(providerDaoMock.getAllServiceProducers()).andReturn(artifacts(new ServiceArtifact(1, "first")));
+		replay(providerDaoMock);
+
+		tested.getAllServiceProviders().clear();
+	}
+
+	private static Set<ServiceArtifact> artifacts(ServiceArtifact... serviceArtifacts) {
+		return new HashSet<ServiceArtifact>(Arrays.asList(serviceArtifacts));
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.staticmocking.impl;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for the {@link IdGenerator} class.
+ */
+public class IdGeneratorTest {
+
+	@After
+	public void tearDown() {
+		IdGenerator.setBlockSize(1);
+	}
+
+	@Test
+	public void generatesIncreasingIdsWithinOneThread() throws Exception {
+		long previous = IdGenerator.generateNewId();
+		for (int i = 0; i < 100000; i++) {
+			final long next = IdGenerator.generateNewId();
+			assertTrue(next + " should be greater than " + previous, next > previous);
+			previous = next;
+		}
+	}
+
+	@Test
+	public void generatesUniqueIdsAcrossThreads() throws Exception {
+		assertUniqueAcrossThreads();
+	}
+
+	@Test
+	public void generatesUniqueIdsAcrossThreadsFromReservedBlocks() throws Exception {
+		IdGenerator.setBlockSize(4096);
+
+		assertUniqueAcrossThreads();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsBlockSizeBelowOne() throws Exception {
+		IdGenerator.setBlockSize(0);
+	}
+
+	private void assertUniqueAcrossThreads() throws InterruptedException {
+		final int threads = 8;
+		final int idsPerThread = 50000;
+		final Set<Long> ids = ConcurrentHashMap.newKeySet();
+		final CountDownLatch start = new CountDownLatch(1);
+		final Thread[] workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int j = 0; j < idsPerThread; j++) {
+						ids.add(IdGenerator.generateNewId());
+					}
+				}
+			};
+			workers[i].start();
+		}
+		start.countDown();
+		for (Thread worker : workers) {
+			worker.join();
+		}
+
+		assertEquals(threads * idsPerThread, ids.size());
+	}
+}
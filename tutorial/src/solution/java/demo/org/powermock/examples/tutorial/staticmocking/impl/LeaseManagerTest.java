@@ -0,0 +1,173 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.staticmocking.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.powermock.reflect.Whitebox.getInternalState;
+
+/**
+ * Unit test for the {@link LeaseManager} class.
+ */
+public class LeaseManagerTest {
+
+	private final List<long[]> batches = new ArrayList<long[]>();
+
+	private LeaseManager tested;
+
+	@Before
+	public void setUp() {
+		tested = new LeaseManager(10, new LeaseManager.ExpiryListener() {
+			@Override
+			public void expired(long[] ids) {
+				batches.add(ids);
+			}
+		});
+	}
+
+	@After
+	public void tearDown() {
+		tested.shutdown();
+	}
+
+	@Test
+	public void reportsExpiredLeasesInOneBatch() throws Exception {
+		tested.grant(1L, 60000);
+		tested.grant(2L, 60000);
+		tested.grant(3L, 3600000);
+
+		tested.expireDue(System.currentTimeMillis() + 120000);
+
+		assertEquals(1, batches.size());
+		assertArrayEquals(new long[] { 1L, 2L }, batches.get(0));
+		assertFalse(tested.renew(1L, 60000));
+		assertTrue(tested.renew(3L, 60000));
+	}
+
+	@Test
+	public void renewedLeaseOutlivesOriginalDeadline() throws Exception {
+		tested.grant(1L, 60000);
+		tested.renew(1L, 3600000);
+
+		tested.expireDue(System.currentTimeMillis() + 120000);
+
+		assertTrue(batches.isEmpty());
+	}
+
+	@Test
+	public void cancelledLeaseNeverExpires() throws Exception {
+		tested.grant(1L, 60000);
+		tested.cancel(1L);
+
+		tested.expireDue(System.currentTimeMillis() + 120000);
+
+		assertTrue(batches.isEmpty());
+		assertFalse(tested.renew(1L, 60000));
+	}
+
+	@Test
+	public void expiresLeasesOnBackgroundThread() throws Exception {
+		final CountDownLatch expired = new CountDownLatch(1);
+		final LeaseManager manager = new LeaseManager(5, new LeaseManager.ExpiryListener() {
+			@Override
+			public void expired(long[] ids) {
+				expired.countDown();
+			}
+		});
+		try {
+			manager.grant(1L, 20);
+			assertTrue(expired.await(5, TimeUnit.SECONDS));
+		} finally {
+			manager.shutdown();
+		}
+	}
+
+	@Test
+	public void renewalDoesNotLeaveTimeoutsBehind() throws Exception {
+		tested.grant(1L, 60000);
+		for (int i = 0; i < 100; i++) {
+			tested.renew(1L, 60000 + i);
+		}
+
+		assertEquals(1, ((TimingWheel) getInternalState(tested, TimingWheel.class)).size());
+	}
+
+	@Test
+	public void ticksOnlyWhileLeasesAreHeld() throws Exception {
+		assertFalse(tested.isTicking());
+		tested.grant(1L, 60000);
+		tested.grant(2L, 60000);
+		assertTrue(tested.isTicking());
+
+		tested.cancel(1L);
+		assertTrue(tested.isTicking());
+		tested.cancel(2L);
+		assertFalse(tested.isTicking());
+
+		tested.grant(3L, 60000);
+		tested.expireDue(System.currentTimeMillis() + 120000);
+		assertFalse(tested.isTicking());
+	}
+
+	@Test
+	public void sharesOneThreadBetweenManagers() throws Exception {
+		final int threadsBefore = countExpiryThreads();
+		final List<LeaseManager> managers = new ArrayList<LeaseManager>();
+		try {
+			for (int i = 0; i < 10; i++) {
+				final LeaseManager manager = new LeaseManager(5, new LeaseManager.ExpiryListener() {
+					@Override
+					public void expired(long[] ids) {
+					}
+				});
+				manager.grant(i, 60000);
+				managers.add(manager);
+			}
+			// Let the ticks start the thread
+			Thread.sleep(50);
+
+			assertTrue(countExpiryThreads() <= threadsBefore + 1);
+		} finally {
+			for (LeaseManager manager : managers) {
+				manager.shutdown();
+			}
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void rejectsLeasesAfterShutdown() throws Exception {
+		tested.shutdown();
+		tested.grant(1L, 1000);
+	}
+
+	private static int countExpiryThreads() {
+		int threads = 0;
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if ("service-lease-expiry".equals(thread.getName())) {
+				threads++;
+			}
+		}
+		return threads;
+	}
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.staticmocking.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+import static org.powermock.reflect.Whitebox.getInternalState;
+
+/**
+ * Unit test for the {@link ServiceIndex} class.
+ */
+public class ServiceIndexTest {
+
+	private ServiceIndex tested;
+
+	private final Object logService = new ArrayList<Object>();
+
+	private final Object httpService = "http";
+
+	private final Object httpsService = Integer.valueOf(443);
+
+	@Before
+	public void setUp() {
+		tested = new ServiceIndex();
+		tested.add(1L, "org.acme.log", logService);
+		tested.add(2L, "org.acme.http", httpService);
+		tested.add(3L, "org.acme.https", httpsService);
+	}
+
+	@Test
+	public void getsServiceByExactName() throws Exception {
+		assertSame(httpService, tested.get("org.acme.http"));
+		assertNull(tested.get("org.acme"));
+	}
+
+	@Test
+	public void findsServicesByPrefixInNameOrder() throws Exception {
+		assertEquals(Arrays.asList(httpService, httpsService), tested.findByPrefix("org.acme.http"));
+		assertEquals(Arrays.asList(httpService, httpsService, logService), tested.findByPrefix("org.acme."));
+		assertTrue(tested.findByPrefix("com.").isEmpty());
+	}
+
+	@Test
+	public void removesServiceById() throws Exception {
+		tested.remove(2L);
+
+		assertNull(tested.get("org.acme.http"));
+		assertEquals(Collections.singletonList(httpsService), tested.findByPrefix("org.acme.http"));
+	}
+
+	@Test
+	public void keepsRegistrationOrderForEqualNames() throws Exception {
+		final Object second = new Object();
+		tested.add(4L, "org.acme.log", second);
+
+		assertSame(logService, tested.get("org.acme.log"));
+		assertEquals(Arrays.asList(logService, second), tested.findByPrefix("org.acme.log"));
+	}
+
+	@Test
+	public void findsServicesMatchingFilter() throws Exception {
+		assertEquals(Arrays.asList(httpService, httpsService), tested.find("(name=org.acme.http*)"));
+		assertEquals(Collections.singletonList(logService), tested.find("(objectClass=java.util.List)"));
+		assertEquals(Arrays.asList(httpService, logService), tested.find("(|(name=*.log)(objectclass=java.lang.CharSequence))"));
+		assertEquals(Collections.singletonList(httpsService), tested.find("(&(name=org.acme.*)(!(service.id<=2)))"));
+		assertEquals(Arrays.asList(httpService, httpsService, logService), tested.find("(service.id=*)"));
+		assertEquals(Arrays.asList(httpService, httpsService, logService), tested.find(null));
+		assertTrue(tested.find("(name=org.acme.ftp)").isEmpty());
+	}
+
+	@Test
+	public void addsBatchInNameOrder() throws Exception {
+		final Object ftpService = new Object();
+		final Object secondLogService = new Object();
+		tested.addAll(Arrays.asList(new ServiceIndex.Entry(4L, "org.acme.log", secondLogService), new ServiceIndex.Entry(5L, null, new Object()),
+				new ServiceIndex.Entry(6L, "org.acme.ftp", ftpService)));
+
+		assertEquals(Arrays.asList(ftpService, httpService, httpsService, logService, secondLogService), tested.findByPrefix("org.acme."));
+		tested.remove(4L);
+		assertEquals(Collections.singletonList(logService), tested.findByPrefix("org.acme.log"));
+	}
+
+	@Test
+	public void rejectsBatchWithIndexedId() throws Exception {
+		try {
+			tested.addAll(Arrays.asList(new ServiceIndex.Entry(4L, "org.acme.ftp", new Object()), new ServiceIndex.Entry(2L, "org.acme.smtp", new Object())));
+			fail("Should throw IllegalStateException");
+		} catch (IllegalStateException e) {
+			assertEquals("A service with id 2 is indexed already", e.getMessage());
+		}
+
+		assertEquals(Arrays.asList(httpService, httpsService, logService), tested.findByPrefix("org.acme."));
+	}
+
+	@Test
+	public void removesBatchById() throws Exception {
+		tested.removeAll(new long[] { 3L, 42L, 1L });
+
+		assertEquals(Collections.singletonList(httpService), tested.findByPrefix("org.acme."));
+		assertNull(tested.get("org.acme.log"));
+	}
+
+	@Test
+	public void registersAndRemovesConcurrently() throws Exception {
+		final int writers = 4;
+		final int rounds = 500;
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicBoolean writing = new AtomicBoolean(true);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final List<Thread> threads = new ArrayList<Thread>();
+		for (int writer = 0; writer < writers; writer++) {
+			final long firstId = 1000L * (writer + 1);
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for (int round = 0; round < rounds; round++) {
+							final long id = firstId + round % 100;
+							final List<ServiceIndex.Entry> batch = new ArrayList<ServiceIndex.Entry>();
+							batch.add(new ServiceIndex.Entry(id, "org.acme.service" + id, Long.valueOf(id)));
+							if (round % 2 == 0) {
+								tested.addAll(batch);
+								tested.remove(id);
+							} else {
+								tested.add(id, "org.acme.service" + id, Long.valueOf(id));
+								tested.removeAll(new long[] { id });
+							}
+						}
+						// Leave one service per writer behind
+						tested.add(firstId, "org.acme.service" + firstId, Long.valueOf(firstId));
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			});
+		}
+		final Thread reader = new Thread() {
+			@Override
+			public void run() {
+				try {
+					start.await();
+					while (writing.get()) {
+						final List<Object> services = tested.findByPrefix("org.acme.service");
+						for (int i = 1; i < services.size(); i++) {
+							assertTrue(services.toString(), ((Long) services.get(i - 1)).compareTo((Long) services.get(i)) < 0);
+						}
+						assertSame(logService, tested.get("org.acme.log"));
+					}
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				}
+			}
+		};
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		reader.start();
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		writing.set(false);
+		reader.join();
+
+		assertNull(failure.get());
+		assertEquals(Arrays.<Object> asList(1000L, 2000L, 3000L, 4000L), tested.findByPrefix("org.acme.service"));
+		assertEquals(Arrays.asList(httpService, httpsService), tested.findByPrefix("org.acme.http"));
+	}
+
+	@Test
+	public void keepsNameOrderAcrossChunks() throws Exception {
+		final Random random = new Random(42);
+		final List<ServiceIndex.Entry> indexed = new ArrayList<ServiceIndex.Entry>();
+		long nextId = 100L;
+		for (int round = 0; round < 2000; round++) {
+			final int operation = random.nextInt(10);
+			if (operation < 5) {
+				final ServiceIndex.Entry entry = randomEntry(random, nextId++);
+				tested.add(entry.id, entry.name, entry.service);
+				indexed.add(entry);
+			} else if (operation < 7) {
+				final List<ServiceIndex.Entry> batch = new ArrayList<ServiceIndex.Entry>();
+				for (int i = random.nextInt(2 * ServiceIndex.CHUNK_SIZE); i >= 0; i--) {
+					batch.add(randomEntry(random, nextId++));
+				}
+				tested.addAll(batch);
+				indexed.addAll(batch);
+			} else if (operation < 9 && !indexed.isEmpty()) {
+				tested.remove(indexed.remove(random.nextInt(indexed.size())).id);
+			} else if (!indexed.isEmpty()) {
+				final long[] ids = new long[random.nextInt(Math.min(indexed.size(), ServiceIndex.CHUNK_SIZE)) + 1];
+				for (int i = 0; i < ids.length; i++) {
+					ids[i] = indexed.remove(random.nextInt(indexed.size())).id;
+				}
+				tested.removeAll(ids);
+			}
+			if (round % 100 == 0) {
+				assertIndexed(indexed);
+			}
+		}
+		assertIndexed(indexed);
+	}
+
+	@Test
+	public void sharesUnchangedChunksBetweenSnapshots() throws Exception {
+		final List<ServiceIndex.Entry> batch = new ArrayList<ServiceIndex.Entry>();
+		for (int i = 0; i < 10 * ServiceIndex.CHUNK_SIZE; i++) {
+			batch.add(new ServiceIndex.Entry(100L + i, String.format("org.acme.service%05d", i), Integer.valueOf(i)));
+		}
+		tested.addAll(batch);
+		final Object[] before = chunks();
+
+		tested.add(99L, "org.acme.service00000a", "added");
+		tested.remove(100L + 5 * ServiceIndex.CHUNK_SIZE);
+
+		final List<Object> after = Arrays.asList(chunks());
+		int shared = 0;
+		for (Object chunk : before) {
+			if (after.contains(chunk)) {
+				shared++;
+			}
+		}
+		assertEquals(before.length - 2, shared);
+		assertEquals(Arrays.<Object> asList(0, "added", 1), tested.findByPrefix("org.acme.service0000").subList(0, 3));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsMalformedFilter() throws Exception {
+		tested.find("(&(name=foo)");
+	}
+
+	private static ServiceIndex.Entry randomEntry(Random random, long id) {
+		// Few distinct names, so runs of equal names span several chunks
+		final String name = "org.acme.service" + (random.nextInt(4) == 0 ? "" : String.valueOf(random.nextInt(100)));
+		return new ServiceIndex.Entry(id, name, Long.valueOf(id));
+	}
+
+	private void assertIndexed(List<ServiceIndex.Entry> indexed) {
+		final List<ServiceIndex.Entry> sorted = new ArrayList<ServiceIndex.Entry>(indexed);
+		// Stable, so equal names stay in registration order
+		Collections.sort(sorted, new Comparator<ServiceIndex.Entry>() {
+			@Override
+			public int compare(ServiceIndex.Entry first, ServiceIndex.Entry second) {
+				return first.name.compareTo(second.name);
+			}
+		});
+		final List<Object> expected = new ArrayList<Object>();
+		final List<Object> expectedByFilter = new ArrayList<Object>();
+		for (ServiceIndex.Entry entry : sorted) {
+			expected.add(entry.service);
+			if (entry.name.startsWith("org.acme.service1")) {
+				expectedByFilter.add(entry.service);
+			}
+		}
+		assertEquals(expected, new ArrayList<Object>(tested.findByPrefix("org.acme.service")));
+		assertEquals(expectedByFilter, tested.find("(name=org.acme.service1*)"));
+		if (!sorted.isEmpty()) {
+			assertSame(sorted.get(0).service, tested.get(sorted.get(0).name));
+		}
+	}
+
+	private Object[] chunks() {
+		return (Object[]) getInternalState(getInternalState(tested, "snapshot"), "chunks");
+	}
+}
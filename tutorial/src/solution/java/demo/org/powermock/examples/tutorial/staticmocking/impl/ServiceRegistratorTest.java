@@ -15,6 +15,8 @@
  */
 package demo.org.powermock.examples.tutorial.staticmocking.impl;
 
+import demo.org.powermock.examples.tutorial.common.collections.ConcurrentLongHashMap;
+import demo.org.powermock.examples.tutorial.staticmocking.BatchResult;
 import demo.org.powermock.examples.tutorial.staticmocking.osgi.BundleContext;
 import demo.org.powermock.examples.tutorial.staticmocking.osgi.ServiceRegistration;
 import org.junit.After;
@@ -24,8 +26,7 @@ import org.junit.runner.RunWith;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.expectLastCall;
@@ -92,7 +93,7 @@ public class ServiceRegistratorTest {
 
 		verifyAll();
 
-		Map<Long, ServiceRegistration> map = getInternalState(tested, Map.class);
+		ConcurrentLongHashMap<ServiceRegistration> map = getInternalState(tested, ConcurrentLongHashMap.class);
 
 		assertEquals(1, map.size());
 		assertTrue("The id " + actualId + " was not found in the mServiceRegistrations map.", map.containsKey(actualId));
@@ -109,7 +110,7 @@ public class ServiceRegistratorTest {
 	 */
 	@Test
 	public void testUnregisterService() throws Exception {
-		Map<Long, ServiceRegistration> map = new HashMap<Long, ServiceRegistration>();
+		ConcurrentLongHashMap<ServiceRegistration> map = new ConcurrentLongHashMap<ServiceRegistration>();
 		final long id = 1L;
 		map.put(id, serviceRegistrationMock);
 
@@ -137,7 +138,7 @@ public class ServiceRegistratorTest {
 	 */
 	@Test
 	public void testUnregisterService_idDoesntExist() throws Exception {
-		Map<Long, ServiceRegistration> map = new HashMap<Long, ServiceRegistration>();
+		ConcurrentLongHashMap<ServiceRegistration> map = new ConcurrentLongHashMap<ServiceRegistration>();
 		final long id = 1L;
 
 		setInternalState(tested, map);
@@ -156,4 +157,105 @@ public class ServiceRegistratorTest {
 		assertTrue("Map should be empty", map.isEmpty());
 
 	}
+
+	/**
+	 * Test for the
+	 * {@link ServiceRegistrator#registerServices(java.util.List, java.util.List)}
+	 * method when one of the services fails to register.
+	 * 
+	 * @throws Exception
+	 *             If an error occurs.
+	 */
+	@Test
+	public void testRegisterServices_partialFailure() throws Exception {
+		final Object first = new Object();
+		final Object second = new Object();
+		final Object third = new Object();
+		final IllegalArgumentException failure = new IllegalArgumentException("rejected");
+		final long[] expectedIds = new long[] { 1L, 2L, 3L };
+
+		setInternalState(tested, bundleContextMock);
+
+		expect(IdGenerator.generateNewIds(3)).andReturn(expectedIds);
+		expect(bundleContextMock.registerService("first", first, null)).andReturn(serviceRegistrationMock);
+		expect(bundleContextMock.registerService("second", second, null)).andThrow(failure);
+		expect(bundleContextMock.registerService("third", third, null)).andReturn(serviceRegistrationMock);
+
+		replayAll();
+
+		final BatchResult result = tested.registerServices(Arrays.asList("first", "second", "third"), Arrays.asList(first, second, third));
+
+		verifyAll();
+
+		assertArrayEquals(expectedIds, result.getIds());
+		assertFalse(result.isSuccessful());
+		assertArrayEquals(new int[] { 1 }, result.getFailedIndices());
+		assertSame(failure, result.getFailure(1));
+		assertNull(result.getFailure(0));
+		assertArrayEquals(new long[] { 1L, 3L }, result.getSucceededIds());
+
+		ConcurrentLongHashMap<ServiceRegistration> map = getInternalState(tested, ConcurrentLongHashMap.class);
+		assertEquals(2, map.size());
+		assertFalse(map.containsKey(2L));
+	}
+
+	/**
+	 * Test for the {@link ServiceRegistrator#unregisterServices(long[])}
+	 * method when one of the ids doesn't exist.
+	 * 
+	 * @throws Exception
+	 *             If an error occurs.
+	 */
+	@Test
+	public void testUnregisterServices_idDoesntExist() throws Exception {
+		ConcurrentLongHashMap<ServiceRegistration> map = new ConcurrentLongHashMap<ServiceRegistration>();
+		map.put(1L, serviceRegistrationMock);
+		map.put(3L, serviceRegistrationMock);
+
+		setInternalState(tested, map);
+
+		serviceRegistrationMock.unregister();
+		expectLastCall().times(2);
+
+		replayAll();
+
+		final BatchResult result = tested.unregisterServices(new long[] { 1L, 2L, 3L });
+
+		verifyAll();
+
+		assertArrayEquals(new int[] { 1 }, result.getFailedIndices());
+		assertTrue(result.getFailure(1) instanceof IllegalStateException);
+		assertTrue("Map should be empty", map.isEmpty());
+	}
+
+	/**
+	 * Test for the {@link ServiceRegistrator#unregisterServices(long[])}
+	 * method, the unregistered services can't be looked up anymore.
+	 * 
+	 * @throws Exception
+	 *             If an error occurs.
+	 */
+	@Test
+	public void testUnregisterServices_removesFromIndex() throws Exception {
+		final Object first = new Object();
+		final Object second = new Object();
+
+		setInternalState(tested, bundleContextMock);
+
+		expect(IdGenerator.generateNewIds(2)).andReturn(new long[] { 1L, 2L });
+		expect(bundleContextMock.registerService("first", first, null)).andReturn(serviceRegistrationMock);
+		expect(bundleContextMock.registerService("second", second, null)).andReturn(serviceRegistrationMock);
+		serviceRegistrationMock.unregister();
+
+		replayAll();
+
+		tested.registerServices(Arrays.asList("first", "second"), Arrays.asList(first, second));
+		final BatchResult result = tested.unregisterServices(new long[] { 1L, 4L });
+
+		verifyAll();
+
+		assertArrayEquals(new int[] { 1 }, result.getFailedIndices());
+		assertNull(tested.getService("first"));
+		assertSame(second, tested.getService("second"));
+	}
 }
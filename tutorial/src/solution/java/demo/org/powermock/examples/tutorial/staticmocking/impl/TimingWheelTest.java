@@ -0,0 +1,107 @@
+/*
+ * Copyright 2008 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package demo.org.powermock.examples.tutorial.staticmocking.impl;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for the {@link TimingWheel} class.
+ */
+public class TimingWheelTest {
+
+	@Test
+	public void expiresEachTimeoutOnItsTickAcrossAllLevels() throws Exception {
+		final TimingWheel tested = new TimingWheel(1, 0);
+		final long[] deadlines = { 1, 63, 64, 65, 4095, 4096, 4097, 262143, 300000, 16777216, 20000000 };
+		for (int i = 0; i < deadlines.length; i++) {
+			tested.schedule(i, deadlines[i]);
+		}
+
+		for (int i = 0; i < deadlines.length; i++) {
+			assertEquals(0, tested.advance(deadlines[i] - 1).length);
+			assertArrayEquals(new long[] { i }, tested.advance(deadlines[i]));
+		}
+	}
+
+	@Test
+	public void roundsDeadlinesUpToTheNextTick() throws Exception {
+		final TimingWheel tested = new TimingWheel(100, 1000);
+		tested.schedule(1L, 1150);
+
+		assertEquals(0, tested.advance(1199).length);
+		assertArrayEquals(new long[] { 1L }, tested.advance(1200));
+	}
+
+	@Test
+	public void doesNotExpireCancelledTimeouts() throws Exception {
+		final TimingWheel tested = new TimingWheel(1, 0);
+		tested.schedule(1L, 10).cancelled = true;
+		tested.schedule(2L, 5000).cancelled = true;
+		tested.schedule(3L, 5000);
+
+		assertArrayEquals(new long[] { 3L }, tested.advance(10000));
+	}
+
+	@Test
+	public void unlinksCancelledTimeouts() throws Exception {
+		final TimingWheel tested = new TimingWheel(1, 0);
+		final TimingWheel.Timeout first = tested.schedule(1L, 10);
+		final TimingWheel.Timeout second = tested.schedule(2L, 10);
+		final TimingWheel.Timeout third = tested.schedule(3L, 10);
+		final TimingWheel.Timeout distant = tested.schedule(4L, 5000);
+
+		tested.cancel(second);
+		tested.cancel(first);
+		tested.cancel(distant);
+		tested.cancel(distant);
+
+		assertEquals(1, tested.size());
+		assertArrayEquals(new long[] { 3L }, tested.advance(10000));
+		tested.cancel(third);
+		assertEquals(0, tested.size());
+	}
+
+	@Test
+	public void keepsOneTimeoutPerRescheduledId() throws Exception {
+		final TimingWheel tested = new TimingWheel(1, 0);
+		TimingWheel.Timeout timeout = tested.schedule(1L, 100);
+		for (int i = 1; i <= 1000; i++) {
+			tested.cancel(timeout);
+			timeout = tested.schedule(1L, 100 + i);
+		}
+
+		assertEquals(1, tested.size());
+		assertEquals(0, tested.advance(1099).length);
+		assertArrayEquals(new long[] { 1L }, tested.advance(1100));
+		assertEquals(0, tested.size());
+	}
+
+	@Test
+	public void expiresPastDeadlinesOnNextAdvance() throws Exception {
+		final TimingWheel tested = new TimingWheel(10, 0);
+		tested.advance(1000);
+		tested.schedule(1L, 500);
+
+		assertArrayEquals(new long[] { 1L }, tested.advance(1000));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsNonPositiveTick() throws Exception {
+		new TimingWheel(0, 0);
+	}
+}
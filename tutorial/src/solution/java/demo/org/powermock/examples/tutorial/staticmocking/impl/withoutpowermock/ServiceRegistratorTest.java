@@ -15,6 +15,7 @@
  */
 package demo.org.powermock.examples.tutorial.staticmocking.impl.withoutpowermock;
 
+import demo.org.powermock.examples.tutorial.common.collections.ConcurrentLongHashMap;
 import demo.org.powermock.examples.tutorial.staticmocking.impl.ServiceRegistrator;
 import demo.org.powermock.examples.tutorial.staticmocking.osgi.BundleContext;
 import demo.org.powermock.examples.tutorial.staticmocking.osgi.ServiceRegistration;
@@ -25,8 +26,6 @@ import org.junit.Test;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
-import java.util.HashMap;
-import java.util.Map;
 
 import static org.easymock.EasyMock.*;
 import static org.junit.Assert.*;
@@ -100,7 +99,7 @@ public class ServiceRegistratorTest {
 		field.setAccessible(true);
 		field.set(tested, bundleContextMock);
 
-		Map<Long, ServiceRegistration> map = new HashMap<Long, ServiceRegistration>();
+		ConcurrentLongHashMap<ServiceRegistration> map = new ConcurrentLongHashMap<ServiceRegistration>();
 		field = ServiceRegistratorWithoutPowerMock.class.getDeclaredField("serviceRegistrations");
 		field.setAccessible(true);
 		field.set(tested, map);
@@ -133,7 +132,7 @@ public class ServiceRegistratorTest {
 	 */
 	@Test
 	public void testUnregisterService() throws Exception {
-		Map<Long, ServiceRegistration> map = new HashMap<Long, ServiceRegistration>();
+		ConcurrentLongHashMap<ServiceRegistration> map = new ConcurrentLongHashMap<ServiceRegistration>();
 		final long id = 1L;
 		map.put(id, serviceRegistrationMock);
 
@@ -164,7 +163,7 @@ public class ServiceRegistratorTest {
 	 */
 	@Test
 	public void testUnregisterService_idDoesntExist() throws Exception {
-		Map<Long, ServiceRegistration> map = new HashMap<Long, ServiceRegistration>();
+		ConcurrentLongHashMap<ServiceRegistration> map = new ConcurrentLongHashMap<ServiceRegistration>();
 		final long id = 1L;
 
 		Field field = tested.getClass().getDeclaredField("serviceRegistrations");
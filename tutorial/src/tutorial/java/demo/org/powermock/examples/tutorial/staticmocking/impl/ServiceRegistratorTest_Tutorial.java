@@ -28,9 +28,6 @@ import static org.powermock.api.mockito.PowerMockito.when;
 import static org.powermock.reflect.Whitebox.getInternalState;
 import static org.powermock.reflect.Whitebox.setInternalState;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -40,6 +37,7 @@ import org.junit.runner.RunWith;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import demo.org.powermock.examples.tutorial.common.collections.ConcurrentLongHashMap;
 import demo.org.powermock.examples.tutorial.staticmocking.osgi.BundleContext;
 import demo.org.powermock.examples.tutorial.staticmocking.osgi.ServiceRegistration;
 
@@ -98,7 +96,7 @@ public class ServiceRegistratorTest_Tutorial {
 		long actualId = this.tested.registerService(name, new Object());
 
 		// then
-		Map<Long, ServiceRegistration> serviceRegistrations = getInternalState(this.tested, "serviceRegistrations");
+		ConcurrentLongHashMap<ServiceRegistration> serviceRegistrations = getInternalState(this.tested, "serviceRegistrations");
 		assertThat(actualId, equalTo(expectedId));
 		assertThat(serviceRegistrations.get(expectedId), is(this.serviceRegistrationMock));
 		assertThat(serviceRegistrations.size(), equalTo(1));
@@ -113,7 +111,7 @@ public class ServiceRegistratorTest_Tutorial {
 	@Test
 	public void testUnregisterService() throws Exception {
 		// given
-		Map<Long, ServiceRegistration> serviceRegistrations = new HashMap<>();
+		ConcurrentLongHashMap<ServiceRegistration> serviceRegistrations = new ConcurrentLongHashMap<>();
 		serviceRegistrations.put(42L, this.serviceRegistrationMock);
 		setInternalState(this.tested, serviceRegistrations);
 
@@ -137,7 +135,7 @@ public class ServiceRegistratorTest_Tutorial {
 		long id = 0L;
 		this.thrown.expect(IllegalStateException.class);
 		this.thrown.expectMessage("Registration with id " + id + " has already been removed or has never been registered");
-		setInternalState(this.tested, new HashMap<>());
+		setInternalState(this.tested, new ConcurrentLongHashMap<ServiceRegistration>());
 
 		this.tested.unregisterService(id);
 	}